@@ -0,0 +1,166 @@
+// 面板热点路径基准测试
+package com.qiaoqiao.benchmark;
+
+import com.qiaoqiao.engine.BoardGrid;
+import com.qiaoqiao.engine.MatchEngine;
+import com.qiaoqiao.engine.MatchEngines;
+import com.qiaoqiao.engine.MoveGenerator;
+import com.qiaoqiao.model.game.Board;
+import com.qiaoqiao.model.game.TileTypeRegistry;
+import com.qiaoqiao.util.Constants;
+import com.qiaoqiao.util.GameLogic;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 面板构造、移动与连锁、匹配检测、移动枚举、重排和特殊效果区域的吞吐量
+ * 所有面板都使用固定种子，前后两次运行处理的是同一批面板。
+ * 运行方式见pom.xml中的benchmark profile，GC profiler输出每次操作的分配字节数。
+ * layout=obstacles时面板铺满挑战模式的障碍物布局，用于对比有障碍物和普通面板每步的耗时。
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BoardBenchmark {
+
+    private static final long SEED = 0x5EEDL;
+    private static final String[] EFFECTS = {
+            Constants.EFFECT_ROW_CLEAR, Constants.EFFECT_COLUMN_CLEAR,
+            Constants.EFFECT_BOMB, Constants.EFFECT_COLOR_BOMB
+    };
+
+    @Param({"8", "16", "64"})
+    private int size;
+
+    @Param({"5", "9"})
+    private int palette;
+
+    @Param({"optimized"})
+    private String engine;
+
+    @Param({"plain", "obstacles"})
+    private String layout;
+
+    private MatchEngine matchEngine;
+    private long nextSeed;
+
+    private Board board;            // 稳定面板：没有匹配，至少有一个合法移动
+    private Board matchBoard;       // 随机填充的面板，带有大量匹配
+    private int[] moves;
+    private int moveCursor;
+
+    @Setup
+    public void setup() {
+        matchEngine = MatchEngines.forName(engine);
+        nextSeed = SEED;
+        board = newBoard(SEED);
+        moves = new int[MoveGenerator.maxMoves(board.getGrid())];
+
+        matchBoard = newBoard(SEED + 1);
+        BoardGrid grid = matchBoard.getGrid();
+        SplittableRandom random = new SplittableRandom(SEED);
+        for (int index = 0; index < grid.getCellCount(); index++) {
+            if (!grid.isBlocked(index)) {
+                grid.setType(index, (byte) random.nextInt(palette));
+            }
+        }
+    }
+
+    private Board newBoard(long seed) {
+        if ("obstacles".equals(layout)) {
+            return new Board(size, size, Integer.MAX_VALUE, seed, matchEngine,
+                    TileTypeRegistry.defaults().getDefaultPalette().prefix(palette), obstacleLayout(size));
+        }
+        return new Board(size, size, Integer.MAX_VALUE, seed, matchEngine, palette);
+    }
+
+    // 把8x8的挑战模式布局平铺到size x size
+    private static String[] obstacleLayout(int size) {
+        String[] rows = new String[size];
+        for (int i = 0; i < size; i++) {
+            StringBuilder row = new StringBuilder(size);
+            for (int j = 0; j < size; j++) {
+                row.append(Constants.CHALLENGE_LAYOUT[i % 8].charAt(j % 8));
+            }
+            rows[i] = row.toString();
+        }
+        return rows;
+    }
+
+    @Benchmark
+    public Board construct() {
+        return newBoard(nextSeed++);
+    }
+
+    // 选出一个合法移动并执行（包括全部连锁消除），没有移动时重排
+    @Benchmark
+    public int swapTiles() {
+        int count = board.getMoveIndex().copyMoves(moves);
+        if (count == 0) {
+            board.reshuffle();
+            return 0;
+        }
+        int move = moves[moveCursor++ % count];
+        int first = MoveGenerator.firstCell(move);
+        int second = MoveGenerator.secondCell(move, size);
+        board.swapTiles(first / size, first % size, second / size, second % size);
+        if (board.isGameOver()) {
+            // 障碍物全部清除后换一块新面板，保持有障碍物的状态
+            board = newBoard(nextSeed++);
+        }
+        return board.getScore();
+    }
+
+    @Benchmark
+    public boolean hasMatches() {
+        return board.hasMatches();
+    }
+
+    @Benchmark
+    public List<List<int[]>> findAllMatches() {
+        return GameLogic.findAllMatches(matchBoard);
+    }
+
+    // 读取增量维护的合法移动计数
+    @Benchmark
+    public boolean hasPossibleMoves() {
+        return GameLogic.hasPossibleMoves(board);
+    }
+
+    // 整盘扫描是否有合法移动（增量索引之前每步的做法）
+    @Benchmark
+    public boolean scanPossibleMoves() {
+        return matchEngine.hasPossibleMoves(board.getGrid());
+    }
+
+    @Benchmark
+    public Board shuffleBoard() {
+        GameLogic.shuffleBoard(board);
+        return board;
+    }
+
+    @Benchmark
+    public void getSpecialEffectArea(Blackhole blackhole) {
+        int center = size / 2;
+        for (String effect : EFFECTS) {
+            blackhole.consume(GameLogic.getSpecialEffectArea(board, center, center, effect));
+        }
+    }
+}
@@ -0,0 +1,123 @@
+// 无尽模式大面板基准测试
+package com.qiaoqiao.benchmark;
+
+import com.qiaoqiao.engine.BoardGrid;
+import com.qiaoqiao.engine.MatchEngine;
+import com.qiaoqiao.engine.MoveGenerator;
+import com.qiaoqiao.engine.ParallelMatchEngine;
+import com.qiaoqiao.engine.RunList;
+import com.qiaoqiao.model.game.Board;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 无尽模式大面板在不同线程数下的耗时，用于观察并行扫描、下落和填充随核数的伸缩
+ * threads=1时并行引擎退回顺序路径，作为基准。
+ * 例如：mvn -Pbenchmark verify -DskipTests -Djmh.args="EndlessBenchmark -p threads=1,2,4,8"
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EndlessBenchmark {
+
+    private static final long SEED = 0x5EEDL;
+
+    @Param({"256", "512"})
+    private int size;
+
+    @Param({"1", "2", "4", "8"})
+    private int threads;
+
+    private ForkJoinPool pool;
+    private MatchEngine engine;
+    private Board board;             // 稳定面板
+    private BoardGrid matchGrid;     // 随机填充的面板，带有大量匹配
+    private RunList runs;
+    private long[] matched;
+    private int[] moves;
+    private int moveCursor;
+
+    @Setup
+    public void setup() {
+        pool = new ForkJoinPool(threads);
+        engine = new ParallelMatchEngine(pool);
+        board = new Board(size, size, Integer.MAX_VALUE, SEED, engine);
+        moves = new int[MoveGenerator.maxMoves(board.getGrid())];
+
+        int typeCount = board.getPalette().size();
+        matchGrid = new BoardGrid(size, size, typeCount);
+        SplittableRandom random = new SplittableRandom(SEED);
+        for (int index = 0; index < matchGrid.getCellCount(); index++) {
+            matchGrid.setType(index, (byte) random.nextInt(typeCount));
+        }
+        runs = new RunList();
+        matched = new long[(matchGrid.getCellCount() + 63) >>> 6];
+    }
+
+    @TearDown
+    public void tearDown() {
+        pool.shutdown();
+    }
+
+    // 一次完整的移动：交换、全部连锁消除，再检查是否还有合法移动（与GameService.makeMove相同）
+    @Benchmark
+    public boolean move() {
+        // 从上次的位置继续找下一个合法交换，避免把整盘移动枚举算进移动耗时
+        BoardGrid grid = board.getGrid();
+        int cellCount = grid.getCellCount();
+        for (int n = 0; n < cellCount; n++) {
+            int index = moveCursor;
+            moveCursor = moveCursor + 1 == cellCount ? 0 : moveCursor + 1;
+            int row = index / size;
+            int col = index % size;
+            if (engine.isLegalMove(grid, row, col, row, col + 1)) {
+                board.swapTiles(row, col, row, col + 1);
+                return board.hasPossibleMoves();
+            }
+            if (engine.isLegalMove(grid, row, col, row + 1, col)) {
+                board.swapTiles(row, col, row + 1, col);
+                return board.hasPossibleMoves();
+            }
+        }
+        board.reshuffle();
+        return false;
+    }
+
+    // 整盘匹配扫描
+    @Benchmark
+    public int findMatches() {
+        runs.clear();
+        Arrays.fill(matched, 0L);
+        return engine.findMatches(matchGrid, false, runs, matched);
+    }
+
+    // 整盘移动枚举（增量索引之前的死局检测和提示都要做一次）
+    @Benchmark
+    public int findPossibleMoves() {
+        return engine.findPossibleMoves(board.getGrid(), moves);
+    }
+
+    // 从合法移动索引取出全部移动（提示和机器人使用）
+    @Benchmark
+    public int copyIndexedMoves() {
+        return board.getMoveIndex().copyMoves(moves);
+    }
+}
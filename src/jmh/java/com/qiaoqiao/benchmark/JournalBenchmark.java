@@ -0,0 +1,70 @@
+// 移动日志基准测试
+package com.qiaoqiao.benchmark;
+
+import com.qiaoqiao.service.MoveJournal;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * 移动日志追加一条移动记录的延迟分布（移动处理增加的耗时），目标是每条远低于50微秒
+ * 追加只写入映射内存，刷盘由后台线程按组提交，所以多个会话同时追加时延迟也不随刷盘变化。
+ * 例如：mvn -Pbenchmark verify -DskipTests -Djmh.args="JournalBenchmark"
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JournalBenchmark {
+
+    private Path directory;
+    private MoveJournal journal;
+    private String gameId;
+
+    @Setup(Level.Iteration)
+    public void setup() throws IOException {
+        directory = Files.createTempDirectory("journal-benchmark");
+        journal = new MoveJournal(directory, 16 << 20, 10);
+        gameId = UUID.randomUUID().toString();
+        journal.appendCreate(gameId, null, "classic", 8, 1L);
+    }
+
+    @TearDown(Level.Iteration)
+    public void tearDown() throws IOException {
+        journal.close();
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(file -> file.toFile().delete());
+        }
+    }
+
+    @Benchmark
+    public void appendMove() {
+        journal.appendMove(gameId, 3, 4, 3, 5);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void appendMoveContended() {
+        journal.appendMove(gameId, 3, 4, 3, 5);
+    }
+}
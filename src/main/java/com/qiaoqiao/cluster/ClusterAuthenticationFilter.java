@@ -0,0 +1,37 @@
+// 集群内部接口认证过滤器
+package com.qiaoqiao.cluster;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+
+/**
+ * 只允许带有正确共享密钥的请求访问/cluster接口（成员变化和会话转移）
+ * 密钥按常量时间比较，不通过响应时间泄露前缀。
+ */
+public class ClusterAuthenticationFilter extends OncePerRequestFilter {
+
+    private final byte[] secret;
+
+    public ClusterAuthenticationFilter(String secret) {
+        this.secret = secret.getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        String provided = request.getHeader(ClusterGameSessionStore.SECRET_HEADER);
+        if (provided == null || !MessageDigest.isEqual(secret, provided.getBytes(StandardCharsets.UTF_8))) {
+            response.sendError(HttpStatus.FORBIDDEN.value());
+            return;
+        }
+        chain.doFilter(request, response);
+    }
+}
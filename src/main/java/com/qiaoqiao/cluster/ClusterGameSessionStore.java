@@ -0,0 +1,219 @@
+// 多节点会话存储
+package com.qiaoqiao.cluster;
+
+import com.qiaoqiao.config.ClusterProperties;
+import com.qiaoqiao.model.game.GameSession;
+import com.qiaoqiao.service.GameSessionStore;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.client.SimpleClientHttpRequestFactory;
+import org.springframework.web.client.HttpStatusCodeException;
+import org.springframework.web.client.ResourceAccessException;
+import org.springframework.web.client.RestTemplate;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 多节点部署的会话存储：按gameId的一致性哈希决定负责的节点，节点之间通过HTTP转发请求和转移会话
+ * 节点用对外的基础地址标识（例如 http://10.0.0.1:8080），各节点配置相同的成员列表，得到相同的环。
+ *
+ * 成员变化期间会话不会丢失也不会不可达：
+ * 会话先完整发送给新的负责节点，对方保存后原节点才移除；
+ * 在此之前新的负责节点收到请求时本地没有该会话，转发给上一个环中的负责节点处理。
+ * 转移会话的请求在专用的I/O线程上发送，不占用会话邮箱的线程池。
+ */
+public class ClusterGameSessionStore implements GameSessionStore {
+
+    // 节点之间请求携带共享密钥的请求头，/cluster接口只接受带有正确密钥的请求
+    public static final String SECRET_HEADER = "X-Cluster-Secret";
+
+    // 一个请求最多转发的次数：非负责节点到负责节点，负责节点到上一个负责节点
+    private static final int MAX_HOPS = 2;
+
+    private final String self;
+    private final Map<String, GameSession> sessions = new ConcurrentHashMap<>();
+    private final RestTemplate restTemplate;
+    private final ExecutorService transferExecutor;
+    private volatile HashRing ring;
+    private volatile HashRing previous;   // 最近一次成员变化之前的环，没有变化过时为null
+
+    public ClusterGameSessionStore(ClusterProperties properties) {
+        this.self = properties.getSelf();
+        List<String> members = new ArrayList<>(properties.getNodes());
+        if (!members.contains(self)) {
+            members.add(self);
+        }
+        this.ring = new HashRing(members, properties.getVirtualNodes());
+        // 刚启动的节点还没有收到会话，先按不包括自己的环转发
+        if (ring.getNodes().size() > 1) {
+            this.previous = ring.without(self);
+        }
+
+        SimpleClientHttpRequestFactory requestFactory = new SimpleClientHttpRequestFactory();
+        requestFactory.setConnectTimeout(properties.getTimeoutMs());
+        requestFactory.setReadTimeout(properties.getTimeoutMs());
+        this.restTemplate = new RestTemplate(requestFactory);
+        // 请求只发往配置的节点，都带上共享密钥
+        String secret = properties.getSecret();
+        restTemplate.getInterceptors().add((request, body, execution) -> {
+            request.getHeaders().set(SECRET_HEADER, secret);
+            return execution.execute(request, body);
+        });
+
+        AtomicInteger threads = new AtomicInteger();
+        this.transferExecutor = Executors.newFixedThreadPool(Math.max(1, properties.getTransferThreads()), task -> {
+            Thread thread = new Thread(task, "game-session-transfer-" + threads.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    // 关闭转移线程（Spring在依赖本存储的GameService、ClusterService关闭之后调用）
+    public void close() {
+        transferExecutor.shutdown();
+    }
+
+    public String getSelf() {
+        return self;
+    }
+
+    // 当前环上的全部节点
+    public List<String> getMembers() {
+        return ring.getNodes();
+    }
+
+    // 节点加入：之后由该节点负责的会话需要转移给它（只接受http和https地址）
+    public synchronized boolean addMember(String node) {
+        if (ring.contains(node) || !(node.startsWith("http://") || node.startsWith("https://"))) {
+            return false;
+        }
+        previous = ring;
+        ring = ring.with(node);
+        return true;
+    }
+
+    // 节点离开（离开的节点已经把会话转移出去）
+    public synchronized boolean removeMember(String node) {
+        if (!ring.contains(node) || ring.getNodes().size() == 1) {
+            return false;
+        }
+        previous = ring;
+        ring = ring.without(node);
+        return true;
+    }
+
+    // 通知其他节点本节点加入（POST）或离开（DELETE），对方处理完成后才返回；连接不上的节点跳过
+    public void announce(HttpMethod method) {
+        for (String node : ring.getNodes()) {
+            if (node.equals(self)) {
+                continue;
+            }
+            try {
+                restTemplate.exchange(node + "/cluster/members?node={node}", method, HttpEntity.EMPTY, Void.class, self);
+            } catch (ResourceAccessException e) {
+                // 对方还没有启动，启动后会通知各节点
+            }
+        }
+    }
+
+    @Override
+    public GameSession get(String gameId) {
+        return sessions.get(gameId);
+    }
+
+    @Override
+    public void put(GameSession gameSession) {
+        sessions.put(gameSession.getId(), gameSession);
+    }
+
+    @Override
+    public boolean remove(String gameId, GameSession gameSession) {
+        return sessions.remove(gameId, gameSession);
+    }
+
+    @Override
+    public Collection<GameSession> sessions() {
+        return sessions.values();
+    }
+
+    @Override
+    public int size() {
+        return sessions.size();
+    }
+
+    // 随机生成直到落在本节点负责的范围内（N个节点平均尝试N次）
+    @Override
+    public String newGameId() {
+        while (true) {
+            String gameId = UUID.randomUUID().toString();
+            if (owns(gameId)) {
+                return gameId;
+            }
+        }
+    }
+
+    @Override
+    public boolean owns(String gameId) {
+        return ring.ownerOf(gameId).equals(self);
+    }
+
+    @Override
+    public CompletableFuture<Void> transfer(String gameId, byte[] image) {
+        String owner = ring.ownerOf(gameId);
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.APPLICATION_OCTET_STREAM);
+        return CompletableFuture.runAsync(() -> restTemplate.put(owner + "/cluster/sessions/{gameId}",
+                new HttpEntity<>(image, headers), gameId), transferExecutor);
+    }
+
+    @Override
+    public ResponseEntity<byte[]> forward(String gameId, HttpMethod method, String path, Object body, int hops) {
+        String target = forwardTarget(gameId, hops);
+        if (target == null) {
+            return null;
+        }
+        HttpHeaders headers = new HttpHeaders();
+        headers.set(HOPS_HEADER, String.valueOf(hops + 1));
+        if (body != null) {
+            headers.setContentType(MediaType.APPLICATION_JSON);
+        }
+        try {
+            ResponseEntity<byte[]> response = restTemplate.exchange(target + path, method, new HttpEntity<>(body, headers), byte[].class);
+            return ResponseEntity.status(response.getStatusCode())
+                    .contentType(response.getHeaders().getContentType() != null
+                            ? response.getHeaders().getContentType() : MediaType.APPLICATION_JSON)
+                    .body(response.getBody());
+        } catch (HttpStatusCodeException e) {
+            return ResponseEntity.status(e.getStatusCode()).body(e.getResponseBodyAsByteArray());
+        } catch (ResourceAccessException e) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).build();
+        }
+    }
+
+    // 本节点不是负责节点时转发给负责节点；本节点是负责节点但还没收到会话时，转发给上一个环中的负责节点
+    private String forwardTarget(String gameId, int hops) {
+        if (hops >= MAX_HOPS) {
+            return null;
+        }
+        String owner = ring.ownerOf(gameId);
+        if (!owner.equals(self)) {
+            return owner;
+        }
+        HashRing before = previous;
+        String previousOwner = before != null ? before.ownerOf(gameId) : null;
+        return previousOwner != null && !previousOwner.equals(self) ? previousOwner : null;
+    }
+}
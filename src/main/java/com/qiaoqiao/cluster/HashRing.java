@@ -0,0 +1,94 @@
+// 一致性哈希环
+package com.qiaoqiao.cluster;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.TreeSet;
+
+/**
+ * 把gameId分给节点的一致性哈希环（不可变）
+ * 每个节点在环上放置virtualNodes个虚拟节点，key归顺时针方向的第一个虚拟节点所属的节点；
+ * 虚拟节点使各节点分到的key大致相同，节点加入或离开时只有约1/N的key改变归属。
+ * 各节点用相同的成员列表得到相同的环，不需要协商。
+ */
+public final class HashRing {
+
+    private final List<String> nodes;
+    private final int virtualNodes;
+    private final long[] points;     // 虚拟节点的哈希值，升序
+    private final String[] owners;   // 各虚拟节点所属的节点
+
+    public HashRing(Collection<String> nodes, int virtualNodes) {
+        if (nodes.isEmpty()) {
+            throw new IllegalArgumentException("哈希环至少需要一个节点");
+        }
+        this.nodes = Collections.unmodifiableList(new ArrayList<>(new TreeSet<>(nodes)));
+        this.virtualNodes = virtualNodes;
+
+        int count = this.nodes.size() * virtualNodes;
+        long[] hashes = new long[count];
+        Integer[] order = new Integer[count];
+        for (int i = 0; i < count; i++) {
+            hashes[i] = hash(this.nodes.get(i / virtualNodes) + "#" + (i % virtualNodes));
+            order[i] = i;
+        }
+        // 按哈希值排序虚拟节点，哈希相同时按节点顺序，保证各节点得到相同的环
+        Arrays.sort(order, (a, b) -> hashes[a] != hashes[b] ? Long.compare(hashes[a], hashes[b]) : Integer.compare(a, b));
+        this.points = new long[count];
+        this.owners = new String[count];
+        for (int i = 0; i < count; i++) {
+            points[i] = hashes[order[i]];
+            owners[i] = this.nodes.get(order[i] / virtualNodes);
+        }
+    }
+
+    // key所属的节点
+    public String ownerOf(String key) {
+        int index = Arrays.binarySearch(points, hash(key));
+        if (index < 0) {
+            index = -index - 1;
+        }
+        return owners[index == points.length ? 0 : index];
+    }
+
+    // 加入节点后的环
+    public HashRing with(String node) {
+        List<String> members = new ArrayList<>(nodes);
+        members.add(node);
+        return new HashRing(members, virtualNodes);
+    }
+
+    // 移除节点后的环
+    public HashRing without(String node) {
+        List<String> members = new ArrayList<>(nodes);
+        members.remove(node);
+        return new HashRing(members, virtualNodes);
+    }
+
+    public boolean contains(String node) {
+        return nodes.contains(node);
+    }
+
+    // 环上的节点（排序后）
+    public List<String> getNodes() {
+        return nodes;
+    }
+
+    // 64位FNV-1a，再用MurmurHash3的最终混合步骤打散相近的字符串
+    static long hash(String key) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < key.length(); i++) {
+            h ^= key.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
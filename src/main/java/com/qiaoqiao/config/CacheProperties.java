@@ -0,0 +1,13 @@
+package com.qiaoqiao.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+// 最佳移动缓存配置（game.cache）
+@Data
+@ConfigurationProperties(prefix = "game.cache")
+public class CacheProperties {
+
+    // 按面板状态哈希缓存最佳移动的置换表槽数（2的幂）
+    private int capacity = 65536;
+}
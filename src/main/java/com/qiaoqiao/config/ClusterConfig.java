@@ -0,0 +1,38 @@
+package com.qiaoqiao.config;
+
+import com.qiaoqiao.cluster.ClusterAuthenticationFilter;
+import com.qiaoqiao.cluster.ClusterGameSessionStore;
+import com.qiaoqiao.service.GameSessionStore;
+import com.qiaoqiao.service.LocalGameSessionStore;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+@EnableConfigurationProperties(ClusterProperties.class)
+public class ClusterConfig {
+
+    // 没有配置本节点地址时单机运行，会话保存在本进程的内存中
+    @Bean
+    public GameSessionStore gameSessionStore(ClusterProperties properties) {
+        if (!properties.isEnabled()) {
+            return new LocalGameSessionStore();
+        }
+        if (properties.getSecret() == null || properties.getSecret().isEmpty()) {
+            throw new IllegalStateException("多节点部署必须配置game.cluster.secret");
+        }
+        return new ClusterGameSessionStore(properties);
+    }
+
+    // 多节点部署时/cluster接口要求共享密钥
+    @Bean
+    @ConditionalOnExpression(ClusterProperties.ENABLED)
+    public FilterRegistrationBean<ClusterAuthenticationFilter> clusterAuthenticationFilter(ClusterProperties properties) {
+        FilterRegistrationBean<ClusterAuthenticationFilter> registration =
+                new FilterRegistrationBean<>(new ClusterAuthenticationFilter(properties.getSecret()));
+        registration.addUrlPatterns("/cluster/*");
+        return registration;
+    }
+}
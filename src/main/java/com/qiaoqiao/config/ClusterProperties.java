@@ -0,0 +1,39 @@
+package com.qiaoqiao.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// 多节点部署配置（game.cluster）
+@Data
+@ConfigurationProperties(prefix = "game.cluster")
+public class ClusterProperties {
+
+    // 配置了本节点地址时才注册节点之间的接口（用于@ConditionalOnExpression）
+    public static final String ENABLED = "!'${game.cluster.self:}'.isEmpty()";
+
+    // 本节点供其他节点访问的地址，为空时单机运行
+    private String self;
+
+    // 全部节点的地址
+    private List<String> nodes = new ArrayList<>();
+
+    // 每个节点在哈希环上的虚拟节点数
+    private int virtualNodes = 128;
+
+    // 节点之间请求的超时（毫秒）
+    private int timeoutMs = 5000;
+
+    // 发送转移会话请求的I/O线程数
+    private int transferThreads = 4;
+
+    // 节点之间请求的共享密钥，多节点部署时必须配置
+    private String secret;
+
+    // 是否配置为多节点部署
+    public boolean isEnabled() {
+        return self != null && !self.isEmpty();
+    }
+}
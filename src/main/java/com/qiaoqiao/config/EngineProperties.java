@@ -0,0 +1,23 @@
+package com.qiaoqiao.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+// 匹配引擎配置（game.match-engine和game.endless）
+@Data
+@ConfigurationProperties(prefix = "game")
+public class EngineProperties {
+
+    // 匹配规则引擎：optimized（位棋盘/脏行脏列/模式表）或 reference（逐格扫描）
+    private String matchEngine = "optimized";
+
+    // 无尽模式的并行处理
+    private Endless endless = new Endless();
+
+    @Data
+    public static class Endless {
+
+        // 无尽模式（256x256及以上）并行处理使用的线程数，0表示CPU核数
+        private int parallelism = 0;
+    }
+}
@@ -0,0 +1,11 @@
+package com.qiaoqiao.config;
+
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+// 匹配引擎、游戏会话、移动日志、最佳移动搜索和缓存的配置
+@Configuration
+@EnableConfigurationProperties({EngineProperties.class, SessionProperties.class, JournalProperties.class, SolverProperties.class,
+        CacheProperties.class})
+public class GameConfig {
+}
@@ -0,0 +1,27 @@
+package com.qiaoqiao.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+// 移动日志配置（game.journal）
+@Data
+@ConfigurationProperties(prefix = "game.journal")
+public class JournalProperties {
+
+    // 日志目录，为空时不记录
+    private String directory;
+
+    // 每个段文件的大小（MB）
+    private int segmentMb = 16;
+
+    // 组提交间隔（毫秒）
+    private long flushMs = 10;
+
+    // 写满的段达到该数量时压缩
+    private int compactAfterSegments = 4;
+
+    // 是否配置了日志目录
+    public boolean isEnabled() {
+        return directory != null && !directory.isEmpty();
+    }
+}
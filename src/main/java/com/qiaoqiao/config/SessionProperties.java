@@ -0,0 +1,28 @@
+package com.qiaoqiao.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+// 游戏会话配置（game.sessions）
+@Data
+@ConfigurationProperties(prefix = "game.sessions")
+public class SessionProperties {
+
+    // 进行中的会话空闲超过该时间后移除（秒）
+    private long idleTtlSeconds = 1800;
+
+    // 结束的会话最后一次访问后超过该时间移除（秒）
+    private long finishedTtlSeconds = 300;
+
+    // 过期时间轮的时间刻（毫秒），也是过期检查的精度
+    private long tickMs = 1000;
+
+    // 处理各会话移动邮箱的线程数，0表示CPU核数
+    private int parallelism = 0;
+
+    // 空闲超过该时间的会话面板钝化为紧凑的字节形式（秒），0表示不钝化
+    private long passivateAfterSeconds = 120;
+
+    // 钝化的字节数据是否放在堆外
+    private boolean offHeap = false;
+}
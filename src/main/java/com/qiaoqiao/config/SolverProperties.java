@@ -0,0 +1,22 @@
+package com.qiaoqiao.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+// 最佳移动搜索配置（game.solver）
+@Data
+@ConfigurationProperties(prefix = "game.solver")
+public class SolverProperties {
+
+    // 搜索线程数，0表示CPU核数的一半
+    private int parallelism = 0;
+
+    // 最大搜索深度（连续移动数）
+    private int depth = 2;
+
+    // 每次移动抽取的随机填充结果数
+    private int samples = 4;
+
+    // 每次搜索的时间预算（毫秒）
+    private long budgetMs = 200;
+}
@@ -0,0 +1,17 @@
+package com.qiaoqiao.config;
+
+import com.qiaoqiao.model.game.TileTypeRegistry;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+@EnableConfigurationProperties(TileTypeProperties.class)
+public class TileTypeConfig {
+
+    // 启动时根据配置创建一次瓦片类型注册表
+    @Bean
+    public TileTypeRegistry tileTypeRegistry(TileTypeProperties properties) {
+        return new TileTypeRegistry(properties.getTileTypes(), properties.getPalettes());
+    }
+}
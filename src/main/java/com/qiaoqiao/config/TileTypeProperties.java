@@ -0,0 +1,23 @@
+package com.qiaoqiao.config;
+
+import com.qiaoqiao.util.Constants;
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// 瓦片类型配置（game.tile-types和game.palettes）
+@Data
+@ConfigurationProperties(prefix = "game")
+public class TileTypeProperties {
+
+    // 全部瓦片类型，顺序决定类型序号；未配置时使用内置的类型列表
+    private List<String> tileTypes = new ArrayList<>(Arrays.asList(Constants.TILE_TYPES));
+
+    // 各游戏模式使用的类型（模式名 -> 类型名称列表），未配置的模式使用全部类型
+    private Map<String, List<String>> palettes = new HashMap<>();
+}
@@ -0,0 +1,56 @@
+// 集群内部接口控制器
+package com.qiaoqiao.controller;
+
+import com.qiaoqiao.config.ClusterProperties;
+import com.qiaoqiao.service.ClusterService;
+import com.qiaoqiao.service.GameService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.List;
+import java.util.Map;
+
+// 节点之间调用的接口：成员变化和会话转移（只在多节点部署时注册，请求须带有共享密钥）
+@RestController
+@ConditionalOnExpression(ClusterProperties.ENABLED)
+@RequestMapping("/cluster")
+public class ClusterController {
+
+    @Autowired
+    private ClusterService clusterService;
+
+    @Autowired
+    private GameService gameService;
+
+    // 当前的成员列表
+    @GetMapping("/members")
+    public List<String> getMembers() {
+        return clusterService.getMembers();
+    }
+
+    // 节点加入：开始把改由它负责的会话转移过去，不等转移完成
+    @PostMapping("/members")
+    public ResponseEntity<?> memberJoined(@RequestParam String node) {
+        return ResponseEntity.ok(Map.of("added", clusterService.memberJoined(node)));
+    }
+
+    // 节点离开
+    @DeleteMapping("/members")
+    public ResponseEntity<?> memberLeft(@RequestParam String node) {
+        return ResponseEntity.ok(Map.of("removed", clusterService.memberLeft(node)));
+    }
+
+    // 接收其他节点转移过来的会话
+    @PutMapping(value = "/sessions/{gameId}", consumes = MediaType.APPLICATION_OCTET_STREAM_VALUE)
+    public ResponseEntity<Void> adoptSession(@PathVariable String gameId, @RequestBody byte[] data) {
+        try {
+            gameService.adoptSession(gameId, data);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
+        return ResponseEntity.noContent().build();
+    }
+}
@@ -1,11 +1,18 @@
 // 游戏控制器
 package com.qiaoqiao.controller;
 
-import com.qiaoqiao.model.game.Board;
+import com.qiaoqiao.model.game.BoardSnapshot;
+import com.qiaoqiao.model.game.BotResult;
 import com.qiaoqiao.model.game.GameSession;
+import com.qiaoqiao.model.game.Hint;
 import com.qiaoqiao.service.GameService;
+import com.qiaoqiao.service.GameSessionStore;
 import com.qiaoqiao.service.ScoreService;
+import com.qiaoqiao.service.SolverService;
+import com.qiaoqiao.util.Constants;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Controller;
 import org.springframework.ui.Model;
@@ -13,6 +20,8 @@ import org.springframework.web.bind.annotation.*;
 
 import javax.servlet.http.HttpSession;
 import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
 
 @Controller
 @RequestMapping("/game")
@@ -24,6 +33,12 @@ public class GameController {
     @Autowired
     private ScoreService scoreService;
 
+    @Autowired
+    private SolverService solverService;
+
+    @Autowired
+    private GameSessionStore sessionStore;
+
     // 游戏主页
     @GetMapping
     public String gamePage(Model model, HttpSession session) {
@@ -38,32 +53,93 @@ public class GameController {
         return "game";
     }
 
-    // 开始新游戏
+    // 开始新游戏（mode=endless时创建无尽模式大面板，size默认为256；mode=challenge时创建带障碍物的挑战模式）
     @GetMapping("/new")
-    public String newGame(HttpSession session) {
-        GameSession gameSession = gameService.createNewGame();
+    public String newGame(@RequestParam(required = false) String mode,
+                          @RequestParam(required = false) Integer size,
+                          HttpSession session) {
+        GameSession gameSession;
+        if (Constants.MODE_ENDLESS.equals(mode)) {
+            gameSession = gameService.createEndlessGame(null, size != null ? size : Constants.ENDLESS_BOARD_SIZE);
+        } else if (Constants.MODE_CHALLENGE.equals(mode)) {
+            gameSession = gameService.createChallengeGame(null);
+        } else {
+            gameSession = gameService.createNewGame();
+        }
         session.setAttribute("gameSession", gameSession);
         return "redirect:/game";
     }
 
-    // 获取游戏状态
+    // 获取游戏状态（最近发布的面板快照，不会读到正在处理的移动）
     @GetMapping("/state")
     @ResponseBody
-    public ResponseEntity<Board> getGameState(HttpSession session) {
+    public ResponseEntity<?> getGameState(HttpSession session) {
         GameSession gameSession = (GameSession) session.getAttribute("gameSession");
         if (gameSession == null) {
             return ResponseEntity.badRequest().build();
         }
-        return ResponseEntity.ok(gameSession.getBoard());
+        return gameState(gameSession.getId(), gameSession, 0);
+    }
+
+    // 按ID获取游戏状态，会话在其他节点上时转发给负责的节点
+    @GetMapping("/{gameId}/state")
+    @ResponseBody
+    public ResponseEntity<?> getGameStateById(@PathVariable String gameId,
+                                              @RequestHeader(value = GameSessionStore.HOPS_HEADER, defaultValue = "0") int hops) {
+        return gameState(gameId, null, hops);
+    }
+
+    private ResponseEntity<?> gameState(String gameId, GameSession fallback, int hops) {
+        GameSession gameSession = gameService.getGameSessionById(gameId);
+        if (gameSession == null && isGameId(gameId)) {
+            ResponseEntity<byte[]> forwarded = sessionStore.forward(gameId, HttpMethod.GET, "/game/" + gameId + "/state", null, hops);
+            if (forwarded != null) {
+                return forwarded;
+            }
+            gameSession = fallback;
+        }
+        if (gameSession == null) {
+            return gameNotFound();
+        }
+        return ResponseEntity.ok(gameService.activate(gameSession).getSnapshot());
     }
 
-    // 移动瓦片
+    // 移动瓦片：移动在会话的邮箱中执行，请求线程不等待，处理完后异步返回响应
     @PostMapping("/move")
     @ResponseBody
-    public ResponseEntity<?> makeMove(@RequestBody Map<String, Integer> moveData, HttpSession session) {
+    public CompletableFuture<ResponseEntity<?>> makeMove(@RequestBody Map<String, Integer> moveData, HttpSession session) {
         GameSession gameSession = (GameSession) session.getAttribute("gameSession");
         if (gameSession == null) {
-            return ResponseEntity.badRequest().build();
+            return CompletableFuture.completedFuture(ResponseEntity.badRequest().build());
+        }
+        return move(gameSession.getId(), gameSession, moveData, 0);
+    }
+
+    // 按ID移动瓦片，会话在其他节点上时转发给负责的节点
+    @PostMapping("/{gameId}/move")
+    @ResponseBody
+    public CompletableFuture<ResponseEntity<?>> makeMoveById(@PathVariable String gameId, @RequestBody Map<String, Integer> moveData,
+                                                             @RequestHeader(value = GameSessionStore.HOPS_HEADER, defaultValue = "0") int hops) {
+        return move(gameId, null, moveData, hops);
+    }
+
+    /**
+     * 本节点保存的会话在本地执行移动，否则转发给负责的节点
+     * fallback是HTTP会话中的会话对象：不能转发时（单机部署中已过期移除的会话）仍在它上面继续。
+     * 移动排在会话转移之后时，转移完成后再转发（转发会阻塞等待，放到公共线程池上执行）。
+     */
+    private CompletableFuture<ResponseEntity<?>> move(String gameId, GameSession fallback, Map<String, Integer> moveData, int hops) {
+        String path = "/game/" + gameId + "/move";
+        GameSession local = gameService.getGameSessionById(gameId);
+        if (local == null && isGameId(gameId)) {
+            ResponseEntity<byte[]> forwarded = sessionStore.forward(gameId, HttpMethod.POST, path, moveData, hops);
+            if (forwarded != null) {
+                return CompletableFuture.completedFuture(forwarded);
+            }
+            local = fallback;
+        }
+        if (local == null) {
+            return CompletableFuture.completedFuture(gameNotFound());
         }
 
         int row1 = moveData.get("row1");
@@ -71,45 +147,121 @@ public class GameController {
         int row2 = moveData.get("row2");
         int col2 = moveData.get("col2");
 
-        boolean moveSuccess = gameService.makeMove(gameSession, row1, col1, row2, col2);
-
-        if (moveSuccess) {
-            // 检查游戏是否结束
-            if (gameSession.getBoard().isGameOver()) {
-                // 获取userId，确保是Long类型
-                Long userId = null;
-                if (gameSession.getUserId() != null) {
-                    try {
-                        userId = Long.parseLong(gameSession.getUserId());
-                    } catch (NumberFormatException e) {
-                        // 处理userId不是数字的情况
-                        // 如果userId不是数字，则当作游客处理
-                        scoreService.saveGuestScore(gameSession.getBoard().getScore());
+        // 玩家已经走了，不再需要之前请求的提示
+        solverService.cancel(gameId);
+        GameSession gameSession = local;
+        return gameService.submitMove(gameSession, row1, col1, row2, col2)
+                .<CompletableFuture<ResponseEntity<?>>>handle((snapshot, error) -> {
+                    if (error == null) {
+                        return CompletableFuture.completedFuture(moveResponse(gameSession, snapshot));
                     }
-                }
+                    if (gameSession.isTransferred()) {
+                        return CompletableFuture.supplyAsync(() -> {
+                            ResponseEntity<byte[]> forwarded = sessionStore.forward(gameId, HttpMethod.POST, path, moveData, hops);
+                            return forwarded != null ? forwarded : gameNotFound();
+                        });
+                    }
+                    return CompletableFuture.failedFuture(error);
+                })
+                .thenCompose(response -> response);
+    }
+
+    // 只转发格式正确的会话ID（ID会拼接到转发的地址中）
+    private static boolean isGameId(String gameId) {
+        try {
+            return UUID.fromString(gameId).toString().equals(gameId);
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    private static ResponseEntity<?> gameNotFound() {
+        return ResponseEntity.status(HttpStatus.NOT_FOUND).body(Map.of("success", false, "message", "游戏会话不存在"));
+    }
 
-                // 保存分数
-                if (userId != null) {
-                    scoreService.saveScore(userId, gameSession.getBoard().getScore());
+    // 移动结果的响应，面板、分数和连锁消除过程都取自这次移动发布的快照（无效移动为null）
+    private ResponseEntity<?> moveResponse(GameSession gameSession, BoardSnapshot snapshot) {
+        if (snapshot == null) {
+            return ResponseEntity.ok(Map.of(
+                    "success", false,
+                    "message", "无效的移动"
+            ));
+        }
+
+        // 检查游戏是否结束
+        if (snapshot.isGameOver()) {
+            // 获取userId，确保是Long类型
+            Long userId = null;
+            if (gameSession.getUserId() != null) {
+                try {
+                    userId = Long.parseLong(gameSession.getUserId());
+                } catch (NumberFormatException e) {
+                    // 处理userId不是数字的情况
+                    // 如果userId不是数字，则当作游客处理
+                    scoreService.saveGuestScore(snapshot.getScore());
                 }
+            }
 
-                return ResponseEntity.ok(Map.of(
-                        "success", true,
-                        "gameOver", true,
-                        "score", gameSession.getBoard().getScore()
-                ));
+            // 保存分数
+            if (userId != null) {
+                scoreService.saveScore(userId, snapshot.getScore());
             }
 
             return ResponseEntity.ok(Map.of(
                     "success", true,
-                    "gameOver", false,
-                    "board", gameSession.getBoard()
+                    "gameOver", true,
+                    "won", snapshot.isWon(),
+                    "score", snapshot.getScore(),
+                    "cascade", snapshot.getCascade()
             ));
-        } else {
+        }
+
+        // 附带本次移动的连锁消除过程，客户端可以据此播放动画
+        return ResponseEntity.ok(Map.of(
+                "success", true,
+                "gameOver", false,
+                "board", snapshot,
+                "cascade", snapshot.getCascade()
+        ));
+    }
+
+    // 获取提示：在服务器端搜索当前面板的最佳移动
+    @GetMapping("/hint")
+    @ResponseBody
+    public ResponseEntity<?> getHint(HttpSession session) {
+        GameSession gameSession = (GameSession) session.getAttribute("gameSession");
+        if (gameSession == null) {
+            return ResponseEntity.badRequest().build();
+        }
+
+        Hint hint = solverService.findBestMove(gameSession);
+        if (hint == null) {
             return ResponseEntity.ok(Map.of(
                     "success", false,
-                    "message", "无效的移动"
+                    "message", "没有可走的移动"
             ));
         }
+        return ResponseEntity.ok(hint);
+    }
+
+    // 由服务器端机器人代为执行若干步（最多100步）
+    @PostMapping("/bot")
+    @ResponseBody
+    public ResponseEntity<?> playBot(@RequestParam(defaultValue = "1") int moves, HttpSession session) {
+        GameSession gameSession = (GameSession) session.getAttribute("gameSession");
+        if (gameSession == null) {
+            return ResponseEntity.badRequest().build();
+        }
+
+        BotResult result = solverService.playBot(gameSession, Math.max(0, Math.min(moves, 100)));
+        BoardSnapshot snapshot = gameService.activate(gameSession).getSnapshot();
+        return ResponseEntity.ok(Map.of(
+                "success", result.getMoves() > 0,
+                "moves", result.getMoves(),
+                "stopReason", result.getStopReason(),
+                "gameOver", snapshot.isGameOver(),
+                "won", snapshot.isWon(),
+                "board", snapshot
+        ));
     }
 }
\ No newline at end of file
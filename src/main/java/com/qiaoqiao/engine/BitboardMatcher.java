@@ -0,0 +1,93 @@
+// 位棋盘匹配检测
+package com.qiaoqiao.engine;
+
+/**
+ * 基于位棋盘的匹配检测，适用于格子数不超过64的面板（例如8x8）
+ * 每种类型一个long，第index位对应格子index，
+ * 用移位和按位与即可找出所有长度不小于3的水平和垂直连线
+ */
+public final class BitboardMatcher {
+
+    private BitboardMatcher() {
+    }
+
+    // 面板是否可以使用位棋盘检测
+    public static boolean supports(BoardGrid grid) {
+        return grid.hasBitboards();
+    }
+
+    // 检查是否存在匹配
+    public static boolean hasMatches(BoardGrid grid) {
+        int columns = grid.getColumns();
+        boolean vertical = grid.getRows() >= 3;
+        long startMask = grid.getHorizontalStartMask();
+        for (byte t = 0; t < grid.getTypeCount(); t++) {
+            long m = grid.getBitboard(t);
+            if (horizontalStarts(m, startMask) != 0) {
+                return true;
+            }
+            if (vertical && verticalStarts(m, columns) != 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // 查找所有匹配的格子，返回位掩码
+    public static long findMatches(BoardGrid grid) {
+        int columns = grid.getColumns();
+        boolean vertical = grid.getRows() >= 3;
+        long startMask = grid.getHorizontalStartMask();
+        long matched = 0L;
+        for (byte t = 0; t < grid.getTypeCount(); t++) {
+            long m = grid.getBitboard(t);
+            long h = horizontalStarts(m, startMask);
+            matched |= h | (h << 1) | (h << 2);
+            if (vertical) {
+                long v = verticalStarts(m, columns);
+                matched |= v | (v << columns) | (v << (columns << 1));
+            }
+        }
+        return matched;
+    }
+
+    // 每条水平连线（长度不小于3）的第一个格子
+    public static long horizontalRunStarts(BoardGrid grid) {
+        long startMask = grid.getHorizontalStartMask();
+        long notFirstColumn = ~grid.getFirstColumnMask();
+        long starts = 0L;
+        for (byte t = 0; t < grid.getTypeCount(); t++) {
+            long h = horizontalStarts(grid.getBitboard(t), startMask);
+            long run = h | (h << 1) | (h << 2);
+            // 左边的格子不在同类型连线中的才是起点
+            starts |= run & ~((run << 1) & notFirstColumn);
+        }
+        return starts;
+    }
+
+    // 每条垂直连线（长度不小于3）的第一个格子
+    public static long verticalRunStarts(BoardGrid grid) {
+        if (grid.getRows() < 3) {
+            return 0L;
+        }
+        int columns = grid.getColumns();
+        long starts = 0L;
+        for (byte t = 0; t < grid.getTypeCount(); t++) {
+            long v = verticalStarts(grid.getBitboard(t), columns);
+            long run = v | (v << columns) | (v << (columns << 1));
+            // 上方的格子不在同类型连线中的才是起点
+            starts |= run & ~(run << columns);
+        }
+        return starts;
+    }
+
+    // 三个连续同类型格子中最左边的格子
+    private static long horizontalStarts(long m, long startMask) {
+        return m & (m >>> 1) & (m >>> 2) & startMask;
+    }
+
+    // 三个连续同类型格子中最上边的格子（调用方保证行数不小于3）
+    private static long verticalStarts(long m, int columns) {
+        return m & (m >>> columns) & (m >>> (columns << 1));
+    }
+}
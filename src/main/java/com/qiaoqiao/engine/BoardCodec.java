@@ -0,0 +1,246 @@
+// 面板紧凑编码
+package com.qiaoqiao.engine;
+
+import java.nio.ByteBuffer;
+
+/**
+ * 把面板和随机数流编码为紧凑的字节序列，用于空闲会话的钝化和恢复
+ * 瓦片类型每格4位（类型数超过15时每格8位），空格子编码为全1；
+ * 特殊效果很稀疏，只记录有效果的格子（下标差值和效果）；
+ * 瓦片编号按列优先顺序记录与前一格的差值（zigzag变长整数）：同一次填充的新瓦片在一列中是连续编号，
+ * 初始面板按行分配编号，列方向的差值等于列数，所以大多数编号只占1到2个字节；
+ * 障碍物只在有障碍物的面板上记录（标记1为有过关条件，2为没有），每格4位的布局字符序号。
+ * 随机数流只需种子和已消耗的个数，位棋盘、哈希、脏标记等派生数据在恢复时重新计算。
+ */
+public final class BoardCodec {
+
+    private static final String OBSTACLE_CHARS = "" + ObstacleLayer.NONE + ObstacleLayer.BLOCKER + ObstacleLayer.ICE
+            + ObstacleLayer.DOUBLE_ICE + ObstacleLayer.LOCK + ObstacleLayer.HOLE;
+
+    private BoardCodec() {
+    }
+
+    // 编码后最多占用的字节数（用于分配缓冲区）
+    public static int maxBytes(BoardGrid grid) {
+        // 固定部分（尺寸、随机数流、编号计数器、效果数、障碍物标记）不超过48字节，
+        // 每格最多：类型1字节、效果6字节、编号5字节、障碍物1字节
+        return 48 + grid.getCellCount() * 13;
+    }
+
+    // 随机数流：种子和已消耗的个数
+    public static void writeRandom(GameRandom random, ByteBuffer buffer) {
+        buffer.putLong(random.getSeed());
+        writeVarLong(buffer, random.getDraws());
+    }
+
+    public static GameRandom readRandom(ByteBuffer buffer) {
+        long seed = buffer.getLong();
+        return new GameRandom(seed, readVarLong(buffer));
+    }
+
+    // 把面板写入buffer
+    public static void write(BoardGrid grid, ByteBuffer buffer) {
+        int rows = grid.getRows();
+        int columns = grid.getColumns();
+        int cellCount = grid.getCellCount();
+        writeVarInt(buffer, rows);
+        writeVarInt(buffer, columns);
+        writeVarInt(buffer, grid.getTypeCount());
+        writeVarInt(buffer, grid.getNextId());
+
+        // 瓦片类型
+        int bits = typeBits(grid.getTypeCount());
+        int mask = (1 << bits) - 1;
+        for (int index = 0; index < cellCount; index += 8 / bits) {
+            int packed = grid.getType(index) & mask;
+            if (bits == 4 && index + 1 < cellCount) {
+                packed |= (grid.getType(index + 1) & mask) << 4;
+            }
+            buffer.put((byte) packed);
+        }
+
+        // 特殊效果：数量，然后每个的下标差值和效果
+        int effects = 0;
+        for (int index = 0; index < cellCount; index++) {
+            if (grid.getEffect(index) != BoardGrid.EFFECT_NONE) {
+                effects++;
+            }
+        }
+        writeVarInt(buffer, effects);
+        int previous = 0;
+        for (int index = 0; index < cellCount; index++) {
+            if (grid.getEffect(index) != BoardGrid.EFFECT_NONE) {
+                writeVarInt(buffer, index - previous);
+                buffer.put(grid.getEffect(index));
+                previous = index;
+            }
+        }
+
+        // 瓦片编号：列优先顺序与前一格的差值
+        int previousId = 0;
+        for (int j = 0; j < columns; j++) {
+            for (int i = 0; i < rows; i++) {
+                int id = grid.getId(i * columns + j);
+                writeVarInt(buffer, zigzag(id - previousId));
+                previousId = id;
+            }
+        }
+
+        // 障碍物
+        ObstacleLayer obstacles = grid.getObstacles();
+        buffer.put((byte) (obstacles == null ? 0 : obstacles.hasGoal() ? 1 : 2));
+        if (obstacles != null) {
+            for (int index = 0; index < cellCount; index += 2) {
+                int packed = obstacleCode(obstacles.getFlags(index));
+                if (index + 1 < cellCount) {
+                    packed |= obstacleCode(obstacles.getFlags(index + 1)) << 4;
+                }
+                buffer.put((byte) packed);
+            }
+        }
+    }
+
+    /**
+     * 从buffer读取write写入的面板
+     * 恢复的面板与编码时的面板类型、效果、编号、障碍物和哈希都相同，没有脏标记，合法移动需要重新建立索引
+     */
+    public static BoardGrid read(ByteBuffer buffer) {
+        int rows = readVarInt(buffer);
+        int columns = readVarInt(buffer);
+        int typeCount = readVarInt(buffer);
+        int nextId = readVarInt(buffer);
+        // 每格类型至少占半个字节，尺寸超出剩余数据的编码是损坏的，不按它分配数组
+        if (rows <= 0 || columns <= 0 || (long) rows * columns > 2L * buffer.remaining()) {
+            throw new IllegalArgumentException("面板编码的尺寸不正确: " + rows + "x" + columns);
+        }
+        int cellCount = rows * columns;
+
+        byte[] types = new byte[cellCount];
+        int bits = typeBits(typeCount);
+        int mask = (1 << bits) - 1;
+        for (int index = 0; index < cellCount; index += 8 / bits) {
+            int packed = buffer.get() & 0xFF;
+            types[index] = type(packed & mask, mask);
+            if (bits == 4 && index + 1 < cellCount) {
+                types[index + 1] = type(packed >>> 4, mask);
+            }
+        }
+
+        byte[] effects = new byte[cellCount];
+        int index = 0;
+        for (int n = readVarInt(buffer); n > 0; n--) {
+            index += readVarInt(buffer);
+            effects[index] = buffer.get();
+        }
+
+        int[] ids = new int[cellCount];
+        int previousId = 0;
+        for (int j = 0; j < columns; j++) {
+            for (int i = 0; i < rows; i++) {
+                previousId += unzigzag(readVarInt(buffer));
+                ids[i * columns + j] = previousId;
+            }
+        }
+
+        ObstacleLayer obstacles = null;
+        byte obstacleMark = buffer.get();
+        if (obstacleMark != 0) {
+            char[][] layout = new char[rows][columns];
+            for (int cell = 0; cell < cellCount; cell += 2) {
+                int packed = buffer.get() & 0xFF;
+                layout[cell / columns][cell % columns] = OBSTACLE_CHARS.charAt(packed & 0xF);
+                if (cell + 1 < cellCount) {
+                    layout[(cell + 1) / columns][(cell + 1) % columns] = OBSTACLE_CHARS.charAt(packed >>> 4);
+                }
+            }
+            String[] rowsLayout = new String[rows];
+            for (int i = 0; i < rows; i++) {
+                rowsLayout[i] = new String(layout[i]);
+            }
+            obstacles = new ObstacleLayer(rows, columns);
+            obstacles.apply(rowsLayout);
+            obstacles.setGoal(obstacleMark == 1);
+        }
+
+        BoardGrid grid = new BoardGrid(rows, columns, typeCount);
+        grid.load(types, effects, obstacles);
+        grid.restoreIds(ids, nextId);
+        return grid;
+    }
+
+    // 每格类型占用的位数，留出全1表示空格子
+    private static int typeBits(int typeCount) {
+        return typeCount < 15 ? 4 : 8;
+    }
+
+    private static byte type(int value, int mask) {
+        return value == mask ? BoardGrid.EMPTY : (byte) value;
+    }
+
+    // 一个格子的障碍物标记转换为布局字符序号（布局中每格最多一种障碍物）
+    private static int obstacleCode(int flags) {
+        if ((flags & ObstacleLayer.FLAG_BLOCKER) != 0) {
+            return 1;
+        }
+        if ((flags & ObstacleLayer.FLAG_DOUBLE_ICE) != 0) {
+            return 3;
+        }
+        if ((flags & ObstacleLayer.FLAG_ICE) != 0) {
+            return 2;
+        }
+        if ((flags & ObstacleLayer.FLAG_LOCK) != 0) {
+            return 4;
+        }
+        if ((flags & ObstacleLayer.FLAG_HOLE) != 0) {
+            return 5;
+        }
+        return 0;
+    }
+
+    private static int zigzag(int value) {
+        return (value << 1) ^ (value >> 31);
+    }
+
+    private static int unzigzag(int value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    // 无符号变长整数，每字节7位，最高位表示后面还有字节
+    public static void writeVarInt(ByteBuffer buffer, int value) {
+        while ((value & ~0x7F) != 0) {
+            buffer.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte) value);
+    }
+
+    public static int readVarInt(ByteBuffer buffer) {
+        int value = 0;
+        for (int shift = 0; ; shift += 7) {
+            byte b = buffer.get();
+            value |= (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+    }
+
+    public static void writeVarLong(ByteBuffer buffer, long value) {
+        while ((value & ~0x7FL) != 0) {
+            buffer.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte) value);
+    }
+
+    public static long readVarLong(ByteBuffer buffer) {
+        long value = 0;
+        for (int shift = 0; ; shift += 7) {
+            byte b = buffer.get();
+            value |= (long) (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+    }
+}
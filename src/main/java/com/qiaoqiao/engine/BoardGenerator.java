@@ -0,0 +1,116 @@
+// 面板生成器
+package com.qiaoqiao.engine;
+
+/**
+ * 一次遍历生成没有初始匹配的面板
+ * 按行优先顺序逐格选择类型，排除会与左边两个或上边两个格子组成三连的类型，
+ * 每个格子只消耗一个随机数，耗时与面板大小成正比，不需要反复重新生成。
+ * 生成后保证至少存在一个合法移动。
+ * 石块和洞所在的格子保持为空，空格子不会和任何类型组成三连。
+ */
+public final class BoardGenerator {
+
+    private BoardGenerator() {
+    }
+
+    // 重新生成面板上的所有格子，清除特殊效果，所有瓦片取新的编号
+    public static void generate(BoardGrid grid, GameRandom random) {
+        int typeCount = grid.getTypeCount();
+        if (typeCount < 3) {
+            throw new IllegalArgumentException("至少需要3种瓦片类型才能生成无匹配的面板");
+        }
+        int rows = grid.getRows();
+        int columns = grid.getColumns();
+
+        for (int i = 0; i < rows; i++) {
+            for (int j = 0; j < columns; j++) {
+                if (grid.isBlocked(grid.index(i, j))) {
+                    grid.clear(grid.index(i, j));
+                    continue;
+                }
+                // 左边两个同类型时排除该类型
+                byte left = j >= 2 && grid.getType(i, j - 1) == grid.getType(i, j - 2)
+                        ? grid.getType(i, j - 1) : BoardGrid.EMPTY;
+                // 上边两个同类型时排除该类型
+                byte up = i >= 2 && grid.getType(i - 1, j) == grid.getType(i - 2, j)
+                        ? grid.getType(i - 1, j) : BoardGrid.EMPTY;
+                if (up == left) {
+                    up = BoardGrid.EMPTY;
+                }
+                int forbidden = (left != BoardGrid.EMPTY ? 1 : 0) + (up != BoardGrid.EMPTY ? 1 : 0);
+
+                // 在剩余类型中均匀选择，跳过被排除的类型
+                int pick = random.nextInt(typeCount - forbidden);
+                byte type = 0;
+                for (byte t = 0; t < typeCount; t++) {
+                    if (t == left || t == up) {
+                        continue;
+                    }
+                    if (pick-- == 0) {
+                        type = t;
+                        break;
+                    }
+                }
+                int index = grid.index(i, j);
+                grid.setType(index, type);
+                grid.setEffect(index, BoardGrid.EFFECT_NONE);
+            }
+        }
+
+        if (!MoveGenerator.hasAnyMove(grid)) {
+            plantMove(grid, random);
+        }
+        grid.assignIds();
+    }
+
+    // 在面板上放置一个"两个相连加一个错位"的形状，保证至少有一个合法移动且不产生匹配
+    private static void plantMove(BoardGrid grid, GameRandom random) {
+        int rows = grid.getRows();
+        int columns = grid.getColumns();
+        int typeCount = grid.getTypeCount();
+        int cellCount = grid.getCellCount();
+        int start = random.nextInt(cellCount);
+
+        for (int n = 0; n < cellCount; n++) {
+            int index = (start + n) % cellCount;
+            int i = index / columns;
+            int j = index % columns;
+            for (byte t = 0; t < typeCount; t++) {
+                // 水平形状：(i,j)(i,j+1) 与 (i+1,j+2)，把(i+1,j+2)向上交换即可组成三连
+                if (i + 1 < rows && j + 2 < columns &&
+                        tryPlant(grid, t, i, j, i, j + 1, i + 1, j + 2)) {
+                    return;
+                }
+                // 垂直形状：(i,j)(i+1,j) 与 (i+2,j+1)，把(i+2,j+1)向左交换即可组成三连
+                if (i + 2 < rows && j + 1 < columns &&
+                        tryPlant(grid, t, i, j, i + 1, j, i + 2, j + 1)) {
+                    return;
+                }
+            }
+        }
+    }
+
+    // 把三个格子设为同一类型，若产生匹配或仍然没有合法移动则恢复原状
+    private static boolean tryPlant(BoardGrid grid, byte type, int r1, int c1, int r2, int c2, int r3, int c3) {
+        if (grid.isBlocked(grid.index(r1, c1)) || grid.isBlocked(grid.index(r2, c2)) ||
+                grid.isBlocked(grid.index(r3, c3))) {
+            return false;
+        }
+        byte old1 = grid.getType(r1, c1);
+        byte old2 = grid.getType(r2, c2);
+        byte old3 = grid.getType(r3, c3);
+        grid.setType(r1, c1, type);
+        grid.setType(r2, c2, type);
+        grid.setType(r3, c3, type);
+
+        if (!LocalMatcher.hasMatchAt(grid, r1, c1) && !LocalMatcher.hasMatchAt(grid, r2, c2) &&
+                !LocalMatcher.hasMatchAt(grid, r3, c3) && MoveGenerator.hasAnyMove(grid)) {
+            return true;
+        }
+
+        grid.setType(r1, c1, old1);
+        grid.setType(r2, c2, old2);
+        grid.setType(r3, c3, old3);
+        return false;
+    }
+}
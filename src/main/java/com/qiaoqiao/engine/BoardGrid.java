@@ -0,0 +1,612 @@
+// 游戏面板核心数据
+package com.qiaoqiao.engine;
+
+import com.qiaoqiao.util.Constants;
+
+import java.util.Arrays;
+
+/**
+ * 以扁平字节数组保存的面板网格
+ * 每个格子存放瓦片类型序号，特殊效果保存在平行的效果数组中，
+ * 瓦片编号保存在平行的编号数组中：编号跟随瓦片交换和下落，新填充的瓦片取新的编号，空格子为0。
+ * 同时维护整个面板的Zobrist哈希：每个格子的(类型, 效果)对应一个64位键，
+ * 哈希是全部非空格子的键的异或，每次修改只异或变化的格子，不需要重新扫描面板。
+ * 挑战模式的石块、冰层、锁和洞保存在单独的障碍物位平面中（见ObstacleLayer），普通面板没有该对象。
+ * 另外记录自上次发布快照以来有变化的块（见GridImage），发布时只复制这些块。
+ */
+public final class BoardGrid {
+
+    // 空格子
+    public static final byte EMPTY = -1;
+
+    // 特殊效果编码
+    public static final byte EFFECT_NONE = 0;
+    public static final byte EFFECT_ROW_CLEAR = 1;
+    public static final byte EFFECT_COLUMN_CLEAR = 2;
+    public static final byte EFFECT_BOMB = 3;
+    public static final byte EFFECT_COLOR_BOMB = 4;
+
+    // 可以用位棋盘表示的最大格子数（一个long）
+    public static final int MAX_BITBOARD_CELLS = 64;
+
+    private final int rows;        // 行数
+    private final int columns;     // 列数
+    private final int typeCount;   // 瓦片类型数量
+    private final byte[] cells;    // 瓦片类型序号，下标为 row * columns + col
+    private final byte[] effects;  // 特殊效果编码，与cells一一对应
+    private final int[] ids;       // 瓦片编号，与cells一一对应
+    private int nextId = 1;        // 下一个新瓦片的编号
+    // 每种类型一个位棋盘，第index位表示该格子是此类型；格子数超过64时为null
+    private final long[] bitboards;
+    private final long firstColumnMask;      // 第0列格子的位掩码
+    private final long horizontalStartMask;  // 可以作为水平三连起点的格子（col <= columns - 3）
+    // 自上次清理以来类型发生变化的行和列（位集），用于只重新扫描受影响的连线
+    private final long[] dirtyRows;
+    private final long[] dirtyColumns;
+    // 自合法移动索引上次同步以来每列类型发生变化的行范围，没有变化时top > bottom
+    private final int[] changedTop;
+    private final int[] changedBottom;
+    private long hash;                        // Zobrist哈希（包括障碍物）
+    private ObstacleLayer obstacles;          // 障碍物位平面，没有障碍物时为null
+    // 自上次发布快照以来内容有变化的块（位集，块的划分见GridImage）和障碍物是否有变化
+    private final int blockColumns;
+    private final int blockCount;
+    private final long[] unpublished;
+    private boolean obstaclesUnpublished;
+
+    public BoardGrid(int rows, int columns, int typeCount) {
+        if (rows <= 0 || columns <= 0) {
+            throw new IllegalArgumentException("面板尺寸无效: " + rows + "x" + columns);
+        }
+        if (typeCount <= 0 || typeCount > Byte.MAX_VALUE) {
+            throw new IllegalArgumentException("瓦片类型数量无效: " + typeCount);
+        }
+        this.rows = rows;
+        this.columns = columns;
+        this.typeCount = typeCount;
+        this.cells = new byte[rows * columns];
+        this.effects = new byte[rows * columns];
+        this.ids = new int[rows * columns];
+        this.bitboards = rows * columns <= MAX_BITBOARD_CELLS ? new long[typeCount] : null;
+        long firstColumn = 0L;
+        long horizontalStart = 0L;
+        if (bitboards != null) {
+            for (int i = 0; i < rows; i++) {
+                firstColumn |= 1L << (i * columns);
+                for (int j = 0; j < columns - 2; j++) {
+                    horizontalStart |= 1L << (i * columns + j);
+                }
+            }
+        }
+        this.firstColumnMask = firstColumn;
+        this.horizontalStartMask = horizontalStart;
+        this.dirtyRows = new long[(rows + 63) >>> 6];
+        this.dirtyColumns = new long[(columns + 63) >>> 6];
+        this.changedTop = new int[columns];
+        this.changedBottom = new int[columns];
+        clearChanged();
+        this.blockColumns = (columns + GridImage.BLOCK_SIZE - 1) / GridImage.BLOCK_SIZE;
+        this.blockCount = blockColumns * ((rows + GridImage.BLOCK_SIZE - 1) / GridImage.BLOCK_SIZE);
+        this.unpublished = new long[(blockCount + 63) >>> 6];
+        markAllUnpublished();
+        Arrays.fill(cells, EMPTY);
+        this.hash = emptyHash();
+    }
+
+    // 复制一个内容完全相同的面板（类型、效果、位棋盘和脏标记）
+    public BoardGrid copy() {
+        BoardGrid copy = new BoardGrid(rows, columns, typeCount);
+        copy.copyFrom(this);
+        return copy;
+    }
+
+    // 用同尺寸面板的内容覆盖当前面板，搜索时反复复用同一个网格对象
+    public void copyFrom(BoardGrid other) {
+        if (other.rows != rows || other.columns != columns || other.typeCount != typeCount) {
+            throw new IllegalArgumentException("面板尺寸或类型数量不同");
+        }
+        System.arraycopy(other.cells, 0, cells, 0, cells.length);
+        System.arraycopy(other.effects, 0, effects, 0, effects.length);
+        System.arraycopy(other.ids, 0, ids, 0, ids.length);
+        nextId = other.nextId;
+        if (bitboards != null) {
+            System.arraycopy(other.bitboards, 0, bitboards, 0, bitboards.length);
+        }
+        System.arraycopy(other.dirtyRows, 0, dirtyRows, 0, dirtyRows.length);
+        System.arraycopy(other.dirtyColumns, 0, dirtyColumns, 0, dirtyColumns.length);
+        System.arraycopy(other.changedTop, 0, changedTop, 0, columns);
+        System.arraycopy(other.changedBottom, 0, changedBottom, 0, columns);
+        if (other.obstacles == null) {
+            obstacles = null;
+        } else if (obstacles == null) {
+            obstacles = other.obstacles.copy();
+        } else {
+            obstacles.copyFrom(other.obstacles);
+        }
+        hash = other.hash;
+        markAllUnpublished();
+    }
+
+    public int getRows() {
+        return rows;
+    }
+
+    public int getColumns() {
+        return columns;
+    }
+
+    public int getCellCount() {
+        return cells.length;
+    }
+
+    public int getTypeCount() {
+        return typeCount;
+    }
+
+    // 是否维护位棋盘
+    public boolean hasBitboards() {
+        return bitboards != null;
+    }
+
+    // 获取某种类型的位棋盘
+    public long getBitboard(byte type) {
+        return bitboards[type];
+    }
+
+    public long getFirstColumnMask() {
+        return firstColumnMask;
+    }
+
+    public long getHorizontalStartMask() {
+        return horizontalStartMask;
+    }
+
+    // 当前面板状态的64位Zobrist哈希（类型和效果相同的同尺寸面板哈希相同）
+    public long getHash() {
+        return hash;
+    }
+
+    // 把全部格子的类型和效果复制到给定数组（用于生成快照）
+    public void copyCells(byte[] types, byte[] effects) {
+        System.arraycopy(cells, 0, types, 0, cells.length);
+        System.arraycopy(this.effects, 0, effects, 0, cells.length);
+    }
+
+    // 把全部格子的瓦片编号复制到给定数组
+    public void copyIds(int[] target) {
+        System.arraycopy(ids, 0, target, 0, ids.length);
+    }
+
+    // 用给定数组覆盖全部格子，重建位棋盘和哈希，分配新的瓦片编号，并清除脏标记（用于从快照恢复）
+    public void load(byte[] types, byte[] effects) {
+        load(types, effects, null);
+    }
+
+    // 同上，并使用给定障碍物位平面的副本（null表示没有障碍物）
+    public void load(byte[] types, byte[] effects, ObstacleLayer obstacles) {
+        this.obstacles = obstacles == null ? null : obstacles.copy();
+        if (types.length != cells.length || effects.length != cells.length) {
+            throw new IllegalArgumentException("格子数不同: " + types.length + ", 期望" + cells.length);
+        }
+        System.arraycopy(types, 0, cells, 0, cells.length);
+        System.arraycopy(effects, 0, this.effects, 0, cells.length);
+        if (bitboards != null) {
+            Arrays.fill(bitboards, 0L);
+            for (int index = 0; index < cells.length; index++) {
+                updateBitboards(index, EMPTY, cells[index]);
+            }
+        }
+        hash = computeHash();
+        assignIds();
+        clearDirty();
+        Arrays.fill(changedTop, 0);
+        Arrays.fill(changedBottom, rows - 1);
+        markAllUnpublished();
+    }
+
+    // 障碍物位平面，没有障碍物时为null
+    public ObstacleLayer getObstacles() {
+        return obstacles;
+    }
+
+    // 按布局设置障碍物（在生成瓦片之前调用），布局字符见ObstacleLayer
+    public void setObstacles(String[] layout) {
+        ObstacleLayer layer = new ObstacleLayer(rows, columns);
+        layer.apply(layout);
+        layer.setGoal(layer.remaining() > 0);
+        obstacles = layer;
+        hash = computeHash();
+        Arrays.fill(changedTop, 0);
+        Arrays.fill(changedBottom, rows - 1);
+        markAllUnpublished();
+    }
+
+    // 格子是否被锁住（锁住的瓦片不能交换）
+    public boolean isLocked(int index) {
+        return obstacles != null && obstacles.isLocked(index);
+    }
+
+    // 格子是否不能放瓦片（石块或洞）
+    public boolean isBlocked(int index) {
+        return obstacles != null && obstacles.isBlocked(index);
+    }
+
+    // 从头计算哈希，用于校验增量维护的结果
+    public long computeHash() {
+        long h = obstacles == null ? emptyHash() : emptyHash() ^ obstacles.hash();
+        for (int index = 0; index < cells.length; index++) {
+            h ^= cellKey(index, cells[index], effects[index]);
+        }
+        return h;
+    }
+
+    // 空面板的哈希：尺寸或类型数量不同的面板哈希不同，可以共用一个缓存
+    private long emptyHash() {
+        return mix(((long) rows << 40) | ((long) columns << 16) | typeCount);
+    }
+
+    // 计算格子下标
+    public int index(int row, int col) {
+        return row * columns + col;
+    }
+
+    // 检查坐标是否在面板内
+    public boolean contains(int row, int col) {
+        return row >= 0 && row < rows && col >= 0 && col < columns;
+    }
+
+    public byte getType(int index) {
+        return cells[index];
+    }
+
+    public byte getType(int row, int col) {
+        return cells[row * columns + col];
+    }
+
+    public void setType(int index, byte type) {
+        setType(index / columns, index % columns, type);
+    }
+
+    public void setType(int row, int col, byte type) {
+        int index = row * columns + col;
+        byte oldType = cells[index];
+        if (oldType == type) {
+            return;
+        }
+        if (bitboards != null) {
+            updateBitboards(index, oldType, type);
+        }
+        byte effect = effects[index];
+        hash ^= cellKey(index, oldType, effect) ^ cellKey(index, type, effect);
+        cells[index] = type;
+        markDirty(row, col);
+    }
+
+    public byte getEffect(int index) {
+        return effects[index];
+    }
+
+    public byte getEffect(int row, int col) {
+        return effects[row * columns + col];
+    }
+
+    public void setEffect(int index, byte effect) {
+        byte type = cells[index];
+        hash ^= cellKey(index, type, effects[index]) ^ cellKey(index, type, effect);
+        effects[index] = effect;
+        markUnpublished(index / columns, index % columns);
+    }
+
+    // 瓦片编号，空格子为0
+    public int getId(int index) {
+        return ids[index];
+    }
+
+    // 设置格子的瓦片编号（重排时编号随瓦片移动）
+    public void setId(int index, int id) {
+        ids[index] = id;
+        markUnpublished(index / columns, index % columns);
+    }
+
+    // 给全部非空格子分配新的编号（生成新面板后调用）
+    public void assignIds() {
+        for (int index = 0; index < cells.length; index++) {
+            ids[index] = cells[index] == EMPTY ? 0 : nextId++;
+        }
+        markAllUnpublished();
+    }
+
+    // 下一个新瓦片的编号
+    int getNextId() {
+        return nextId;
+    }
+
+    // 恢复全部格子的编号和编号计数器（从紧凑编码恢复时使用）
+    void restoreIds(int[] source, int nextId) {
+        System.arraycopy(source, 0, ids, 0, ids.length);
+        this.nextId = nextId;
+        markAllUnpublished();
+    }
+
+    // 为count个新瓦片预留连续的编号，返回第一个编号
+    int reserveIds(int count) {
+        int first = nextId;
+        nextId += count;
+        return first;
+    }
+
+    public boolean isEmpty(int index) {
+        return cells[index] == EMPTY;
+    }
+
+    // 清空格子（类型和效果）
+    public void clear(int index) {
+        setEffect(index, EFFECT_NONE);
+        setType(index, EMPTY);
+        ids[index] = 0;
+    }
+
+    // 把from格子的内容移动到to格子，from变为空
+    public void move(int from, int to) {
+        setType(to, cells[from]);
+        setEffect(to, effects[from]);
+        setEffect(from, EFFECT_NONE);
+        setType(from, EMPTY);
+        ids[to] = ids[from];
+        ids[from] = 0;
+        markUnpublished(to / columns, to % columns);
+    }
+
+    // 交换两个格子的内容（类型和效果一起交换）
+    public void swap(int row1, int col1, int row2, int col2) {
+        int a = row1 * columns + col1;
+        int b = row2 * columns + col2;
+        byte type = cells[a];
+        if (type != cells[b]) {
+            if (bitboards != null) {
+                updateBitboards(a, type, cells[b]);
+                updateBitboards(b, cells[b], type);
+            }
+            markDirty(row1, col1);
+            markDirty(row2, col2);
+        }
+        hash ^= cellKey(a, cells[a], effects[a]) ^ cellKey(b, cells[b], effects[b])
+                ^ cellKey(a, cells[b], effects[b]) ^ cellKey(b, cells[a], effects[a]);
+        cells[a] = cells[b];
+        cells[b] = type;
+        byte effect = effects[a];
+        effects[a] = effects[b];
+        effects[b] = effect;
+        int id = ids[a];
+        ids[a] = ids[b];
+        ids[b] = id;
+        markUnpublished(row1, col1);
+        markUnpublished(row2, col2);
+    }
+
+    /**
+     * 直接写入格子的类型、效果和瓦片编号，更新位棋盘但不标记脏行脏列和变化的块，也不更新哈希
+     * 用于按列下落和填充：返回哈希的变化量，由调用方累加后通过updateHash一次应用，
+     * 写完后再对每个受影响的列调用markColumnDirty。
+     * 没有位棋盘的大面板上，不同线程写入不同列是安全的。
+     */
+    long put(int index, byte type, byte effect, int id) {
+        byte oldType = cells[index];
+        if (bitboards != null && oldType != type) {
+            updateBitboards(index, oldType, type);
+        }
+        long delta = cellKey(index, oldType, effects[index]) ^ cellKey(index, type, effect);
+        cells[index] = type;
+        effects[index] = effect;
+        ids[index] = id;
+        return delta;
+    }
+
+    // 应用put累计的哈希变化量
+    void updateHash(long delta) {
+        hash ^= delta;
+    }
+
+    // 标记整列以及第0行到lowestRow行为脏（该列从lowestRow往上的格子都可能变化）
+    void markColumnDirty(int col, int lowestRow) {
+        dirtyColumns[col >>> 6] |= 1L << col;
+        changedTop[col] = 0;
+        if (lowestRow > changedBottom[col]) {
+            changedBottom[col] = lowestRow;
+        }
+        for (int w = 0; w <= lowestRow >>> 6; w++) {
+            int bits = Math.min(64, lowestRow + 1 - (w << 6));
+            dirtyRows[w] |= -1L >>> (64 - bits);
+        }
+        for (int row = 0; row <= lowestRow; row += GridImage.BLOCK_SIZE) {
+            markUnpublished(row, col);
+        }
+    }
+
+    // 标记格子所在的行和列为脏
+    private void markDirty(int row, int col) {
+        dirtyRows[row >>> 6] |= 1L << row;
+        dirtyColumns[col >>> 6] |= 1L << col;
+        markChanged(row, col);
+        markUnpublished(row, col);
+    }
+
+    // 记录格子所在的块有变化，下次发布快照时重新复制
+    private void markUnpublished(int row, int col) {
+        int b = (row / GridImage.BLOCK_SIZE) * blockColumns + col / GridImage.BLOCK_SIZE;
+        unpublished[b >>> 6] |= 1L << b;
+    }
+
+    private void markAllUnpublished() {
+        Arrays.fill(unpublished, -1L);
+        obstaclesUnpublished = true;
+    }
+
+    // 障碍物有变化（由ObstacleLayer.absorb调用）
+    void markObstaclesUnpublished() {
+        obstaclesUnpublished = true;
+    }
+
+    int getBlockCount() {
+        return blockCount;
+    }
+
+    boolean isBlockUnpublished(int b) {
+        return (unpublished[b >>> 6] & (1L << b)) != 0;
+    }
+
+    boolean isObstaclesUnpublished() {
+        return obstaclesUnpublished;
+    }
+
+    // 发布快照之后清除变化记录
+    void clearUnpublished() {
+        Arrays.fill(unpublished, 0L);
+        obstaclesUnpublished = false;
+    }
+
+    // 把从index开始的length个格子的类型、效果和编号复制到给定数组的offset处（发布快照时按块的每一行调用）
+    void copyRange(int index, int length, byte[] types, byte[] effects, int[] ids, int offset) {
+        System.arraycopy(cells, index, types, offset, length);
+        System.arraycopy(this.effects, index, effects, offset, length);
+        System.arraycopy(this.ids, index, ids, offset, length);
+    }
+
+    // 记录一个类型没有变化、但交换是否合法可能变化的格子（例如解锁）
+    void markChanged(int row, int col) {
+        if (row < changedTop[col]) {
+            changedTop[col] = row;
+        }
+        if (row > changedBottom[col]) {
+            changedBottom[col] = row;
+        }
+    }
+
+    // 第col列自上次同步以来变化的最上面一行，没有变化时大于getChangedBottom
+    int getChangedTop(int col) {
+        return changedTop[col];
+    }
+
+    // 第col列自上次同步以来变化的最下面一行，没有变化时为-1
+    int getChangedBottom(int col) {
+        return changedBottom[col];
+    }
+
+    // 清除变化范围（合法移动索引同步之后调用）
+    void clearChanged() {
+        Arrays.fill(changedTop, rows);
+        Arrays.fill(changedBottom, -1);
+    }
+
+    // 查找从from开始的下一个脏行，没有则返回-1
+    public int nextDirtyRow(int from) {
+        return nextSetBit(dirtyRows, from, rows);
+    }
+
+    // 查找从from开始的下一个脏列，没有则返回-1
+    public int nextDirtyColumn(int from) {
+        return nextSetBit(dirtyColumns, from, columns);
+    }
+
+    public boolean isRowDirty(int row) {
+        return (dirtyRows[row >>> 6] & (1L << row)) != 0;
+    }
+
+    public boolean isColumnDirty(int col) {
+        return (dirtyColumns[col >>> 6] & (1L << col)) != 0;
+    }
+
+    // 清除所有脏标记
+    public void clearDirty() {
+        Arrays.fill(dirtyRows, 0L);
+        Arrays.fill(dirtyColumns, 0L);
+    }
+
+    private static int nextSetBit(long[] bits, int from, int limit) {
+        if (from >= limit) {
+            return -1;
+        }
+        int w = from >>> 6;
+        long word = bits[w] & (-1L << from);
+        while (true) {
+            if (word != 0) {
+                int next = (w << 6) + Long.numberOfTrailingZeros(word);
+                return next < limit ? next : -1;
+            }
+            if (++w == bits.length) {
+                return -1;
+            }
+            word = bits[w];
+        }
+    }
+
+    /**
+     * 格子的Zobrist键，空格子为0
+     * 键由格子下标、类型和效果经SplitMix64混合得到，而不是查随机数表，
+     * 1024x1024的面板也不需要按格子数分配键表。
+     */
+    static long cellKey(int index, byte type, byte effect) {
+        if (type == EMPTY && effect == EFFECT_NONE) {
+            return 0L;
+        }
+        return mix(((long) index << 16) | ((type & 0xFF) << 8) | (effect & 0xFF));
+    }
+
+    // 障碍物的Zobrist键，与格子的键取自不同的输入范围
+    static long obstacleKey(int index, int kind) {
+        return mix((1L << 62) | ((long) kind << 40) | index);
+    }
+
+    private static long mix(long x) {
+        long z = x + 0x9e3779b97f4a7c15L;
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+
+    // 把格子从旧类型的位棋盘移到新类型的位棋盘
+    private void updateBitboards(int index, byte oldType, byte newType) {
+        long bit = 1L << index;
+        if (oldType != EMPTY) {
+            bitboards[oldType] &= ~bit;
+        }
+        if (newType != EMPTY) {
+            bitboards[newType] |= bit;
+        }
+    }
+
+    // 效果编码转换为常量中的效果名称
+    public static String effectName(byte effect) {
+        switch (effect) {
+            case EFFECT_ROW_CLEAR:
+                return Constants.EFFECT_ROW_CLEAR;
+            case EFFECT_COLUMN_CLEAR:
+                return Constants.EFFECT_COLUMN_CLEAR;
+            case EFFECT_BOMB:
+                return Constants.EFFECT_BOMB;
+            case EFFECT_COLOR_BOMB:
+                return Constants.EFFECT_COLOR_BOMB;
+            default:
+                return null;
+        }
+    }
+
+    // 效果名称转换为效果编码
+    public static byte effectCode(String effect) {
+        if (effect == null) {
+            return EFFECT_NONE;
+        }
+        switch (effect) {
+            case Constants.EFFECT_ROW_CLEAR:
+                return EFFECT_ROW_CLEAR;
+            case Constants.EFFECT_COLUMN_CLEAR:
+                return EFFECT_COLUMN_CLEAR;
+            case Constants.EFFECT_BOMB:
+                return EFFECT_BOMB;
+            case Constants.EFFECT_COLOR_BOMB:
+                return EFFECT_COLOR_BOMB;
+            default:
+                return EFFECT_NONE;
+        }
+    }
+}
@@ -0,0 +1,109 @@
+// 死局重排器
+package com.qiaoqiao.engine;
+
+/**
+ * 面板没有合法移动时重新排列现有瓦片
+ * 保留原有的瓦片（类型、特殊效果和编号），只改变它们的位置，客户端可以按编号做移动动画：
+ * 按行优先顺序从剩余瓦片中随机挑选一个不会与左边两个或上边两个组成三连的瓦片放入，
+ * 排好后没有匹配且至少有一个合法移动才算成功。
+ * 尝试次数有上限，瓦片组合本身无法满足条件时（例如只剩两种类型）退回到重新生成面板。
+ * 锁住的瓦片留在原处，不参与重排。
+ */
+public final class BoardShuffler {
+
+    // 重新排列的最大尝试次数
+    private static final int MAX_ATTEMPTS = 16;
+
+    private BoardShuffler() {
+    }
+
+    /**
+     * 重新排列面板上的瓦片
+     * @return true表示保留了原有瓦片，false表示退回到重新生成
+     */
+    public static boolean reshuffle(BoardGrid grid, GameRandom random) {
+        int cellCount = grid.getCellCount();
+
+        // 收集现有瓦片：高32位为编号，8-15位为类型，低8位为特殊效果
+        long[] tiles = new long[cellCount];
+        long[] pool = new long[cellCount];
+        int tileCount = 0;
+        for (int index = 0; index < cellCount; index++) {
+            if (!grid.isEmpty(index) && !grid.isLocked(index)) {
+                tiles[tileCount++] = ((long) grid.getId(index) << 32)
+                        | (grid.getType(index) & 0xFF) << 8 | (grid.getEffect(index) & 0xFF);
+            }
+        }
+
+        for (int attempt = 0; attempt < MAX_ATTEMPTS; attempt++) {
+            System.arraycopy(tiles, 0, pool, 0, tileCount);
+            if (arrange(grid, random, pool, tileCount) && !matchesAtLocks(grid) && MoveGenerator.hasAnyMove(grid)) {
+                return true;
+            }
+        }
+
+        // 当前瓦片组合无法排出合法面板，重新生成
+        BoardGenerator.generate(grid, random);
+        return false;
+    }
+
+    // 把pool中的瓦片随机排入非空格子，不产生三连；剩余瓦片都会产生三连时返回false
+    private static boolean arrange(BoardGrid grid, GameRandom random, long[] pool, int remaining) {
+        int rows = grid.getRows();
+        int columns = grid.getColumns();
+
+        for (int i = 0; i < rows; i++) {
+            for (int j = 0; j < columns; j++) {
+                int index = grid.index(i, j);
+                if (grid.isEmpty(index) || grid.isLocked(index)) {
+                    continue;
+                }
+                // 暂时清空当前格子，避免旧值参与判断
+                grid.setType(index, BoardGrid.EMPTY);
+
+                byte left = j >= 2 && grid.getType(i, j - 1) == grid.getType(i, j - 2)
+                        ? grid.getType(i, j - 1) : BoardGrid.EMPTY;
+                byte up = i >= 2 && grid.getType(i - 1, j) == grid.getType(i - 2, j)
+                        ? grid.getType(i - 1, j) : BoardGrid.EMPTY;
+
+                // 从随机位置开始循环查找一个允许放入的瓦片
+                int start = random.nextInt(remaining);
+                int chosen = -1;
+                for (int n = 0; n < remaining; n++) {
+                    int k = start + n < remaining ? start + n : start + n - remaining;
+                    byte type = (byte) (pool[k] >>> 8);
+                    if (type != left && type != up) {
+                        chosen = k;
+                        break;
+                    }
+                }
+                if (chosen < 0) {
+                    // 恢复一个瓦片占位，保证失败后格子仍然非空，可以再次尝试
+                    grid.setType(index, (byte) (pool[0] >>> 8));
+                    return false;
+                }
+
+                long tile = pool[chosen];
+                pool[chosen] = pool[--remaining];
+                grid.setType(index, (byte) (tile >>> 8));
+                grid.setEffect(index, (byte) tile);
+                grid.setId(index, (int) (tile >>> 32));
+            }
+        }
+        return true;
+    }
+
+    // 排列时只检查左边和上边，锁住的瓦片可能与右边或下边新排入的瓦片组成三连
+    private static boolean matchesAtLocks(BoardGrid grid) {
+        if (grid.getObstacles() == null) {
+            return false;
+        }
+        int columns = grid.getColumns();
+        for (int index = 0; index < grid.getCellCount(); index++) {
+            if (grid.isLocked(index) && LocalMatcher.hasMatchAt(grid, index / columns, index % columns)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,335 @@
+// 连锁消除处理器
+package com.qiaoqiao.engine;
+
+import com.qiaoqiao.util.Constants;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * 迭代式连锁消除处理器
+ * 以脏行和脏列作为工作队列循环执行：查找匹配 -> 消除 -> 下落 -> 填充，
+ * 直到没有新的匹配为止，不使用递归，连锁深度不受调用栈限制。
+ * 匹配检测和连线计分交给面板使用的匹配引擎，每条连线按MatchEngine.scoreRun计分；
+ * 玩家移动形成的4连及以上生成特殊瓦片，被消除的特殊瓦片连锁引爆，额外消除的格子每个按基础分计分。
+ * 面板有障碍物时，消除区域先作用到障碍物位平面上（解锁、碎冰、碎石块），每清除一个障碍物按基础分计分；
+ * 有固定格子的列下落时越过固定格子，没有固定格子的列仍走原来的路径。
+ * 每个面板持有一个处理器，匹配位集、连线列表和结果对象都在各次移动之间复用；
+ * 需要保留结果的调用方（发布快照）用resolveDetached取走结果对象，处理器换一个新的。
+ */
+public final class CascadeResolver {
+
+    private static final int MIN_BAND_COLUMNS = 16;
+
+    private final BoardGrid grid;
+    private GameRandom random;                             // 填充新瓦片使用的随机数流
+    private final MatchEngine engine;                      // 匹配规则
+    private final long[] matched;                          // 本步匹配的格子
+    private final RunList runs = new RunList();            // 本步匹配的连线
+    private final SpecialResolver specials;                // 特殊瓦片的生成和引爆
+    private final ForkJoinPool pool;                       // 并行下落使用的线程池，顺序引擎或有位棋盘的小面板为null
+    private final int parallelThreshold;                   // 一步中需要下落的格子数达到该值时才并行处理
+    private final int[] emptyCounts;                       // 本步每列被消除的格子数
+    private final int[] lowestEmpty;                       // 本步每列最低的被消除行，没有为-1
+    private final ColumnBand sequentialBand;               // 顺序处理时覆盖全部列的段
+    private ColumnBand[] columnBands;
+    private CascadeResult result = new CascadeResult();
+
+    public CascadeResolver(BoardGrid grid, GameRandom random, MatchEngine engine) {
+        this.grid = grid;
+        this.random = random;
+        this.engine = engine;
+        this.matched = new long[(grid.getCellCount() + 63) >>> 6];
+        this.specials = new SpecialResolver(grid);
+        // 位棋盘由所有列共享，不能分列并行写入
+        this.pool = grid.hasBitboards() ? null : engine.getPool();
+        this.parallelThreshold = engine.getParallelThreshold();
+        this.emptyCounts = new int[grid.getColumns()];
+        this.lowestEmpty = new int[grid.getColumns()];
+        Arrays.fill(lowestEmpty, -1);
+        this.sequentialBand = new ColumnBand(0, grid.getColumns());
+    }
+
+    // 换用另一个随机数流（搜索在不同任务之间复用处理器时使用）
+    public void setRandom(GameRandom random) {
+        this.random = random;
+    }
+
+    // 处理全部连锁消除，返回的结果对象交给调用方，之后的调用不会覆盖它
+    public CascadeResult resolveDetached() {
+        CascadeResult resolved = resolve();
+        result = new CascadeResult();
+        return resolved;
+    }
+
+    // 处理当前面板上的全部连锁消除，返回的结果对象会在下一次调用时被覆盖
+    public CascadeResult resolve() {
+        result.reset();
+        while (findMatches()) {
+            int score = scoreRuns();
+            if (result.getDepth() == 0) {
+                specials.reserveCreated(runs, matched);
+            } else {
+                specials.clearCreated();
+            }
+            score += specials.detonate(matched, result) * Constants.SCORE_PER_TILE;
+            specials.applyCreated(result);
+            score += clearMatched() * Constants.SCORE_PER_TILE;
+            fillBoard();
+            result.endStep(score);
+        }
+        return result;
+    }
+
+    // 查找脏行和脏列内的匹配，结果写入matched和runs
+    private boolean findMatches() {
+        Arrays.fill(matched, 0L);
+        runs.clear();
+        int count = engine.findMatches(grid, true, runs, matched);
+        grid.clearDirty();
+        return count > 0;
+    }
+
+    // 本步得分：每条连线单独计分
+    private int scoreRuns() {
+        int score = 0;
+        for (int r = 0; r < runs.size(); r++) {
+            score += MatchEngine.scoreRun(runs.getLength(r));
+        }
+        return score;
+    }
+
+    // 消除匹配的格子，并统计每列的空位数和最低的空位，返回清除的障碍物数
+    private int clearMatched() {
+        int columns = grid.getColumns();
+        ObstacleLayer obstacles = grid.getObstacles();
+        int obstacleHits = 0;
+        if (obstacles != null) {
+            obstacleHits = obstacles.absorb(matched, grid);
+            result.addObstacleHits(obstacleHits);
+        }
+        for (int w = 0; w < matched.length; w++) {
+            long word = matched[w];
+            while (word != 0) {
+                int index = (w << 6) + Long.numberOfTrailingZeros(word);
+                word &= word - 1;
+                grid.clear(index);
+                result.addCleared(index);
+                int row = index / columns;
+                int col = index - row * columns;
+                emptyCounts[col]++;
+                if (row > lowestEmpty[col]) {
+                    lowestEmpty[col] = row;
+                }
+            }
+        }
+        return obstacleHits;
+    }
+
+    /**
+     * 下落现有瓦片并填充顶部空位
+     * 按列处理，没有被消除格子的列直接跳过；新瓦片按列优先、每列从上到下的顺序取随机数和编号，
+     * 所以第j列的第一个随机数位置和第一个新编号都等于前面各列的空位数之和。
+     * 受影响的格子足够多且引擎提供线程池时，把列分成若干段并行处理，
+     * 每段从自己的随机数位置和编号开始，结果与顺序处理完全相同。
+     */
+    private void fillBoard() {
+        int columns = grid.getColumns();
+        int work = 0;
+        int spawns = 0;
+        for (int j = 0; j < columns; j++) {
+            if (emptyCounts[j] > 0) {
+                work += lowestEmpty[j] + 1;
+                spawns += emptyCounts[j];
+            }
+        }
+        int firstId = grid.reserveIds(spawns);
+
+        // 按各列最低空位以上的格子数估计工作量
+        if (pool != null && work >= parallelThreshold) {
+            ColumnBand[] bands = columnBands();
+            long offset = 0;
+            int b = 0;
+            for (int j = 0; j < columns; j++) {
+                if (b < bands.length && bands[b].from == j) {
+                    bands[b].reinitialize();
+                    bands[b].nextId = firstId + (int) offset;
+                    bands[b++].random = random.fork(offset);
+                }
+                offset += emptyCounts[j];
+            }
+            pool.invoke(ForkJoinTask.adapt(() -> ForkJoinTask.invokeAll(bands)));
+            random.skip(offset);
+            for (ColumnBand band : bands) {
+                band.appendTo(result);
+                grid.updateHash(band.hashDelta);
+            }
+        } else {
+            sequentialBand.random = random;
+            sequentialBand.nextId = firstId;
+            sequentialBand.compute();
+            sequentialBand.appendTo(result);
+            grid.updateHash(sequentialBand.hashDelta);
+        }
+
+        for (int j = 0; j < columns; j++) {
+            if (emptyCounts[j] > 0) {
+                grid.markColumnDirty(j, lowestEmpty[j]);
+                emptyCounts[j] = 0;
+                lowestEmpty[j] = -1;
+            }
+        }
+    }
+
+    // 按线程池并行度划分的列段，首次使用时创建
+    private ColumnBand[] columnBands() {
+        if (columnBands == null) {
+            int columns = grid.getColumns();
+            int width = Math.max(MIN_BAND_COLUMNS, (columns + pool.getParallelism() * 2 - 1) / (pool.getParallelism() * 2));
+            columnBands = new ColumnBand[(columns + width - 1) / width];
+            for (int b = 0; b < columnBands.length; b++) {
+                columnBands[b] = new ColumnBand(b * width, Math.min(columns, (b + 1) * width));
+            }
+        }
+        return columnBands;
+    }
+
+    /**
+     * 一段连续的列：下落并填充这些列，下落和新瓦片先记录在本段的缓冲区中，
+     * 全部完成后按列的顺序并入结果
+     */
+    private final class ColumnBand extends RecursiveAction {
+        private final int from;
+        private final int to;
+        private GameRandom random;
+        private int nextId;                // 本段下一个新瓦片的编号
+        private long hashDelta;            // 本段写入造成的哈希变化，完成后由调用线程应用
+        private int dropCount;
+        private int[] dropCells = new int[16];
+        private int[] dropDistances = new int[16];
+        private int spawnCount;
+        private int[] spawnCells = new int[16];
+        private byte[] spawnTypes = new byte[16];
+
+        ColumnBand(int from, int to) {
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            dropCount = 0;
+            spawnCount = 0;
+            hashDelta = 0L;
+            for (int j = from; j < to; j++) {
+                if (emptyCounts[j] > 0) {
+                    fillColumn(j);
+                }
+            }
+        }
+
+        /**
+         * 双指针压实一列：read从最低空位往上扫描，write指向下一个要填入的位置，
+         * 每个非空瓦片连同效果和编号一次移动到位，下落距离为write - read，
+         * 扫描结束后第0行到write行都是空位，接着从上到下填充新瓦片。每个格子只访问一次。
+         */
+        private void fillColumn(int j) {
+            ObstacleLayer obstacles = grid.getObstacles();
+            if (obstacles != null && obstacles.hasFixed(j)) {
+                fillColumnAroundFixed(j, obstacles);
+                return;
+            }
+            int columns = grid.getColumns();
+
+            // 下落现有瓦片（最低空位以下的格子不受影响）
+            int write = lowestEmpty[j];
+            for (int read = write; read >= 0; read--) {
+                int source = read * columns + j;
+                if (grid.isEmpty(source)) {
+                    continue;
+                }
+                if (read != write) {
+                    int target = write * columns + j;
+                    hashDelta ^= grid.put(target, grid.getType(source), grid.getEffect(source), grid.getId(source));
+                    hashDelta ^= grid.put(source, BoardGrid.EMPTY, BoardGrid.EFFECT_NONE, 0);
+                    addDrop(target, write - read);
+                }
+                write--;
+            }
+
+            // 填充顶部空位（write + 1 == emptyCounts[j]）
+            for (int i = 0; i <= write; i++) {
+                int index = i * columns + j;
+                byte type = random.nextType(grid.getTypeCount());
+                hashDelta ^= grid.put(index, type, BoardGrid.EFFECT_NONE, nextId++);
+                addSpawn(index, type);
+            }
+        }
+
+        /**
+         * 有固定格子（石块、锁、洞）的列：与fillColumn相同的双指针压实，
+         * 但read和write都跳过固定格子，瓦片越过固定格子下落，填充时也跳过固定格子
+         */
+        private void fillColumnAroundFixed(int j, ObstacleLayer obstacles) {
+            int columns = grid.getColumns();
+
+            int write = lowestEmpty[j];
+            for (int read = write; read >= 0; read--) {
+                int source = read * columns + j;
+                if (obstacles.isFixed(source) || grid.isEmpty(source)) {
+                    continue;
+                }
+                while (obstacles.isFixed(write * columns + j)) {
+                    write--;
+                }
+                if (read != write) {
+                    int target = write * columns + j;
+                    hashDelta ^= grid.put(target, grid.getType(source), grid.getEffect(source), grid.getId(source));
+                    hashDelta ^= grid.put(source, BoardGrid.EMPTY, BoardGrid.EFFECT_NONE, 0);
+                    addDrop(target, write - read);
+                }
+                write--;
+            }
+
+            // 第0行到write行中不固定的格子都是空位，共emptyCounts[j]个
+            for (int i = 0; i <= write; i++) {
+                int index = i * columns + j;
+                if (obstacles.isFixed(index)) {
+                    continue;
+                }
+                byte type = random.nextType(grid.getTypeCount());
+                hashDelta ^= grid.put(index, type, BoardGrid.EFFECT_NONE, nextId++);
+                addSpawn(index, type);
+            }
+        }
+
+        private void addDrop(int index, int distance) {
+            if (dropCount == dropCells.length) {
+                dropCells = Arrays.copyOf(dropCells, dropCount << 1);
+                dropDistances = Arrays.copyOf(dropDistances, dropCount << 1);
+            }
+            dropCells[dropCount] = index;
+            dropDistances[dropCount++] = distance;
+        }
+
+        private void addSpawn(int index, byte type) {
+            if (spawnCount == spawnCells.length) {
+                spawnCells = Arrays.copyOf(spawnCells, spawnCount << 1);
+                spawnTypes = Arrays.copyOf(spawnTypes, spawnCount << 1);
+            }
+            spawnCells[spawnCount] = index;
+            spawnTypes[spawnCount++] = type;
+        }
+
+        void appendTo(CascadeResult result) {
+            for (int i = 0; i < dropCount; i++) {
+                result.addDrop(dropCells[i], dropDistances[i]);
+            }
+            for (int i = 0; i < spawnCount; i++) {
+                result.addSpawn(spawnCells[i], spawnTypes[i]);
+            }
+        }
+    }
+}
@@ -0,0 +1,352 @@
+// 连锁消除结果
+package com.qiaoqiao.engine;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 一次移动引发的全部连锁消除过程
+ * 每一步记录被消除的格子、引爆的特殊瓦片、新生成的特殊瓦片、
+ * 下落的瓦片和距离、新生成的瓦片类型以及本步得分。
+ * 数据保存在可复用的扁平数组中，同一个面板的每次移动重复使用同一个对象，
+ * 数组只在容量不足时扩容，稳定运行后不再分配内存。
+ */
+public final class CascadeResult {
+
+    private static final int INITIAL_STEPS = 4;
+    private static final int INITIAL_CELLS = 32;
+
+    private int depth;                // 连锁步数
+    private int totalScore;           // 总得分
+    private boolean reshuffled;       // 连锁结束后是否因死局重排了面板
+    private int obstacleHits;         // 清除的障碍物数（解锁、冰层和石块）
+    private int[] stepScores = new int[INITIAL_STEPS];
+
+    // 每一步数据在扁平数组中的结束位置
+    private int[] clearedEnds = new int[INITIAL_STEPS];
+    private int[] dropEnds = new int[INITIAL_STEPS];
+    private int[] spawnEnds = new int[INITIAL_STEPS];
+    private int[] detonatedEnds = new int[INITIAL_STEPS];
+    private int[] createdEnds = new int[INITIAL_STEPS];
+
+    private int clearedCount;
+    private int[] clearedCells = new int[INITIAL_CELLS];      // 被消除的格子下标
+    private int dropCount;
+    private int[] dropCells = new int[INITIAL_CELLS];         // 下落后所在的格子下标
+    private int[] dropDistances = new int[INITIAL_CELLS];     // 下落的行数
+    private int spawnCount;
+    private int[] spawnCells = new int[INITIAL_CELLS];        // 新瓦片所在的格子下标
+    private byte[] spawnTypes = new byte[INITIAL_CELLS];      // 新瓦片的类型序号
+    private int detonatedCount;
+    private int[] detonatedCells = new int[INITIAL_STEPS];    // 引爆的特殊瓦片所在的格子下标
+    private int createdCount;
+    private int[] createdCells = new int[INITIAL_STEPS];      // 新特殊瓦片所在的格子下标
+    private byte[] createdEffects = new byte[INITIAL_STEPS];  // 新特殊瓦片的效果编码
+
+    // 清空结果，准备记录新的移动
+    public void reset() {
+        depth = 0;
+        totalScore = 0;
+        reshuffled = false;
+        obstacleHits = 0;
+        clearedCount = 0;
+        dropCount = 0;
+        spawnCount = 0;
+        detonatedCount = 0;
+        createdCount = 0;
+    }
+
+    public void addObstacleHits(int count) {
+        obstacleHits += count;
+    }
+
+    public void addCleared(int index) {
+        if (clearedCount == clearedCells.length) {
+            clearedCells = Arrays.copyOf(clearedCells, clearedCount << 1);
+        }
+        clearedCells[clearedCount++] = index;
+    }
+
+    public void addDrop(int index, int distance) {
+        if (dropCount == dropCells.length) {
+            dropCells = Arrays.copyOf(dropCells, dropCount << 1);
+            dropDistances = Arrays.copyOf(dropDistances, dropCount << 1);
+        }
+        dropCells[dropCount] = index;
+        dropDistances[dropCount++] = distance;
+    }
+
+    public void addSpawn(int index, byte type) {
+        if (spawnCount == spawnCells.length) {
+            spawnCells = Arrays.copyOf(spawnCells, spawnCount << 1);
+            spawnTypes = Arrays.copyOf(spawnTypes, spawnCount << 1);
+        }
+        spawnCells[spawnCount] = index;
+        spawnTypes[spawnCount++] = type;
+    }
+
+    public void addDetonated(int index) {
+        if (detonatedCount == detonatedCells.length) {
+            detonatedCells = Arrays.copyOf(detonatedCells, detonatedCount << 1);
+        }
+        detonatedCells[detonatedCount++] = index;
+    }
+
+    public void addCreated(int index, byte effect) {
+        if (createdCount == createdCells.length) {
+            createdCells = Arrays.copyOf(createdCells, createdCount << 1);
+            createdEffects = Arrays.copyOf(createdEffects, createdCount << 1);
+        }
+        createdCells[createdCount] = index;
+        createdEffects[createdCount++] = effect;
+    }
+
+    // 结束当前一步
+    public void endStep(int score) {
+        if (depth == stepScores.length) {
+            int capacity = depth << 1;
+            stepScores = Arrays.copyOf(stepScores, capacity);
+            clearedEnds = Arrays.copyOf(clearedEnds, capacity);
+            dropEnds = Arrays.copyOf(dropEnds, capacity);
+            spawnEnds = Arrays.copyOf(spawnEnds, capacity);
+            detonatedEnds = Arrays.copyOf(detonatedEnds, capacity);
+            createdEnds = Arrays.copyOf(createdEnds, capacity);
+        }
+        stepScores[depth] = score;
+        clearedEnds[depth] = clearedCount;
+        dropEnds[depth] = dropCount;
+        spawnEnds[depth] = spawnCount;
+        detonatedEnds[depth] = detonatedCount;
+        createdEnds[depth] = createdCount;
+        depth++;
+        totalScore += score;
+    }
+
+    public int getDepth() {
+        return depth;
+    }
+
+    public int getTotalScore() {
+        return totalScore;
+    }
+
+    public boolean isReshuffled() {
+        return reshuffled;
+    }
+
+    public void setReshuffled(boolean reshuffled) {
+        this.reshuffled = reshuffled;
+    }
+
+    public int getObstacleHits() {
+        return obstacleHits;
+    }
+
+    public int getTotalCleared() {
+        return clearedCount;
+    }
+
+    public int getStepScore(int step) {
+        return stepScores[step];
+    }
+
+    // 第step步消除的格子在getClearedCell中的下标范围 [start, end)
+    public int getClearedStart(int step) {
+        return step == 0 ? 0 : clearedEnds[step - 1];
+    }
+
+    public int getClearedEnd(int step) {
+        return clearedEnds[step];
+    }
+
+    public int getClearedCell(int i) {
+        return clearedCells[i];
+    }
+
+    public int getDropStart(int step) {
+        return step == 0 ? 0 : dropEnds[step - 1];
+    }
+
+    public int getDropEnd(int step) {
+        return dropEnds[step];
+    }
+
+    public int getDropCell(int i) {
+        return dropCells[i];
+    }
+
+    public int getDropDistance(int i) {
+        return dropDistances[i];
+    }
+
+    public int getSpawnStart(int step) {
+        return step == 0 ? 0 : spawnEnds[step - 1];
+    }
+
+    public int getSpawnEnd(int step) {
+        return spawnEnds[step];
+    }
+
+    public int getSpawnCell(int i) {
+        return spawnCells[i];
+    }
+
+    public byte getSpawnType(int i) {
+        return spawnTypes[i];
+    }
+
+    public int getDetonatedStart(int step) {
+        return step == 0 ? 0 : detonatedEnds[step - 1];
+    }
+
+    public int getDetonatedEnd(int step) {
+        return detonatedEnds[step];
+    }
+
+    public int getDetonatedCell(int i) {
+        return detonatedCells[i];
+    }
+
+    public int getCreatedStart(int step) {
+        return step == 0 ? 0 : createdEnds[step - 1];
+    }
+
+    public int getCreatedEnd(int step) {
+        return createdEnds[step];
+    }
+
+    public int getCreatedCell(int i) {
+        return createdCells[i];
+    }
+
+    public byte getCreatedEffect(int i) {
+        return createdEffects[i];
+    }
+
+    // 复制一份只包含已记录数据的结果，不再被后续移动覆盖（用于面板快照，副本只读）
+    public CascadeResult copy() {
+        CascadeResult copy = new CascadeResult();
+        copy.depth = depth;
+        copy.totalScore = totalScore;
+        copy.reshuffled = reshuffled;
+        copy.obstacleHits = obstacleHits;
+        copy.stepScores = Arrays.copyOf(stepScores, depth);
+        copy.clearedEnds = Arrays.copyOf(clearedEnds, depth);
+        copy.dropEnds = Arrays.copyOf(dropEnds, depth);
+        copy.spawnEnds = Arrays.copyOf(spawnEnds, depth);
+        copy.detonatedEnds = Arrays.copyOf(detonatedEnds, depth);
+        copy.createdEnds = Arrays.copyOf(createdEnds, depth);
+        copy.clearedCount = clearedCount;
+        copy.clearedCells = Arrays.copyOf(clearedCells, clearedCount);
+        copy.dropCount = dropCount;
+        copy.dropCells = Arrays.copyOf(dropCells, dropCount);
+        copy.dropDistances = Arrays.copyOf(dropDistances, dropCount);
+        copy.spawnCount = spawnCount;
+        copy.spawnCells = Arrays.copyOf(spawnCells, spawnCount);
+        copy.spawnTypes = Arrays.copyOf(spawnTypes, spawnCount);
+        copy.detonatedCount = detonatedCount;
+        copy.detonatedCells = Arrays.copyOf(detonatedCells, detonatedCount);
+        copy.createdCount = createdCount;
+        copy.createdCells = Arrays.copyOf(createdCells, createdCount);
+        copy.createdEffects = Arrays.copyOf(createdEffects, createdCount);
+        return copy;
+    }
+
+    // 按步骤输出（仅用于JSON序列化）
+    public List<Step> getSteps() {
+        List<Step> steps = new ArrayList<>(depth);
+        for (int s = 0; s < depth; s++) {
+            int clearedStart = getClearedStart(s);
+            int dropStart = getDropStart(s);
+            int spawnStart = getSpawnStart(s);
+            int detonatedStart = getDetonatedStart(s);
+            int createdStart = getCreatedStart(s);
+
+            int[] drops = new int[(dropEnds[s] - dropStart) << 1];
+            for (int i = dropStart, k = 0; i < dropEnds[s]; i++) {
+                drops[k++] = dropCells[i];
+                drops[k++] = dropDistances[i];
+            }
+            int[] spawned = new int[(spawnEnds[s] - spawnStart) << 1];
+            for (int i = spawnStart, k = 0; i < spawnEnds[s]; i++) {
+                spawned[k++] = spawnCells[i];
+                spawned[k++] = spawnTypes[i];
+            }
+            List<Special> created = new ArrayList<>(createdEnds[s] - createdStart);
+            for (int i = createdStart; i < createdEnds[s]; i++) {
+                created.add(new Special(createdCells[i], BoardGrid.effectName(createdEffects[i])));
+            }
+
+            steps.add(new Step(Arrays.copyOfRange(clearedCells, clearedStart, clearedEnds[s]),
+                    Arrays.copyOfRange(detonatedCells, detonatedStart, detonatedEnds[s]),
+                    created, drops, spawned, stepScores[s]));
+        }
+        return steps;
+    }
+
+    /**
+     * 单步结果的JSON视图
+     * drops和spawned都是成对展开的数组：[格子下标, 下落行数, ...] 和 [格子下标, 类型序号, ...]
+     */
+    public static final class Step {
+        private final int[] cleared;
+        private final int[] detonated;
+        private final List<Special> created;
+        private final int[] drops;
+        private final int[] spawned;
+        private final int score;
+
+        Step(int[] cleared, int[] detonated, List<Special> created, int[] drops, int[] spawned, int score) {
+            this.cleared = cleared;
+            this.detonated = detonated;
+            this.created = created;
+            this.drops = drops;
+            this.spawned = spawned;
+            this.score = score;
+        }
+
+        public int[] getCleared() {
+            return cleared;
+        }
+
+        public int[] getDetonated() {
+            return detonated;
+        }
+
+        public List<Special> getCreated() {
+            return created;
+        }
+
+        public int[] getDrops() {
+            return drops;
+        }
+
+        public int[] getSpawned() {
+            return spawned;
+        }
+
+        public int getScore() {
+            return score;
+        }
+    }
+
+    // 新生成的特殊瓦片的JSON视图
+    public static final class Special {
+        private final int cell;
+        private final String effect;
+
+        Special(int cell, String effect) {
+            this.cell = cell;
+            this.effect = effect;
+        }
+
+        public int getCell() {
+            return cell;
+        }
+
+        public String getEffect() {
+            return effect;
+        }
+    }
+}
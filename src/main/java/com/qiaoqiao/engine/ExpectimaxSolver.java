@@ -0,0 +1,258 @@
+// 最佳移动搜索
+package com.qiaoqiao.engine;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 并行的期望最大化（expectimax）最佳移动搜索
+ * 玩家节点在全部合法交换中取期望得分最高的一个；交换后的消除和下落是确定的，
+ * 顶部填充的新瓦片未知，作为机会节点处理：按游戏相同的分布（每种类型等概率）
+ * 抽取若干组填充结果，取各组得分（含后续移动的最佳期望）的平均值。
+ * 搜索按深度迭代加深，根节点的每个移动是一个独立任务，在有界的ForkJoinPool上分批并行计算；
+ * 超过截止时间或被取消时放弃正在搜索的一层，返回上一层完整搜索的结果。
+ * 各层的网格和连锁处理器按工作线程分配，由该线程执行的所有根移动复用，
+ * 大面板上有上万个根移动时内存占用也只与线程数和深度成正比。
+ * 抽样使用由会话种子和当前位置派生的独立随机数流，不消耗会话本身的随机数，
+ * 同一局面的搜索结果与线程数无关。搜索内部总是使用顺序的优化引擎，并行只发生在根节点一层。
+ */
+public final class ExpectimaxSolver {
+
+    private static final MatchEngine ENGINE = MatchEngines.OPTIMIZED;
+
+    // 每批根移动任务数相对线程数的倍数：批次足够大以平衡负载，中止时不再创建后面的任务
+    private static final int BATCH_PER_THREAD = 16;
+
+    private final ForkJoinPool pool;
+    private final int samples;          // 每个机会节点抽取的填充结果数
+
+    public ExpectimaxSolver(ForkJoinPool pool, int samples) {
+        if (samples <= 0) {
+            throw new IllegalArgumentException("抽样次数必须大于0: " + samples);
+        }
+        this.pool = pool;
+        this.samples = samples;
+    }
+
+    /**
+     * 搜索最佳移动
+     * 开始时复制一份面板，之后不再读取原面板；random只用于读取种子和位置。
+     * deadline为System.nanoTime()时间，cancelled被置为true后尽快结束。
+     * 没有合法移动时返回null；连一层都没有搜索完时返回第一个合法移动，深度为0。
+     */
+    public Result solve(BoardGrid grid, GameRandom random, int maxDepth, long deadline, AtomicBoolean cancelled) {
+        BoardGrid root = grid.copy();
+        int[] moves = new int[MoveGenerator.maxMoves(root)];
+        int count = ENGINE.findPossibleMoves(root, moves);
+        if (count == 0) {
+            return null;
+        }
+
+        Search search = new Search(root, maxDepth, deadline, cancelled);
+        long seed = random.getSeed() * 31 + random.getDraws();
+        Result best = new Result(moves[0], 0.0, 0, 0L, false);
+        int batchSize = Math.max(1, pool.getParallelism() * BATCH_PER_THREAD);
+        double[] scores = new double[count];
+        for (int depth = 1; depth <= maxDepth && !search.aborted; depth++) {
+            List<MoveTask> tasks = new ArrayList<>(Math.min(count, batchSize));
+            for (int start = 0; start < count && !search.aborted; start += batchSize) {
+                tasks.clear();
+                for (int m = start; m < Math.min(count, start + batchSize); m++) {
+                    tasks.add(new MoveTask(moves[m], depth, new GameRandom(seed + m), search));
+                }
+                pool.invoke(ForkJoinTask.adapt(() -> ForkJoinTask.invokeAll(tasks)));
+                for (int t = 0; t < tasks.size(); t++) {
+                    scores[start + t] = tasks.get(t).join();
+                }
+            }
+            if (search.aborted) {
+                break;
+            }
+
+            // 期望得分相同时取靠前的移动，结果与任务完成顺序无关
+            int bestMove = 0;
+            for (int m = 1; m < count; m++) {
+                if (scores[m] > scores[bestMove]) {
+                    bestMove = m;
+                }
+            }
+            best = new Result(moves[bestMove], scores[bestMove], depth, search.nodes.sum(), depth == maxDepth);
+        }
+        return best;
+    }
+
+    // 一次搜索的截止时间、取消标记、统计和各工作线程的工作区
+    private static final class Search {
+        private final BoardGrid root;
+        private final int maxDepth;
+        private final long deadline;
+        private final AtomicBoolean cancelled;
+        private final LongAdder nodes = new LongAdder();
+        private final Map<Thread, Level[]> workspaces = new ConcurrentHashMap<>();
+        private volatile boolean aborted;
+
+        Search(BoardGrid root, int maxDepth, long deadline, AtomicBoolean cancelled) {
+            this.root = root;
+            this.maxDepth = maxDepth;
+            this.deadline = deadline;
+            this.cancelled = cancelled;
+        }
+
+        // 当前线程的各层工作区（按需创建）：根移动任务中不等待其他任务，同一线程上的任务不会交错执行
+        Level[] workspace() {
+            return workspaces.computeIfAbsent(Thread.currentThread(), thread -> new Level[maxDepth]);
+        }
+
+        void check() {
+            if (aborted || cancelled.get() || System.nanoTime() - deadline > 0) {
+                aborted = true;
+                throw Aborted.INSTANCE;
+            }
+            nodes.increment();
+        }
+    }
+
+    // 搜索中止，不记录调用栈
+    private static final class Aborted extends RuntimeException {
+        static final Aborted INSTANCE = new Aborted();
+
+        private Aborted() {
+            super(null, null, false, false);
+        }
+    }
+
+    // 每一层复用的网格、连锁处理器和移动数组（处理器的随机数流由执行的任务设置）
+    private static final class Level {
+        final BoardGrid grid;
+        final CascadeResolver resolver;
+        final int[] moves;
+
+        Level(BoardGrid root, GameRandom random) {
+            this.grid = new BoardGrid(root.getRows(), root.getColumns(), root.getTypeCount());
+            this.resolver = new CascadeResolver(grid, random, ENGINE);
+            this.moves = new int[MoveGenerator.maxMoves(root)];
+        }
+    }
+
+    // 根节点的一个移动：计算它在给定深度下的期望得分，中止时返回NaN
+    private final class MoveTask extends RecursiveTask<Double> {
+        private final int move;
+        private final int depth;
+        private final GameRandom random;
+        private final Search search;
+        private Level[] levels;
+
+        MoveTask(int move, int depth, GameRandom random, Search search) {
+            this.move = move;
+            this.depth = depth;
+            this.random = random;
+            this.search = search;
+        }
+
+        @Override
+        protected Double compute() {
+            try {
+                levels = search.workspace();
+                for (Level l : levels) {
+                    if (l != null) {
+                        l.resolver.setRandom(random);
+                    }
+                }
+                return expect(search.root, move, 0);
+            } catch (Aborted e) {
+                return Double.NaN;
+            } finally {
+                levels = null;
+            }
+        }
+
+        // 机会节点：在parent上执行move，对若干组填充结果取平均
+        private double expect(BoardGrid parent, int move, int level) {
+            // 已经超时或取消时不再创建这一层的工作区
+            search.check();
+            Level l = level(level);
+            int columns = parent.getColumns();
+            int first = MoveGenerator.firstCell(move);
+            int second = MoveGenerator.secondCell(move, columns);
+            double total = 0;
+            for (int s = 0; s < samples; s++) {
+                if (s > 0) {
+                    search.check();
+                }
+                l.grid.copyFrom(parent);
+                l.grid.clearDirty();
+                l.grid.swap(first / columns, first % columns, second / columns, second % columns);
+                total += l.resolver.resolve().getTotalScore();
+                if (level + 1 < depth) {
+                    total += best(l.grid, level + 1);
+                }
+            }
+            return total / samples;
+        }
+
+        // 玩家节点：全部合法移动中的最大期望得分，死局按0计
+        private double best(BoardGrid grid, int level) {
+            Level l = level(level);
+            int count = ENGINE.findPossibleMoves(grid, l.moves);
+            double best = 0;
+            for (int m = 0; m < count; m++) {
+                best = Math.max(best, expect(grid, l.moves[m], level));
+            }
+            return best;
+        }
+
+        private Level level(int level) {
+            if (levels[level] == null) {
+                levels[level] = new Level(search.root, random);
+            }
+            return levels[level];
+        }
+    }
+
+    /**
+     * 搜索结果
+     * move为MoveGenerator的打包格式；complete表示已经搜索到要求的最大深度
+     */
+    public static final class Result {
+        private final int move;
+        private final double expectedScore;
+        private final int depth;
+        private final long nodes;
+        private final boolean complete;
+
+        Result(int move, double expectedScore, int depth, long nodes, boolean complete) {
+            this.move = move;
+            this.expectedScore = expectedScore;
+            this.depth = depth;
+            this.nodes = nodes;
+            this.complete = complete;
+        }
+
+        public int getMove() {
+            return move;
+        }
+
+        public double getExpectedScore() {
+            return expectedScore;
+        }
+
+        public int getDepth() {
+            return depth;
+        }
+
+        public long getNodes() {
+            return nodes;
+        }
+
+        public boolean isComplete() {
+            return complete;
+        }
+    }
+}
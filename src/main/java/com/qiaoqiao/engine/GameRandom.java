@@ -0,0 +1,75 @@
+// 游戏随机数流
+package com.qiaoqiao.engine;
+
+import java.util.SplittableRandom;
+
+/**
+ * 每个游戏会话独享的可复现随机数流
+ * 基于SplittableRandom，记录初始种子和已消耗的随机数个数，
+ * 由这两个值即可在任意位置重建完全相同的随机数流，用于回放、反作弊校验和每日种子模式。
+ * 不是线程安全的，同一时间只能由处理该会话的线程使用。
+ */
+public final class GameRandom {
+
+    // SplittableRandom以种子构造时使用的步长，每次nextLong内部状态增加一个步长
+    private static final long GOLDEN_GAMMA = 0x9e3779b97f4a7c15L;
+
+    private final long seed;           // 初始种子
+    private SplittableRandom random;
+    private long draws;                // 已消耗的64位随机数个数
+
+    public GameRandom(long seed) {
+        this(seed, 0L);
+    }
+
+    // 从指定位置继续的随机数流
+    public GameRandom(long seed, long draws) {
+        this.seed = seed;
+        this.draws = draws;
+        this.random = new SplittableRandom(seed + draws * GOLDEN_GAMMA);
+    }
+
+    public long getSeed() {
+        return seed;
+    }
+
+    public long getDraws() {
+        return draws;
+    }
+
+    public long nextLong() {
+        draws++;
+        return random.nextLong();
+    }
+
+    // [0, bound) 范围内的随机整数，每次调用恰好消耗一个随机数
+    public int nextInt(int bound) {
+        return (int) ((nextLong() >>> 1) % bound);
+    }
+
+    // 随机瓦片类型
+    public byte nextType(int typeCount) {
+        return (byte) nextInt(typeCount);
+    }
+
+    // 跳过n个随机数（并行填充时各个分段各自从自己的位置开始取数，完成后主流整体前进）
+    public void skip(long n) {
+        draws += n;
+        random = new SplittableRandom(seed + draws * GOLDEN_GAMMA);
+    }
+
+    // 当前位置之后第offset个随机数开始的独立流，不影响当前流
+    public GameRandom fork(long offset) {
+        return new GameRandom(seed, draws + offset);
+    }
+
+    // 派生一个独立的子随机数流（例如每个模拟线程一个），消耗当前流的一个随机数
+    public GameRandom split() {
+        return new GameRandom(nextLong());
+    }
+
+    // 复制当前位置的随机数流，不影响当前流
+    public GameRandom copy() {
+        return new GameRandom(seed, draws);
+    }
+}
@@ -0,0 +1,134 @@
+// 面板分块快照
+package com.qiaoqiao.engine;
+
+/**
+ * 面板内容（类型、效果、编号和障碍物）的不可变副本，按BLOCK_SIZE x BLOCK_SIZE的块保存
+ * 发布新快照时只复制自上次发布以来有变化的块（BoardGrid记录），其余块直接引用上一个快照的数组；
+ * 障碍物没有变化时也引用上一个快照的副本。一次移动只改变被消除格子所在列的上方部分，
+ * 1024x1024的面板每步复制的是几个块，而不是整个面板。
+ * 块中的数组创建后不再修改，多个快照共享同一个块是安全的。
+ */
+public final class GridImage {
+
+    // 块的边长（行数和列数），小面板只有一个块
+    public static final int BLOCK_SIZE = 32;
+
+    private final int rows;
+    private final int columns;
+    private final int blockColumns;      // 每行的块数
+    private final byte[][] types;        // 每块的瓦片类型，块内按行优先顺序
+    private final byte[][] effects;
+    private final int[][] ids;
+    private final ObstacleLayer obstacles;  // 障碍物位平面（副本），没有障碍物时为null
+
+    private GridImage(int rows, int columns, int blockCount, ObstacleLayer obstacles) {
+        this.rows = rows;
+        this.columns = columns;
+        this.blockColumns = (columns + BLOCK_SIZE - 1) / BLOCK_SIZE;
+        this.types = new byte[blockCount][];
+        this.effects = new byte[blockCount][];
+        this.ids = new int[blockCount][];
+        this.obstacles = obstacles;
+    }
+
+    /**
+     * 发布面板当前的内容：previous是同一面板上一次发布的结果（没有时为null，复制全部块），
+     * 之后清除面板的变化记录
+     */
+    public static GridImage publish(BoardGrid grid, GridImage previous) {
+        int rows = grid.getRows();
+        int columns = grid.getColumns();
+        int blockCount = grid.getBlockCount();
+        boolean reuse = previous != null && previous.rows == rows && previous.columns == columns;
+        ObstacleLayer source = grid.getObstacles();
+        ObstacleLayer obstacles = source == null ? null
+                : reuse && previous.obstacles != null && !grid.isObstaclesUnpublished() ? previous.obstacles : source.copy();
+        GridImage image = new GridImage(rows, columns, blockCount, obstacles);
+
+        for (int b = 0; b < blockCount; b++) {
+            if (reuse && !grid.isBlockUnpublished(b)) {
+                image.types[b] = previous.types[b];
+                image.effects[b] = previous.effects[b];
+                image.ids[b] = previous.ids[b];
+                continue;
+            }
+            int top = (b / image.blockColumns) * BLOCK_SIZE;
+            int left = (b % image.blockColumns) * BLOCK_SIZE;
+            int height = Math.min(BLOCK_SIZE, rows - top);
+            int width = Math.min(BLOCK_SIZE, columns - left);
+            byte[] blockTypes = new byte[height * width];
+            byte[] blockEffects = new byte[height * width];
+            int[] blockIds = new int[height * width];
+            for (int i = 0; i < height; i++) {
+                grid.copyRange((top + i) * columns + left, width, blockTypes, blockEffects, blockIds, i * width);
+            }
+            image.types[b] = blockTypes;
+            image.effects[b] = blockEffects;
+            image.ids[b] = blockIds;
+        }
+        grid.clearUnpublished();
+        return image;
+    }
+
+    public int getRows() {
+        return rows;
+    }
+
+    public int getColumns() {
+        return columns;
+    }
+
+    public byte getType(int index) {
+        return types[block(index)][offset(index)];
+    }
+
+    public byte getEffect(int index) {
+        return effects[block(index)][offset(index)];
+    }
+
+    public int getId(int index) {
+        return ids[block(index)][offset(index)];
+    }
+
+    // 障碍物位平面（只读），没有障碍物时为null
+    public ObstacleLayer getObstacles() {
+        return obstacles;
+    }
+
+    // 两个快照是否共享第b块（没有重新复制）
+    public boolean sharesBlock(GridImage other, int b) {
+        return types[b] == other.types[b];
+    }
+
+    public int getBlockCount() {
+        return types.length;
+    }
+
+    // 在快照内容上重建一个独立的网格（例如提示搜索），不影响对局
+    public BoardGrid toGrid(int typeCount) {
+        int cellCount = rows * columns;
+        byte[] allTypes = new byte[cellCount];
+        byte[] allEffects = new byte[cellCount];
+        for (int index = 0; index < cellCount; index++) {
+            int b = block(index);
+            int offset = offset(index);
+            allTypes[index] = types[b][offset];
+            allEffects[index] = effects[b][offset];
+        }
+        BoardGrid grid = new BoardGrid(rows, columns, typeCount);
+        grid.load(allTypes, allEffects, obstacles);
+        return grid;
+    }
+
+    private int block(int index) {
+        return (index / columns / BLOCK_SIZE) * blockColumns + (index % columns) / BLOCK_SIZE;
+    }
+
+    // 格子在所在块中的位置
+    private int offset(int index) {
+        int row = index / columns;
+        int col = index % columns;
+        int width = Math.min(BLOCK_SIZE, columns - (col / BLOCK_SIZE) * BLOCK_SIZE);
+        return (row % BLOCK_SIZE) * width + col % BLOCK_SIZE;
+    }
+}
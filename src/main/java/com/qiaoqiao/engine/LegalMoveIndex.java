@@ -0,0 +1,137 @@
+// 合法移动索引
+package com.qiaoqiao.engine;
+
+import java.util.Arrays;
+
+/**
+ * 增量维护的合法移动集合
+ * 以打包移动为下标的位集记录每个移动是否合法，同时维护合法移动的总数，
+ * 死局检测只需读取计数，提示和机器人可以直接按行优先顺序取出全部合法移动。
+ *
+ * 起点为(r, c)的移动只读取r-2到r+3行、c-2到c+3列的格子（见MoveGenerator的局部形状），
+ * 所以(R, C)格子变化后只需重新检查起点在R-3到R+2行、C-3到C+2列内的移动。
+ * BoardGrid记录每列自上次同步以来变化的行范围（交换、消除、下落、填充和重排都会记录），
+ * 每次查询前按这些范围重新检查受影响的移动，其余移动的结果保持不变。
+ */
+public final class LegalMoveIndex {
+
+    private static final int REACH_ABOVE = 3;   // 变化格子上方受影响的起点行数
+    private static final int REACH_BELOW = 2;   // 变化格子下方受影响的起点行数
+    private static final int REACH_LEFT = 3;    // 变化格子左侧受影响的起点列数
+    private static final int REACH_RIGHT = 2;   // 变化格子右侧受影响的起点列数
+
+    private final BoardGrid grid;
+    private final MatchEngine engine;       // 合法性按面板的匹配引擎判断
+    private final long[] legal;             // 第move位为1表示该打包移动合法
+    private final int[] fromRow;            // 每个起点列需要重新检查的行范围（同步时复用）
+    private final int[] toRow;
+    private int count;                      // 合法移动总数
+
+    public LegalMoveIndex(BoardGrid grid, MatchEngine engine) {
+        this.grid = grid;
+        this.engine = engine;
+        this.legal = new long[(MoveGenerator.maxMoves(grid) + 63) >>> 6];
+        this.fromRow = new int[grid.getColumns()];
+        this.toRow = new int[grid.getColumns()];
+        rebuild();
+    }
+
+    // 重新检查全部移动
+    public void rebuild() {
+        Arrays.fill(legal, 0L);
+        count = 0;
+        for (int j = 0; j < grid.getColumns(); j++) {
+            recheck(j, 0, grid.getRows() - 1);
+        }
+        grid.clearChanged();
+    }
+
+    // 按面板记录的变化范围重新检查受影响的移动
+    public void update() {
+        int rows = grid.getRows();
+        int columns = grid.getColumns();
+        Arrays.fill(fromRow, rows);
+        Arrays.fill(toRow, -1);
+        boolean changed = false;
+        for (int j = 0; j < columns; j++) {
+            int top = grid.getChangedTop(j);
+            int bottom = grid.getChangedBottom(j);
+            if (top > bottom) {
+                continue;
+            }
+            changed = true;
+            int from = Math.max(0, top - REACH_ABOVE);
+            int to = Math.min(rows - 1, bottom + REACH_BELOW);
+            for (int c = Math.max(0, j - REACH_LEFT); c <= Math.min(columns - 1, j + REACH_RIGHT); c++) {
+                if (from < fromRow[c]) {
+                    fromRow[c] = from;
+                }
+                if (to > toRow[c]) {
+                    toRow[c] = to;
+                }
+            }
+        }
+        if (!changed) {
+            return;
+        }
+        for (int c = 0; c < columns; c++) {
+            if (fromRow[c] <= toRow[c]) {
+                recheck(c, fromRow[c], toRow[c]);
+            }
+        }
+        grid.clearChanged();
+    }
+
+    // 重新检查起点在第col列、fromRow到toRow行的移动
+    private void recheck(int col, int fromRow, int toRow) {
+        int rows = grid.getRows();
+        int columns = grid.getColumns();
+        for (int i = fromRow; i <= toRow; i++) {
+            int index = i * columns + col;
+            set(MoveGenerator.pack(index, false),
+                    col < columns - 1 && engine.isLegalMove(grid, i, col, i, col + 1));
+            set(MoveGenerator.pack(index, true),
+                    i < rows - 1 && engine.isLegalMove(grid, i, col, i + 1, col));
+        }
+    }
+
+    private void set(int move, boolean value) {
+        int w = move >>> 6;
+        long bit = 1L << move;
+        if (((legal[w] & bit) != 0) != value) {
+            legal[w] ^= bit;
+            count += value ? 1 : -1;
+        }
+    }
+
+    // 合法移动总数
+    public int count() {
+        update();
+        return count;
+    }
+
+    // 是否还有合法移动，没有变化时为O(1)
+    public boolean hasMoves() {
+        return count() > 0;
+    }
+
+    // 打包移动是否合法
+    public boolean isLegal(int move) {
+        update();
+        return (legal[move >>> 6] & (1L << move)) != 0;
+    }
+
+    // 按行优先顺序写入全部合法移动（与MatchEngine.findPossibleMoves顺序相同），返回写入的数量
+    public int copyMoves(int[] out) {
+        update();
+        int n = 0;
+        for (int w = 0; w < legal.length && n < out.length; w++) {
+            long word = legal[w];
+            while (word != 0 && n < out.length) {
+                out[n++] = (w << 6) + Long.numberOfTrailingZeros(word);
+                word &= word - 1;
+            }
+        }
+        return n;
+    }
+}
@@ -0,0 +1,126 @@
+// 局部匹配检测
+package com.qiaoqiao.engine;
+
+/**
+ * 只检查受影响的格子和连线的匹配检测
+ * 交换后只有两个格子所在的行和列可能形成新匹配，
+ * 下落填充后只有发生变化的行和列可能形成新匹配
+ */
+public final class LocalMatcher {
+
+    private LocalMatcher() {
+    }
+
+    // 检查经过某个格子的水平或垂直连线是否达到3个
+    public static boolean hasMatchAt(BoardGrid grid, int row, int col) {
+        byte type = grid.getType(row, col);
+        if (type == BoardGrid.EMPTY) {
+            return false;
+        }
+        int rows = grid.getRows();
+        int columns = grid.getColumns();
+
+        // 水平方向
+        int count = 1;
+        for (int j = col - 1; j >= 0 && grid.getType(row, j) == type; j--) {
+            count++;
+        }
+        for (int j = col + 1; j < columns && grid.getType(row, j) == type; j++) {
+            count++;
+        }
+        if (count >= 3) {
+            return true;
+        }
+
+        // 垂直方向
+        count = 1;
+        for (int i = row - 1; i >= 0 && grid.getType(i, col) == type; i--) {
+            count++;
+        }
+        for (int i = row + 1; i < rows && grid.getType(i, col) == type; i++) {
+            count++;
+        }
+        return count >= 3;
+    }
+
+    /**
+     * 扫描水平和垂直连线，把连线写入runs、匹配的格子标记到位集中，返回新标记的格子数
+     * dirtyOnly为true时只扫描脏行的水平连线和脏列的垂直连线
+     */
+    public static int findMatches(BoardGrid grid, boolean dirtyOnly, RunList runs, long[] matched) {
+        int first = runs.size();
+        findHorizontalRuns(grid, 0, grid.getRows(), dirtyOnly, runs);
+        findVerticalRuns(grid, 0, grid.getColumns(), dirtyOnly, runs);
+        return markRuns(grid, runs, first, matched);
+    }
+
+    // 扫描[fromRow, toRow)行内的水平连线，按行优先顺序追加到runs
+    public static void findHorizontalRuns(BoardGrid grid, int fromRow, int toRow, boolean dirtyOnly, RunList runs) {
+        int columns = grid.getColumns();
+        for (int i = fromRow; i < toRow; i++) {
+            if (dirtyOnly && !grid.isRowDirty(i)) {
+                continue;
+            }
+            int base = i * columns;
+            int j = 0;
+            while (j < columns - 2) {
+                byte type = grid.getType(base + j);
+                int end = j + 1;
+                while (end < columns && grid.getType(base + end) == type) {
+                    end++;
+                }
+                if (type != BoardGrid.EMPTY && end - j >= 3) {
+                    runs.add(base + j, end - j, false);
+                }
+                j = end;
+            }
+        }
+    }
+
+    // 扫描[fromCol, toCol)列内的垂直连线，按列优先顺序追加到runs
+    public static void findVerticalRuns(BoardGrid grid, int fromCol, int toCol, boolean dirtyOnly, RunList runs) {
+        int rows = grid.getRows();
+        int columns = grid.getColumns();
+        for (int j = fromCol; j < toCol; j++) {
+            if (dirtyOnly && !grid.isColumnDirty(j)) {
+                continue;
+            }
+            int i = 0;
+            while (i < rows - 2) {
+                byte type = grid.getType(i, j);
+                int end = i + 1;
+                while (end < rows && grid.getType(end, j) == type) {
+                    end++;
+                }
+                if (type != BoardGrid.EMPTY && end - i >= 3) {
+                    runs.add(i * columns + j, end - i, true);
+                }
+                i = end;
+            }
+        }
+    }
+
+    // 把runs中从first开始的连线覆盖的格子标记到位集中，返回新标记的格子数
+    public static int markRuns(BoardGrid grid, RunList runs, int first, long[] matched) {
+        int columns = grid.getColumns();
+        int count = 0;
+        for (int r = first; r < runs.size(); r++) {
+            int step = runs.isVertical(r) ? columns : 1;
+            for (int k = 0, index = runs.getStart(r); k < runs.getLength(r); k++, index += step) {
+                count += mark(matched, index);
+            }
+        }
+        return count;
+    }
+
+    // 标记格子，新标记时返回1
+    private static int mark(long[] bits, int index) {
+        long bit = 1L << index;
+        int w = index >>> 6;
+        if ((bits[w] & bit) != 0) {
+            return 0;
+        }
+        bits[w] |= bit;
+        return 1;
+    }
+}
@@ -0,0 +1,61 @@
+// 匹配规则引擎接口
+package com.qiaoqiao.engine;
+
+import com.qiaoqiao.util.Constants;
+
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * 匹配规则的唯一入口
+ * Board、GameLogic和GameService都通过它检测匹配、枚举移动和计算连线分数，
+ * 参考实现逐格扫描，易于核对；优化实现使用位棋盘、脏行脏列和查找表。
+ * 两种实现对同一面板必须给出完全相同的结果，所有方法都不修改面板。
+ */
+public interface MatchEngine {
+
+    // 引擎名称（用于配置）
+    String getName();
+
+    // 检查面板上是否存在匹配
+    boolean hasMatches(BoardGrid grid);
+
+    /**
+     * 查找匹配连线
+     * dirtyOnly为true时只查找脏行中的水平连线和脏列中的垂直连线。
+     * 连线按先水平（行优先）后垂直（列优先）的顺序写入runs，匹配的格子标记在matched位集中。
+     * @return 匹配的格子数
+     */
+    int findMatches(BoardGrid grid, boolean dirtyOnly, RunList runs, long[] matched);
+
+    // 检查交换两个格子是否能形成匹配
+    boolean isLegalMove(BoardGrid grid, int row1, int col1, int row2, int col2);
+
+    // 检查是否至少存在一个合法移动
+    boolean hasPossibleMoves(BoardGrid grid);
+
+    // 按行优先顺序写入全部合法移动（打包格式见MoveGenerator），返回数量
+    int findPossibleMoves(BoardGrid grid, int[] moves);
+
+    // 并行实现使用的线程池，连锁处理器用它并行下落和填充；顺序实现返回null
+    default ForkJoinPool getPool() {
+        return null;
+    }
+
+    // 值得并行处理的最小工作量（格子数）
+    default int getParallelThreshold() {
+        return Integer.MAX_VALUE;
+    }
+
+    // 一条连线的得分：4连2倍，5连及以上3倍
+    static int scoreRun(int length) {
+        int baseScore = length * Constants.SCORE_PER_TILE;
+
+        if (length == 4) {
+            return baseScore * Constants.SCORE_MULTIPLIER_4_MATCH;
+        } else if (length >= 5) {
+            return baseScore * Constants.SCORE_MULTIPLIER_5_MATCH;
+        }
+
+        return baseScore;
+    }
+}
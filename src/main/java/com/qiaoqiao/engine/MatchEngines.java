@@ -0,0 +1,40 @@
+// 匹配引擎选择
+package com.qiaoqiao.engine;
+
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * 按名称获取匹配引擎
+ * 各实现都是无状态的，全局共享同一个实例；并行实现默认使用公共ForkJoinPool
+ */
+public final class MatchEngines {
+
+    public static final MatchEngine REFERENCE = new ReferenceMatchEngine();
+    public static final MatchEngine OPTIMIZED = new OptimizedMatchEngine();
+    public static final MatchEngine PARALLEL = new ParallelMatchEngine(ForkJoinPool.commonPool());
+
+    private MatchEngines() {
+    }
+
+    // 默认引擎
+    public static MatchEngine getDefault() {
+        return OPTIMIZED;
+    }
+
+    // 名称对应的引擎，名称为空时返回默认引擎
+    public static MatchEngine forName(String name) {
+        if (name == null || name.isEmpty()) {
+            return getDefault();
+        }
+        switch (name.trim().toLowerCase()) {
+            case ReferenceMatchEngine.NAME:
+                return REFERENCE;
+            case OptimizedMatchEngine.NAME:
+                return OPTIMIZED;
+            case ParallelMatchEngine.NAME:
+                return PARALLEL;
+            default:
+                throw new IllegalArgumentException("未知的匹配引擎: " + name);
+        }
+    }
+}
@@ -0,0 +1,186 @@
+// 合法移动生成器
+package com.qiaoqiao.engine;
+
+import java.util.Arrays;
+
+/**
+ * 只读的合法移动生成器
+ * 瓦片从格子a移动到相邻格子b后，只有以下几种局部形状可能在b处组成三连：
+ * 垂直于移动方向的两侧各一个、同一侧连续两个，以及沿移动方向继续向前的两个。
+ * 这些形状预先存放在查找表中，检查时只读取面板，不修改任何格子，可以和其他读取者并发执行。
+ *
+ * 移动用int打包表示：第一个格子下标左移一位，最低位为0表示与右侧交换，为1表示与下方交换。
+ */
+public final class MoveGenerator {
+
+    // 移动方向
+    private static final int RIGHT = 0;
+    private static final int DOWN = 1;
+    private static final int LEFT = 2;
+    private static final int UP = 3;
+
+    // PATTERNS[方向][形状] = {dr1, dc1, dr2, dc2}，偏移量相对于瓦片原来所在的格子
+    private static final int[][][] PATTERNS = new int[4][][];
+
+    static {
+        int[][] deltas = {{0, 1}, {1, 0}, {0, -1}, {-1, 0}};
+        for (int d = 0; d < 4; d++) {
+            int dr = deltas[d][0];
+            int dc = deltas[d][1];
+            // 垂直于移动方向的单位向量
+            int pr = dc;
+            int pc = dr;
+            // 目标格子相对于原格子的偏移
+            int tr = dr;
+            int tc = dc;
+            PATTERNS[d] = new int[][]{
+                    // 目标格子两侧各一个
+                    {tr - pr, tc - pc, tr + pr, tc + pc},
+                    // 目标格子一侧连续两个
+                    {tr - pr, tc - pc, tr - 2 * pr, tc - 2 * pc},
+                    {tr + pr, tc + pc, tr + 2 * pr, tc + 2 * pc},
+                    // 沿移动方向继续向前两个
+                    {tr + dr, tc + dc, tr + 2 * dr, tc + 2 * dc}
+            };
+        }
+    }
+
+    private MoveGenerator() {
+    }
+
+    // 打包移动
+    public static int pack(int index, boolean vertical) {
+        return (index << 1) | (vertical ? DOWN : RIGHT);
+    }
+
+    // 移动的第一个格子下标
+    public static int firstCell(int move) {
+        return move >>> 1;
+    }
+
+    // 移动的第二个格子下标
+    public static int secondCell(int move, int columns) {
+        return (move & 1) == DOWN ? (move >>> 1) + columns : (move >>> 1) + 1;
+    }
+
+    // 是否为与下方格子交换
+    public static boolean isVertical(int move) {
+        return (move & 1) == DOWN;
+    }
+
+    // 一个面板上最多可能的移动数量
+    public static int maxMoves(BoardGrid grid) {
+        return grid.getCellCount() << 1;
+    }
+
+    // 生成全部合法移动，写入out并返回数量；out容量不足时只写入能容纳的部分
+    public static int generate(BoardGrid grid, int[] out) {
+        return generate(grid, 0, grid.getRows(), out, 0);
+    }
+
+    // 生成起点在[fromRow, toRow)行内的合法移动，从out[offset]开始写入，返回写入后的位置
+    public static int generate(BoardGrid grid, int fromRow, int toRow, int[] out, int offset) {
+        int rows = grid.getRows();
+        int columns = grid.getColumns();
+        int count = offset;
+        for (int i = fromRow; i < toRow; i++) {
+            for (int j = 0; j < columns; j++) {
+                if (count == out.length) {
+                    return count;
+                }
+                if (j < columns - 1 && isLegalSwap(grid, i, j, RIGHT)) {
+                    out[count++] = pack(i * columns + j, false);
+                }
+                if (count == out.length) {
+                    return count;
+                }
+                if (i < rows - 1 && isLegalSwap(grid, i, j, DOWN)) {
+                    out[count++] = pack(i * columns + j, true);
+                }
+            }
+        }
+        return count;
+    }
+
+    // 生成全部合法移动
+    public static int[] generate(BoardGrid grid) {
+        int[] buffer = new int[maxMoves(grid)];
+        int count = generate(grid, buffer);
+        return Arrays.copyOf(buffer, count);
+    }
+
+    // 检查是否至少存在一个合法移动
+    public static boolean hasAnyMove(BoardGrid grid) {
+        return hasAnyMove(grid, 0, grid.getRows());
+    }
+
+    // 检查起点在[fromRow, toRow)行内是否至少存在一个合法移动
+    public static boolean hasAnyMove(BoardGrid grid, int fromRow, int toRow) {
+        int rows = grid.getRows();
+        int columns = grid.getColumns();
+        for (int i = fromRow; i < toRow; i++) {
+            for (int j = 0; j < columns; j++) {
+                if (j < columns - 1 && isLegalSwap(grid, i, j, RIGHT)) {
+                    return true;
+                }
+                if (i < rows - 1 && isLegalSwap(grid, i, j, DOWN)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    // 检查交换两个相邻格子是否能形成匹配
+    public static boolean isLegal(BoardGrid grid, int row1, int col1, int row2, int col2) {
+        if (!grid.contains(row1, col1) || !grid.contains(row2, col2)) {
+            return false;
+        }
+        if (row1 == row2 && col2 == col1 + 1) {
+            return isLegalSwap(grid, row1, col1, RIGHT);
+        }
+        if (row1 == row2 && col2 == col1 - 1) {
+            return isLegalSwap(grid, row2, col2, RIGHT);
+        }
+        if (col1 == col2 && row2 == row1 + 1) {
+            return isLegalSwap(grid, row1, col1, DOWN);
+        }
+        if (col1 == col2 && row2 == row1 - 1) {
+            return isLegalSwap(grid, row2, col2, DOWN);
+        }
+        return false;
+    }
+
+    // 检查(row, col)与右侧或下方格子交换是否合法
+    static boolean isLegalSwap(BoardGrid grid, int row, int col, int direction) {
+        int row2 = direction == DOWN ? row + 1 : row;
+        int col2 = direction == DOWN ? col : col + 1;
+        byte type1 = grid.getType(row, col);
+        byte type2 = grid.getType(row2, col2);
+        if (type1 == type2 || type1 == BoardGrid.EMPTY || type2 == BoardGrid.EMPTY) {
+            return false;
+        }
+        // 锁住的瓦片不能交换（石块和洞的类型为EMPTY，上面已经排除）
+        if (grid.isLocked(grid.index(row, col)) || grid.isLocked(grid.index(row2, col2))) {
+            return false;
+        }
+        // 第一个瓦片向前移动，第二个瓦片向反方向移动
+        return formsRun(grid, row, col, type1, direction) ||
+                formsRun(grid, row2, col2, type2, direction + 2);
+    }
+
+    // 检查类型为type的瓦片从(row, col)沿direction移动一格后是否组成三连
+    private static boolean formsRun(BoardGrid grid, int row, int col, byte type, int direction) {
+        for (int[] p : PATTERNS[direction]) {
+            int r1 = row + p[0];
+            int c1 = col + p[1];
+            int r2 = row + p[2];
+            int c2 = col + p[3];
+            if (grid.contains(r1, c1) && grid.contains(r2, c2) &&
+                    grid.getType(r1, c1) == type && grid.getType(r2, c2) == type) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,311 @@
+// 障碍物位平面
+package com.qiaoqiao.engine;
+
+import java.util.Arrays;
+
+/**
+ * 与瓦片类型并列保存的障碍物位平面，每种障碍物一个位集，第index位对应格子index
+ * 石块：格子里没有瓦片（类型为EMPTY），不能交换也不会下落；相邻的瓦片被消除或被特殊瓦片波及时碎掉，之后成为普通空格子。
+ * 冰层：铺在瓦片下面，一层或两层，该格子的瓦片每被消除一次去掉一层。
+ * 锁：锁住的瓦片照常参与匹配，但不能交换也不会下落；被匹配时只解开锁，瓦片留在原处。
+ * 洞：不属于面板的格子，永远为空。
+ * 石块、锁和洞统称为固定格子，下落时瓦片越过固定格子，填充时跳过固定格子。
+ *
+ * 石块和洞的类型为EMPTY，匹配扫描和移动枚举不需要任何改动，只有交换检查需要排除锁；
+ * 消除时按字对整个位集做与、或、移位运算，不逐格判断障碍物类型。
+ * 没有障碍物的面板不创建该对象，连锁处理只多一次空引用判断。
+ */
+public final class ObstacleLayer {
+
+    // 布局字符
+    public static final char NONE = '.';
+    public static final char BLOCKER = '#';
+    public static final char ICE = 'i';
+    public static final char DOUBLE_ICE = 'I';
+    public static final char LOCK = 'L';
+    public static final char HOLE = 'x';
+
+    // 每个格子的障碍物标记（用于输出）
+    public static final int FLAG_BLOCKER = 1;
+    public static final int FLAG_ICE = 2;
+    public static final int FLAG_DOUBLE_ICE = 4;
+    public static final int FLAG_LOCK = 8;
+    public static final int FLAG_HOLE = 16;
+
+    // 各种障碍物在哈希键中的编号
+    private static final int KEY_BLOCKER = 0;
+    private static final int KEY_ICE = 1;
+    private static final int KEY_DOUBLE_ICE = 2;
+    private static final int KEY_LOCK = 3;
+    private static final int KEY_HOLE = 4;
+
+    private final int rows;
+    private final int columns;
+    private final int cellCount;
+    private final long[] blockers;
+    private final long[] ice;             // 至少一层冰
+    private final long[] doubleIce;       // 两层冰（同时也在ice中）
+    private final long[] locks;
+    private final long[] holes;
+    private final long[] fixed;           // 石块 | 锁 | 洞
+    private final int[] fixedInColumn;    // 每列的固定格子数，为0的列按普通方式下落
+    private final long[] notFirstColumn;  // 不在第0列的格子
+    private final long[] notLastColumn;   // 不在最后一列的格子
+    private final long[] cleared;         // 消除时复用：本步被消除的瓦片
+    private boolean goal;                 // 创建时布局中有需要清除的障碍物，挑战模式以全部清除为过关条件
+
+    public ObstacleLayer(int rows, int columns) {
+        this.rows = rows;
+        this.columns = columns;
+        this.cellCount = rows * columns;
+        int words = (cellCount + 63) >>> 6;
+        this.blockers = new long[words];
+        this.ice = new long[words];
+        this.doubleIce = new long[words];
+        this.locks = new long[words];
+        this.holes = new long[words];
+        this.fixed = new long[words];
+        this.fixedInColumn = new int[columns];
+        this.notFirstColumn = new long[words];
+        this.notLastColumn = new long[words];
+        this.cleared = new long[words];
+        for (int index = 0; index < cellCount; index++) {
+            int col = index % columns;
+            if (col != 0) {
+                notFirstColumn[index >>> 6] |= 1L << index;
+            }
+            if (col != columns - 1) {
+                notLastColumn[index >>> 6] |= 1L << index;
+            }
+        }
+    }
+
+    // 复制一个内容相同的位平面
+    public ObstacleLayer copy() {
+        ObstacleLayer copy = new ObstacleLayer(rows, columns);
+        copy.copyFrom(this);
+        return copy;
+    }
+
+    // 用同尺寸位平面的内容覆盖当前位平面
+    public void copyFrom(ObstacleLayer other) {
+        if (other.rows != rows || other.columns != columns) {
+            throw new IllegalArgumentException("障碍物位平面尺寸不同");
+        }
+        System.arraycopy(other.blockers, 0, blockers, 0, blockers.length);
+        System.arraycopy(other.ice, 0, ice, 0, ice.length);
+        System.arraycopy(other.doubleIce, 0, doubleIce, 0, doubleIce.length);
+        System.arraycopy(other.locks, 0, locks, 0, locks.length);
+        System.arraycopy(other.holes, 0, holes, 0, holes.length);
+        System.arraycopy(other.fixed, 0, fixed, 0, fixed.length);
+        System.arraycopy(other.fixedInColumn, 0, fixedInColumn, 0, columns);
+        goal = other.goal;
+    }
+
+    /**
+     * 按布局字符串设置障碍物，每个字符串一行，字符见本类的布局常量
+     * 只设置位平面，格子里的瓦片由调用方随后生成
+     */
+    public void apply(String[] layout) {
+        if (layout.length != rows) {
+            throw new IllegalArgumentException("布局行数为" + layout.length + "，期望" + rows);
+        }
+        for (int i = 0; i < rows; i++) {
+            if (layout[i].length() != columns) {
+                throw new IllegalArgumentException("布局第" + i + "行长度为" + layout[i].length() + "，期望" + columns);
+            }
+            for (int j = 0; j < columns; j++) {
+                int index = i * columns + j;
+                long bit = 1L << index;
+                int w = index >>> 6;
+                switch (layout[i].charAt(j)) {
+                    case NONE:
+                        break;
+                    case BLOCKER:
+                        blockers[w] |= bit;
+                        break;
+                    case ICE:
+                        ice[w] |= bit;
+                        break;
+                    case DOUBLE_ICE:
+                        ice[w] |= bit;
+                        doubleIce[w] |= bit;
+                        break;
+                    case LOCK:
+                        locks[w] |= bit;
+                        break;
+                    case HOLE:
+                        holes[w] |= bit;
+                        break;
+                    default:
+                        throw new IllegalArgumentException("未知的布局字符: " + layout[i].charAt(j));
+                }
+            }
+        }
+        for (int w = 0; w < fixed.length; w++) {
+            fixed[w] = blockers[w] | locks[w] | holes[w];
+        }
+        Arrays.fill(fixedInColumn, 0);
+        for (int index = 0; index < cellCount; index++) {
+            if (isFixed(index)) {
+                fixedInColumn[index % columns]++;
+            }
+        }
+    }
+
+    // 格子是否不能放瓦片（石块或洞）
+    public boolean isBlocked(int index) {
+        return ((blockers[index >>> 6] | holes[index >>> 6]) & (1L << index)) != 0;
+    }
+
+    public boolean isLocked(int index) {
+        return (locks[index >>> 6] & (1L << index)) != 0;
+    }
+
+    // 格子是否固定（石块、锁或洞），下落和填充时跳过
+    public boolean isFixed(int index) {
+        return (fixed[index >>> 6] & (1L << index)) != 0;
+    }
+
+    // 该列是否有固定格子
+    public boolean hasFixed(int col) {
+        return fixedInColumn[col] > 0;
+    }
+
+    // 格子的障碍物标记（FLAG_*的组合）
+    public int getFlags(int index) {
+        long bit = 1L << index;
+        int w = index >>> 6;
+        return ((blockers[w] & bit) != 0 ? FLAG_BLOCKER : 0)
+                | ((ice[w] & bit) != 0 ? FLAG_ICE : 0)
+                | ((doubleIce[w] & bit) != 0 ? FLAG_DOUBLE_ICE : 0)
+                | ((locks[w] & bit) != 0 ? FLAG_LOCK : 0)
+                | ((holes[w] & bit) != 0 ? FLAG_HOLE : 0);
+    }
+
+    // 剩余需要清除的障碍物数（石块、冰层数和锁），挑战模式据此判断是否过关
+    public int remaining() {
+        int count = 0;
+        for (int w = 0; w < fixed.length; w++) {
+            count += Long.bitCount(blockers[w]) + Long.bitCount(ice[w]) + Long.bitCount(doubleIce[w])
+                    + Long.bitCount(locks[w]);
+        }
+        return count;
+    }
+
+    // 是否有过关条件（创建时布局中有石块、冰层或锁；只有洞的布局没有）
+    public boolean hasGoal() {
+        return goal;
+    }
+
+    public void setGoal(boolean goal) {
+        this.goal = goal;
+    }
+
+    // 是否已过关：有过关条件，且需要清除的障碍物全部清除
+    public boolean isCleared() {
+        return goal && remaining() == 0;
+    }
+
+    /**
+     * 把本步的匹配区域作用到障碍物上，按字运算：
+     * 洞从区域中去掉；被匹配的锁解开，锁住的瓦片留在原处；其余瓦片被消除，其下的冰去掉一层；
+     * 被消除瓦片上下左右的石块和区域内的石块碎掉，并入区域，随后作为空格子被填充。
+     * matched改写为需要清空并填充的格子，返回被清除的障碍物数（解锁、冰层和石块）。
+     */
+    int absorb(long[] matched, BoardGrid grid) {
+        int hits = 0;
+        long hashDelta = 0L;
+        for (int w = 0; w < matched.length; w++) {
+            long m = matched[w] & ~holes[w];
+            long unlocked = m & locks[w];
+            locks[w] &= ~unlocked;
+            m &= ~unlocked;
+            long tiles = m & ~blockers[w];
+            long cracked = tiles & ice[w];
+            long melted = cracked & ~doubleIce[w];
+            ice[w] &= ~melted;
+            doubleIce[w] &= ~cracked;
+            cleared[w] = tiles;
+            matched[w] = m;
+            hits += Long.bitCount(unlocked) + Long.bitCount(cracked);
+            // 两层变一层：换成一层冰的键；一层化掉：去掉一层冰的键
+            hashDelta ^= keys(w, unlocked, KEY_LOCK) ^ keys(w, cracked, KEY_ICE) ^ keys(w, cracked & ~melted, KEY_DOUBLE_ICE);
+            markChanged(grid, w, unlocked);
+        }
+
+        // 石块：区域内的，或与被消除的瓦片相邻的
+        for (int w = 0; w < matched.length; w++) {
+            if (blockers[w] == 0L) {
+                continue;
+            }
+            long near = (shifted(cleared, w, 1) & notFirstColumn[w])
+                    | (shifted(cleared, w, -1) & notLastColumn[w])
+                    | shifted(cleared, w, columns)
+                    | shifted(cleared, w, -columns);
+            long broken = (matched[w] | near) & blockers[w];
+            blockers[w] &= ~broken;
+            matched[w] |= broken;
+            hits += Long.bitCount(broken);
+            hashDelta ^= keys(w, broken, KEY_BLOCKER);
+        }
+
+        for (int w = 0; w < fixed.length; w++) {
+            long released = fixed[w] & ~(blockers[w] | locks[w] | holes[w]);
+            fixed[w] ^= released;
+            while (released != 0) {
+                int index = (w << 6) + Long.numberOfTrailingZeros(released);
+                released &= released - 1;
+                fixedInColumn[index % columns]--;
+            }
+        }
+        grid.updateHash(hashDelta);
+        if (hits > 0) {
+            grid.markObstaclesUnpublished();
+        }
+        return hits;
+    }
+
+    // 全部障碍物的哈希键（BoardGrid.computeHash使用）
+    long hash() {
+        long h = 0L;
+        for (int w = 0; w < fixed.length; w++) {
+            h ^= keys(w, blockers[w], KEY_BLOCKER) ^ keys(w, ice[w] & ~doubleIce[w], KEY_ICE)
+                    ^ keys(w, doubleIce[w], KEY_DOUBLE_ICE) ^ keys(w, locks[w], KEY_LOCK) ^ keys(w, holes[w], KEY_HOLE);
+        }
+        return h;
+    }
+
+    // 第w个字中各位对应格子的某种障碍物的键的异或
+    private static long keys(int w, long bits, int kind) {
+        long h = 0L;
+        while (bits != 0) {
+            int index = (w << 6) + Long.numberOfTrailingZeros(bits);
+            bits &= bits - 1;
+            h ^= BoardGrid.obstacleKey(index, kind);
+        }
+        return h;
+    }
+
+    // 解锁改变了交换是否合法，通知合法移动索引
+    private void markChanged(BoardGrid grid, int w, long bits) {
+        while (bits != 0) {
+            int index = (w << 6) + Long.numberOfTrailingZeros(bits);
+            bits &= bits - 1;
+            grid.markChanged(index / columns, index % columns);
+        }
+    }
+
+    // 位集整体左移shift位（shift为负时右移）后的第w个字，移出范围的位为0
+    private static long shifted(long[] bits, int w, int shift) {
+        int source = (w << 6) - shift;
+        int sw = Math.floorDiv(source, 64);
+        int sb = Math.floorMod(source, 64);
+        long low = sw >= 0 && sw < bits.length ? bits[sw] : 0L;
+        if (sb == 0) {
+            return low;
+        }
+        long high = sw + 1 >= 0 && sw + 1 < bits.length ? bits[sw + 1] : 0L;
+        return (low >>> sb) | (high << (64 - sb));
+    }
+}
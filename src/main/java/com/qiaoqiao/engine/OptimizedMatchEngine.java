@@ -0,0 +1,138 @@
+// 优化匹配引擎
+package com.qiaoqiao.engine;
+
+/**
+ * 默认使用的优化实现
+ * 格子数不超过64时用位棋盘检测匹配，较大的面板扫描扁平数组的脏行和脏列，
+ * 移动枚举使用MoveGenerator的模式表，结果与参考实现逐项一致。
+ */
+public final class OptimizedMatchEngine implements MatchEngine {
+
+    public static final String NAME = "optimized";
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public boolean hasMatches(BoardGrid grid) {
+        if (BitboardMatcher.supports(grid)) {
+            return BitboardMatcher.hasMatches(grid);
+        }
+
+        int rows = grid.getRows();
+        int columns = grid.getColumns();
+
+        // 水平检查
+        for (int i = 0; i < rows; i++) {
+            int base = i * columns;
+            for (int j = 0; j < columns - 2; j++) {
+                byte type = grid.getType(base + j);
+                if (type != BoardGrid.EMPTY &&
+                        type == grid.getType(base + j + 1) &&
+                        type == grid.getType(base + j + 2)) {
+                    return true;
+                }
+            }
+        }
+
+        // 垂直检查
+        for (int i = 0; i < rows - 2; i++) {
+            int base = i * columns;
+            for (int j = 0; j < columns; j++) {
+                byte type = grid.getType(base + j);
+                if (type != BoardGrid.EMPTY &&
+                        type == grid.getType(base + columns + j) &&
+                        type == grid.getType(base + 2 * columns + j)) {
+                    return true;
+                }
+            }
+        }
+
+        return false;
+    }
+
+    @Override
+    public int findMatches(BoardGrid grid, boolean dirtyOnly, RunList runs, long[] matched) {
+        if (BitboardMatcher.supports(grid)) {
+            return findMatchesWithBitboards(grid, dirtyOnly, runs, matched);
+        }
+        return LocalMatcher.findMatches(grid, dirtyOnly, runs, matched);
+    }
+
+    @Override
+    public boolean isLegalMove(BoardGrid grid, int row1, int col1, int row2, int col2) {
+        return MoveGenerator.isLegal(grid, row1, col1, row2, col2);
+    }
+
+    @Override
+    public boolean hasPossibleMoves(BoardGrid grid) {
+        return MoveGenerator.hasAnyMove(grid);
+    }
+
+    @Override
+    public int findPossibleMoves(BoardGrid grid, int[] moves) {
+        return MoveGenerator.generate(grid, moves);
+    }
+
+    // 位棋盘查找连线：先用位运算得到连线起点，再沿连线读出长度
+    private static int findMatchesWithBitboards(BoardGrid grid, boolean dirtyOnly, RunList runs, long[] matched) {
+        int rows = grid.getRows();
+        int columns = grid.getColumns();
+        long firstColumn = grid.getFirstColumnMask();
+        long before = matched[0];
+
+        long horizontal = BitboardMatcher.horizontalRunStarts(grid);
+        long vertical = BitboardMatcher.verticalRunStarts(grid);
+        if (dirtyOnly) {
+            // 连线只在脏行（水平）或脏列（垂直）内才计入
+            long rowMask = 0L;
+            long rowBits = -1L >>> (64 - columns);
+            for (int i = grid.nextDirtyRow(0); i >= 0; i = grid.nextDirtyRow(i + 1)) {
+                rowMask |= rowBits << (i * columns);
+            }
+            long columnMask = 0L;
+            for (int j = grid.nextDirtyColumn(0); j >= 0; j = grid.nextDirtyColumn(j + 1)) {
+                columnMask |= firstColumn << j;
+            }
+            horizontal &= rowMask;
+            vertical &= columnMask;
+        }
+
+        // 水平连线：起点按位序即行优先顺序
+        while (horizontal != 0) {
+            int start = Long.numberOfTrailingZeros(horizontal);
+            horizontal &= horizontal - 1;
+            byte type = grid.getType(start);
+            int rowEnd = start - start % columns + columns;
+            int end = start + 3;
+            while (end < rowEnd && grid.getType(end) == type) {
+                end++;
+            }
+            runs.add(start, end - start, false);
+            matched[0] |= (-1L >>> (64 - (end - start))) << start;
+        }
+
+        // 垂直连线：按列依次取出起点
+        for (int j = 0; j < columns && vertical != 0; j++) {
+            long columnStarts = vertical & (firstColumn << j);
+            vertical &= ~columnStarts;
+            while (columnStarts != 0) {
+                int start = Long.numberOfTrailingZeros(columnStarts);
+                columnStarts &= columnStarts - 1;
+                byte type = grid.getType(start);
+                int length = 3;
+                while (start / columns + length < rows && grid.getType(start + length * columns) == type) {
+                    length++;
+                }
+                runs.add(start, length, true);
+                for (int k = 0; k < length; k++) {
+                    matched[0] |= 1L << (start + k * columns);
+                }
+            }
+        }
+
+        return Long.bitCount(matched[0]) - Long.bitCount(before);
+    }
+}
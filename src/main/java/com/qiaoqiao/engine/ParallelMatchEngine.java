@@ -0,0 +1,187 @@
+// 并行匹配引擎
+package com.qiaoqiao.engine;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * 无尽模式大面板使用的并行实现
+ * 水平连线按行分段、垂直连线按列分段，在ForkJoinPool上并行扫描；
+ * 连线不会跨越所在的行或列，各段结果按段的顺序拼接即与顺序扫描一致，
+ * 之后在调用线程上统一标记格子。移动枚举按行分段，交换检查只读取面板，可以跨段读取。
+ * 格子数小于阈值时直接使用优化实现，分段调度的开销不值得。
+ * 同一个面板同一时间只能由一个线程调用（与其他引擎相同）。
+ */
+public final class ParallelMatchEngine implements MatchEngine {
+
+    public static final String NAME = "parallel";
+
+    // 默认的并行阈值（格子数）
+    public static final int DEFAULT_MIN_CELLS = 128 * 128;
+    // 每段至少包含的行数或列数
+    private static final int MIN_BAND_LINES = 8;
+
+    private final MatchEngine sequential = new OptimizedMatchEngine();
+    private final ForkJoinPool pool;
+    private final int minCells;
+
+    public ParallelMatchEngine(ForkJoinPool pool) {
+        this(pool, DEFAULT_MIN_CELLS);
+    }
+
+    public ParallelMatchEngine(ForkJoinPool pool, int minCells) {
+        this.pool = pool;
+        this.minCells = minCells;
+    }
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public ForkJoinPool getPool() {
+        return pool;
+    }
+
+    @Override
+    public int getParallelThreshold() {
+        return minCells;
+    }
+
+    private boolean parallel(BoardGrid grid) {
+        return grid.getCellCount() >= minCells && pool.getParallelism() > 1;
+    }
+
+    @Override
+    public boolean hasMatches(BoardGrid grid) {
+        if (!parallel(grid)) {
+            return sequential.hasMatches(grid);
+        }
+        RunList[] runs = scanRuns(grid, false);
+        for (RunList band : runs) {
+            if (band.size() > 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public int findMatches(BoardGrid grid, boolean dirtyOnly, RunList runs, long[] matched) {
+        if (!parallel(grid)) {
+            return sequential.findMatches(grid, dirtyOnly, runs, matched);
+        }
+        int first = runs.size();
+        for (RunList band : scanRuns(grid, dirtyOnly)) {
+            for (int r = 0; r < band.size(); r++) {
+                runs.add(band.getStart(r), band.getLength(r), band.isVertical(r));
+            }
+        }
+        return LocalMatcher.markRuns(grid, runs, first, matched);
+    }
+
+    @Override
+    public boolean isLegalMove(BoardGrid grid, int row1, int col1, int row2, int col2) {
+        return sequential.isLegalMove(grid, row1, col1, row2, col2);
+    }
+
+    @Override
+    public boolean hasPossibleMoves(BoardGrid grid) {
+        if (!parallel(grid)) {
+            return sequential.hasPossibleMoves(grid);
+        }
+        int rows = grid.getRows();
+        int height = bandSize(rows);
+        List<ForkJoinTask<Boolean>> tasks = new ArrayList<>();
+        for (int from = 0; from < rows; from += height) {
+            int fromRow = from;
+            int toRow = Math.min(rows, from + height);
+            tasks.add(ForkJoinTask.adapt(() -> MoveGenerator.hasAnyMove(grid, fromRow, toRow)));
+        }
+        invokeAll(tasks);
+        for (ForkJoinTask<Boolean> task : tasks) {
+            if (task.join()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public int findPossibleMoves(BoardGrid grid, int[] moves) {
+        if (!parallel(grid)) {
+            return sequential.findPossibleMoves(grid, moves);
+        }
+        int rows = grid.getRows();
+        int columns = grid.getColumns();
+        int height = bandSize(rows);
+        List<ForkJoinTask<int[]>> tasks = new ArrayList<>();
+        for (int from = 0; from < rows; from += height) {
+            int fromRow = from;
+            int toRow = Math.min(rows, from + height);
+            tasks.add(ForkJoinTask.adapt(() -> {
+                // 每个起点格子最多两个移动，第一个元素记录数量
+                int[] band = new int[((toRow - fromRow) * columns << 1) + 1];
+                band[0] = MoveGenerator.generate(grid, fromRow, toRow, band, 1) - 1;
+                return band;
+            }));
+        }
+        invokeAll(tasks);
+
+        int count = 0;
+        for (ForkJoinTask<int[]> task : tasks) {
+            int[] band = task.join();
+            int n = Math.min(band[0], moves.length - count);
+            System.arraycopy(band, 1, moves, count, n);
+            count += n;
+        }
+        return count;
+    }
+
+    // 并行扫描全部连线：先是各行段的水平连线，再是各列段的垂直连线
+    private RunList[] scanRuns(BoardGrid grid, boolean dirtyOnly) {
+        int rows = grid.getRows();
+        int columns = grid.getColumns();
+        int height = bandSize(rows);
+        int width = bandSize(columns);
+        List<ForkJoinTask<RunList>> tasks = new ArrayList<>();
+        for (int from = 0; from < rows; from += height) {
+            int fromRow = from;
+            int toRow = Math.min(rows, from + height);
+            tasks.add(ForkJoinTask.adapt(() -> {
+                RunList band = new RunList();
+                LocalMatcher.findHorizontalRuns(grid, fromRow, toRow, dirtyOnly, band);
+                return band;
+            }));
+        }
+        for (int from = 0; from < columns; from += width) {
+            int fromCol = from;
+            int toCol = Math.min(columns, from + width);
+            tasks.add(ForkJoinTask.adapt(() -> {
+                RunList band = new RunList();
+                LocalMatcher.findVerticalRuns(grid, fromCol, toCol, dirtyOnly, band);
+                return band;
+            }));
+        }
+        invokeAll(tasks);
+
+        RunList[] result = new RunList[tasks.size()];
+        for (int b = 0; b < result.length; b++) {
+            result[b] = tasks.get(b).join();
+        }
+        return result;
+    }
+
+    // 每段的行数或列数：大约每个线程两段
+    private int bandSize(int lines) {
+        int bands = pool.getParallelism() * 2;
+        return Math.max(MIN_BAND_LINES, (lines + bands - 1) / bands);
+    }
+
+    private <T> void invokeAll(List<ForkJoinTask<T>> tasks) {
+        pool.invoke(ForkJoinTask.adapt(() -> ForkJoinTask.invokeAll(tasks)));
+    }
+}
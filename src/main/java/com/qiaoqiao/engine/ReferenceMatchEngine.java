@@ -0,0 +1,200 @@
+// 参考匹配引擎
+package com.qiaoqiao.engine;
+
+/**
+ * 逐格扫描的参考实现
+ * 只使用最直接的循环，作为优化实现的正确性基准。
+ * 判断移动是否合法时不交换格子，而是按交换后的位置读取类型。
+ */
+public final class ReferenceMatchEngine implements MatchEngine {
+
+    public static final String NAME = "reference";
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public boolean hasMatches(BoardGrid grid) {
+        int rows = grid.getRows();
+        int columns = grid.getColumns();
+
+        // 水平检查
+        for (int i = 0; i < rows; i++) {
+            for (int j = 0; j < columns - 2; j++) {
+                byte type = grid.getType(i, j);
+                if (type != BoardGrid.EMPTY &&
+                        type == grid.getType(i, j + 1) &&
+                        type == grid.getType(i, j + 2)) {
+                    return true;
+                }
+            }
+        }
+
+        // 垂直检查
+        for (int i = 0; i < rows - 2; i++) {
+            for (int j = 0; j < columns; j++) {
+                byte type = grid.getType(i, j);
+                if (type != BoardGrid.EMPTY &&
+                        type == grid.getType(i + 1, j) &&
+                        type == grid.getType(i + 2, j)) {
+                    return true;
+                }
+            }
+        }
+
+        return false;
+    }
+
+    @Override
+    public int findMatches(BoardGrid grid, boolean dirtyOnly, RunList runs, long[] matched) {
+        int rows = grid.getRows();
+        int columns = grid.getColumns();
+        int count = 0;
+
+        // 水平匹配
+        for (int i = 0; i < rows; i++) {
+            if (dirtyOnly && !grid.isRowDirty(i)) {
+                continue;
+            }
+            int j = 0;
+            while (j < columns) {
+                byte type = grid.getType(i, j);
+                int end = j + 1;
+                while (end < columns && grid.getType(i, end) == type) {
+                    end++;
+                }
+                if (type != BoardGrid.EMPTY && end - j >= 3) {
+                    runs.add(grid.index(i, j), end - j, false);
+                    for (int k = j; k < end; k++) {
+                        count += mark(matched, grid.index(i, k));
+                    }
+                }
+                j = end;
+            }
+        }
+
+        // 垂直匹配
+        for (int j = 0; j < columns; j++) {
+            if (dirtyOnly && !grid.isColumnDirty(j)) {
+                continue;
+            }
+            int i = 0;
+            while (i < rows) {
+                byte type = grid.getType(i, j);
+                int end = i + 1;
+                while (end < rows && grid.getType(end, j) == type) {
+                    end++;
+                }
+                if (type != BoardGrid.EMPTY && end - i >= 3) {
+                    runs.add(grid.index(i, j), end - i, true);
+                    for (int k = i; k < end; k++) {
+                        count += mark(matched, grid.index(k, j));
+                    }
+                }
+                i = end;
+            }
+        }
+
+        return count;
+    }
+
+    @Override
+    public boolean isLegalMove(BoardGrid grid, int row1, int col1, int row2, int col2) {
+        if (!grid.contains(row1, col1) || !grid.contains(row2, col2) ||
+                Math.abs(row1 - row2) + Math.abs(col1 - col2) != 1) {
+            return false;
+        }
+        int a = grid.index(row1, col1);
+        int b = grid.index(row2, col2);
+        byte typeA = grid.getType(a);
+        byte typeB = grid.getType(b);
+        if (typeA == typeB || typeA == BoardGrid.EMPTY || typeB == BoardGrid.EMPTY ||
+                grid.isLocked(a) || grid.isLocked(b)) {
+            return false;
+        }
+        return matchesAfterSwap(grid, row1, col1, a, b) || matchesAfterSwap(grid, row2, col2, a, b);
+    }
+
+    @Override
+    public boolean hasPossibleMoves(BoardGrid grid) {
+        int rows = grid.getRows();
+        int columns = grid.getColumns();
+        for (int i = 0; i < rows; i++) {
+            for (int j = 0; j < columns; j++) {
+                if (isLegalMove(grid, i, j, i, j + 1) || isLegalMove(grid, i, j, i + 1, j)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public int findPossibleMoves(BoardGrid grid, int[] moves) {
+        int rows = grid.getRows();
+        int columns = grid.getColumns();
+        int count = 0;
+        for (int i = 0; i < rows; i++) {
+            for (int j = 0; j < columns; j++) {
+                int index = grid.index(i, j);
+                if (isLegalMove(grid, i, j, i, j + 1)) {
+                    moves[count++] = MoveGenerator.pack(index, false);
+                }
+                if (isLegalMove(grid, i, j, i + 1, j)) {
+                    moves[count++] = MoveGenerator.pack(index, true);
+                }
+            }
+        }
+        return count;
+    }
+
+    // 交换a、b后，经过(row, col)的连线是否达到3个
+    private static boolean matchesAfterSwap(BoardGrid grid, int row, int col, int a, int b) {
+        int rows = grid.getRows();
+        int columns = grid.getColumns();
+        byte type = typeAfterSwap(grid, grid.index(row, col), a, b);
+
+        int count = 1;
+        for (int j = col - 1; j >= 0 && typeAfterSwap(grid, grid.index(row, j), a, b) == type; j--) {
+            count++;
+        }
+        for (int j = col + 1; j < columns && typeAfterSwap(grid, grid.index(row, j), a, b) == type; j++) {
+            count++;
+        }
+        if (count >= 3) {
+            return true;
+        }
+
+        count = 1;
+        for (int i = row - 1; i >= 0 && typeAfterSwap(grid, grid.index(i, col), a, b) == type; i--) {
+            count++;
+        }
+        for (int i = row + 1; i < rows && typeAfterSwap(grid, grid.index(i, col), a, b) == type; i++) {
+            count++;
+        }
+        return count >= 3;
+    }
+
+    private static byte typeAfterSwap(BoardGrid grid, int index, int a, int b) {
+        if (index == a) {
+            return grid.getType(b);
+        }
+        if (index == b) {
+            return grid.getType(a);
+        }
+        return grid.getType(index);
+    }
+
+    // 标记格子，新标记时返回1
+    private static int mark(long[] bits, int index) {
+        long bit = 1L << index;
+        int w = index >>> 6;
+        if ((bits[w] & bit) != 0) {
+            return 0;
+        }
+        bits[w] |= bit;
+        return 1;
+    }
+}
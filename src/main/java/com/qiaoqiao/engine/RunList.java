@@ -0,0 +1,48 @@
+// 匹配连线列表
+package com.qiaoqiao.engine;
+
+import java.util.Arrays;
+
+/**
+ * 可复用的匹配连线列表
+ * 每条连线记录起点格子、长度和方向，数组只在容量不足时扩容
+ */
+public final class RunList {
+
+    private int size;
+    private int[] starts = new int[16];      // 起点格子下标（最左或最上）
+    private int[] lengths = new int[16];     // 连线长度
+    private boolean[] verticals = new boolean[16];
+
+    public void clear() {
+        size = 0;
+    }
+
+    public void add(int start, int length, boolean vertical) {
+        if (size == starts.length) {
+            starts = Arrays.copyOf(starts, size << 1);
+            lengths = Arrays.copyOf(lengths, size << 1);
+            verticals = Arrays.copyOf(verticals, size << 1);
+        }
+        starts[size] = start;
+        lengths[size] = length;
+        verticals[size] = vertical;
+        size++;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int getStart(int i) {
+        return starts[i];
+    }
+
+    public int getLength(int i) {
+        return lengths[i];
+    }
+
+    public boolean isVertical(int i) {
+        return verticals[i];
+    }
+}
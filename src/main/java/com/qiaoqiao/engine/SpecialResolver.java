@@ -0,0 +1,274 @@
+// 特殊瓦片处理器
+package com.qiaoqiao.engine;
+
+import java.util.Arrays;
+
+/**
+ * 特殊瓦片的生成和连锁引爆
+ * 4连生成行消除（水平连线）或列消除（垂直连线），5连生成彩色炸弹，更长的连线生成炸弹；
+ * 特殊瓦片留在连线的第一个可用格子上，本步不会被消除。
+ * 只有玩家移动直接形成的匹配（连锁的第一步）生成特殊瓦片：在大面板上，
+ * 如果连锁中自动形成的匹配也生成特殊瓦片，新瓦片引爆后又会形成更多特殊瓦片，连锁无法收敛。
+ * 被消除的特殊瓦片会引爆，影响区域用位集表示，区域内的其他特殊瓦片继续引爆。
+ * 同一步内每一行、每一列、每种颜色最多整体清除一次，每个格子最多入队一次，
+ * 所以一整串连锁引爆的耗时与面板大小成正比，所有数组都在构造时分配。
+ */
+public final class SpecialResolver {
+
+    private final BoardGrid grid;
+    private final long[] reserved;          // 本步新生成特殊瓦片的格子
+    private final int[] queue;              // 待引爆的格子
+    private int tail;
+    private final long[] rowsDone;          // 本步已整体清除的行
+    private final long[] columnsDone;       // 本步已整体清除的列
+    private final boolean[] typesDone;      // 本步已被彩色炸弹清除的类型
+    private int createdCount;
+    private final int[] createdCells;
+    private final byte[] createdEffects;
+
+    public SpecialResolver(BoardGrid grid) {
+        this.grid = grid;
+        int cellCount = grid.getCellCount();
+        this.reserved = new long[(cellCount + 63) >>> 6];
+        this.queue = new int[cellCount];
+        this.rowsDone = new long[(grid.getRows() + 63) >>> 6];
+        this.columnsDone = new long[(grid.getColumns() + 63) >>> 6];
+        this.typesDone = new boolean[grid.getTypeCount()];
+        this.createdCells = new int[cellCount];
+        this.createdEffects = new byte[cellCount];
+    }
+
+    /**
+     * 为长度不小于4的连线选出生成特殊瓦片的格子，并把它们从cleared中移除
+     * 生成的特殊瓦片在引爆结束后由applyCreated写入面板
+     */
+    public void reserveCreated(RunList runs, long[] cleared) {
+        clearCreated();
+
+        int columns = grid.getColumns();
+        for (int r = 0; r < runs.size(); r++) {
+            int length = runs.getLength(r);
+            byte effect = createdEffect(length, runs.isVertical(r));
+            if (effect == BoardGrid.EFFECT_NONE) {
+                continue;
+            }
+            // 连线中第一个没有被占用、也不是特殊瓦片的格子
+            int step = runs.isVertical(r) ? columns : 1;
+            for (int k = 0, index = runs.getStart(r); k < length; k++, index += step) {
+                long bit = 1L << index;
+                if ((reserved[index >>> 6] & bit) == 0 && grid.getEffect(index) == BoardGrid.EFFECT_NONE) {
+                    reserved[index >>> 6] |= bit;
+                    cleared[index >>> 6] &= ~bit;
+                    createdCells[createdCount] = index;
+                    createdEffects[createdCount++] = effect;
+                    break;
+                }
+            }
+        }
+    }
+
+    // 清除上一步保留的格子（连锁的后续步骤不生成特殊瓦片）
+    public void clearCreated() {
+        for (int n = 0; n < createdCount; n++) {
+            int index = createdCells[n];
+            reserved[index >>> 6] &= ~(1L << index);
+        }
+        createdCount = 0;
+    }
+
+    // 把本步生成的特殊瓦片写入面板并记录到结果中
+    public void applyCreated(CascadeResult result) {
+        for (int n = 0; n < createdCount; n++) {
+            grid.setEffect(createdCells[n], createdEffects[n]);
+            result.addCreated(createdCells[n], createdEffects[n]);
+        }
+    }
+
+    /**
+     * 引爆cleared中的全部特殊瓦片（包括连锁引爆），影响区域并入cleared
+     * @return 因引爆而额外消除的格子数
+     */
+    public int detonate(long[] cleared, CascadeResult result) {
+        Arrays.fill(rowsDone, 0L);
+        Arrays.fill(columnsDone, 0L);
+        Arrays.fill(typesDone, false);
+
+        tail = 0;
+        for (int w = 0; w < cleared.length; w++) {
+            long word = cleared[w];
+            while (word != 0) {
+                int index = (w << 6) + Long.numberOfTrailingZeros(word);
+                word &= word - 1;
+                if (grid.getEffect(index) != BoardGrid.EFFECT_NONE) {
+                    queue[tail++] = index;
+                }
+            }
+        }
+
+        int rows = grid.getRows();
+        int columns = grid.getColumns();
+        int cellCount = grid.getCellCount();
+        int added = 0;
+        // 新并入区域的特殊瓦片在addMask中追加到队尾
+        for (int head = 0; head < tail; head++) {
+            int index = queue[head];
+            int row = index / columns;
+            int col = index - row * columns;
+            result.addDetonated(index);
+
+            switch (grid.getEffect(index)) {
+                case BoardGrid.EFFECT_ROW_CLEAR:
+                    if (testAndSet(rowsDone, row)) {
+                        added += addRange(cleared, row * columns, columns);
+                    }
+                    break;
+                case BoardGrid.EFFECT_COLUMN_CLEAR:
+                    if (testAndSet(columnsDone, col)) {
+                        for (int i = col; i < cellCount; i += columns) {
+                            added += addRange(cleared, i, 1);
+                        }
+                    }
+                    break;
+                case BoardGrid.EFFECT_BOMB:
+                    int from = Math.max(0, col - 1);
+                    int length = Math.min(columns - 1, col + 1) - from + 1;
+                    for (int i = Math.max(0, row - 1); i <= Math.min(rows - 1, row + 1); i++) {
+                        added += addRange(cleared, i * columns + from, length);
+                    }
+                    break;
+                case BoardGrid.EFFECT_COLOR_BOMB:
+                    byte type = grid.getType(index);
+                    if (type != BoardGrid.EMPTY && !typesDone[type]) {
+                        typesDone[type] = true;
+                        added += addColor(cleared, type);
+                    }
+                    break;
+                default:
+                    break;
+            }
+        }
+        return added;
+    }
+
+    /**
+     * 单个特殊瓦片的影响区域，按位并入area（不考虑连锁）
+     * 行消除为整行，列消除为整列，炸弹为3x3，彩色炸弹为所有同类型的格子
+     */
+    public static void effectArea(BoardGrid grid, int row, int col, byte effect, long[] area) {
+        int rows = grid.getRows();
+        int columns = grid.getColumns();
+        switch (effect) {
+            case BoardGrid.EFFECT_ROW_CLEAR:
+                setRange(area, row * columns, columns);
+                break;
+            case BoardGrid.EFFECT_COLUMN_CLEAR:
+                for (int i = 0; i < rows; i++) {
+                    setRange(area, i * columns + col, 1);
+                }
+                break;
+            case BoardGrid.EFFECT_BOMB:
+                int from = Math.max(0, col - 1);
+                int length = Math.min(columns - 1, col + 1) - from + 1;
+                for (int i = Math.max(0, row - 1); i <= Math.min(rows - 1, row + 1); i++) {
+                    setRange(area, i * columns + from, length);
+                }
+                break;
+            case BoardGrid.EFFECT_COLOR_BOMB:
+                byte type = grid.getType(row, col);
+                if (type == BoardGrid.EMPTY) {
+                    break;
+                }
+                if (grid.hasBitboards()) {
+                    area[0] |= grid.getBitboard(type);
+                    break;
+                }
+                for (int index = 0; index < grid.getCellCount(); index++) {
+                    if (grid.getType(index) == type) {
+                        area[index >>> 6] |= 1L << index;
+                    }
+                }
+                break;
+            default:
+                break;
+        }
+    }
+
+    // 根据连线长度和方向决定生成的特殊效果
+    public static byte createdEffect(int length, boolean vertical) {
+        if (length == 4) {
+            return vertical ? BoardGrid.EFFECT_COLUMN_CLEAR : BoardGrid.EFFECT_ROW_CLEAR;
+        } else if (length == 5) {
+            return BoardGrid.EFFECT_COLOR_BOMB;
+        } else if (length > 5) {
+            return BoardGrid.EFFECT_BOMB;
+        }
+        return BoardGrid.EFFECT_NONE;
+    }
+
+    // 把连续的格子并入cleared，返回新消除的格子数
+    private int addRange(long[] cleared, int from, int length) {
+        int added = 0;
+        int end = from + length;
+        while (from < end) {
+            int offset = from & 63;
+            int n = Math.min(end - from, 64 - offset);
+            added += addMask(cleared, from >>> 6, (-1L >>> (64 - n)) << offset);
+            from += n;
+        }
+        return added;
+    }
+
+    // 把一种颜色的所有格子并入cleared
+    private int addColor(long[] cleared, byte type) {
+        if (grid.hasBitboards()) {
+            return addMask(cleared, 0, grid.getBitboard(type));
+        }
+        int added = 0;
+        int cellCount = grid.getCellCount();
+        for (int w = 0; w < cleared.length; w++) {
+            long mask = 0L;
+            for (int index = w << 6, end = Math.min(cellCount, index + 64); index < end; index++) {
+                if (grid.getType(index) == type) {
+                    mask |= 1L << index;
+                }
+            }
+            added += addMask(cleared, w, mask);
+        }
+        return added;
+    }
+
+    // 把一个字的位掩码并入cleared（跳过保留的格子），新消除的特殊瓦片加入引爆队列
+    private int addMask(long[] cleared, int w, long mask) {
+        long fresh = mask & ~cleared[w] & ~reserved[w];
+        cleared[w] |= fresh;
+        int added = Long.bitCount(fresh);
+        while (fresh != 0) {
+            int index = (w << 6) + Long.numberOfTrailingZeros(fresh);
+            fresh &= fresh - 1;
+            if (grid.getEffect(index) != BoardGrid.EFFECT_NONE) {
+                queue[tail++] = index;
+            }
+        }
+        return added;
+    }
+
+    private static void setRange(long[] bits, int from, int length) {
+        int end = from + length;
+        while (from < end) {
+            int offset = from & 63;
+            int n = Math.min(end - from, 64 - offset);
+            bits[from >>> 6] |= (-1L >>> (64 - n)) << offset;
+            from += n;
+        }
+    }
+
+    // 设置位，原来未设置时返回true
+    private static boolean testAndSet(long[] bits, int i) {
+        long bit = 1L << i;
+        if ((bits[i >>> 6] & bit) != 0) {
+            return false;
+        }
+        bits[i >>> 6] |= bit;
+        return true;
+    }
+}
@@ -0,0 +1,113 @@
+// 置换表
+package com.qiaoqiao.engine;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 按面板哈希缓存计算结果的有界置换表
+ * 容量固定为2的幂，每个哈希映射到一个两槽的桶：第一个槽按深度优先保留，
+ * 只有新结果的深度不低于原结果、原结果来自较早的一代或是同一个状态时才替换；
+ * 第二个槽总是被替换，保证最近的结果总能写入。
+ * 调用方每次搜索调用newSearch，每 容量/64 次搜索开始新的一代：同一代内深的结果不会被浅的结果挤掉，
+ * 旧的代留下的深结果逐渐被替换。
+ * 多个线程可以不加锁地同时读写：每个槽另存 哈希^数据^元信息 作为校验值，
+ * 读到写了一半的槽时校验失败，按未命中处理。
+ */
+public final class TranspositionTable {
+
+    // 未命中
+    public static final long MISS = Long.MIN_VALUE;
+
+    private final int bucketMask;
+    private final long[] checks;   // 哈希 ^ 数据 ^ 元信息
+    private final long[] data;
+    private final int[] meta;      // 深度 + 1（0表示空槽），高16位为写入时的代
+    private final int searchesPerGeneration;   // 每一代包含的搜索次数
+    private final AtomicInteger searches = new AtomicInteger();
+    private volatile int generation;   // 当前的代（0-0x7FFF循环）
+
+    public TranspositionTable(int capacity) {
+        if (capacity < 2) {
+            throw new IllegalArgumentException("置换表容量必须至少为2: " + capacity);
+        }
+        int slots = Integer.highestOneBit(capacity);
+        this.bucketMask = (slots >>> 1) - 1;
+        this.checks = new long[slots];
+        this.data = new long[slots];
+        this.meta = new int[slots];
+        this.searchesPerGeneration = Math.max(1, slots / 64);
+    }
+
+    // 槽数
+    public int capacity() {
+        return checks.length;
+    }
+
+    // 查找深度不低于minDepth的结果，没有时返回MISS
+    public long get(long hash, int minDepth) {
+        int slot = bucket(hash);
+        for (int s = slot; s < slot + 2; s++) {
+            int m = meta[s];
+            long d = data[s];
+            if (m != 0 && checks[s] == (hash ^ d ^ m) && depth(m) >= minDepth) {
+                return d;
+            }
+        }
+        return MISS;
+    }
+
+    // 写入结果（value不能是MISS）
+    public void put(long hash, int depth, long value) {
+        if (depth < 0 || depth > 0xFFFE) {
+            throw new IllegalArgumentException("深度超出范围: " + depth);
+        }
+        int m = (generation << 16) | (depth + 1);
+        int slot = bucket(hash);
+        int old = meta[slot];
+        boolean sameState = old != 0 && checks[slot] == (hash ^ data[slot] ^ old);
+        if (old == 0 || sameState || depth >= depth(old) || (old >>> 16) != generation) {
+            write(slot, hash, value, m);
+        } else {
+            write(slot + 1, hash, value, m);
+        }
+    }
+
+    // 记录一次新的搜索，每searchesPerGeneration次搜索开始新的一代
+    public void newSearch() {
+        if (searches.incrementAndGet() % searchesPerGeneration == 0) {
+            newGeneration();
+        }
+    }
+
+    // 每一代包含的搜索次数
+    public int getSearchesPerGeneration() {
+        return searchesPerGeneration;
+    }
+
+    // 开始新的一代：之前写入的结果仍可命中，但深度优先槽可以被新结果替换
+    public void newGeneration() {
+        generation = (generation + 1) & 0x7FFF;
+    }
+
+    // 清空全部结果
+    public void clear() {
+        Arrays.fill(meta, 0);
+        Arrays.fill(checks, 0L);
+        Arrays.fill(data, 0L);
+    }
+
+    private void write(int slot, long hash, long value, int m) {
+        meta[slot] = m;
+        data[slot] = value;
+        checks[slot] = hash ^ value ^ m;
+    }
+
+    private int bucket(long hash) {
+        return ((int) (hash ^ (hash >>> 32)) & bucketMask) << 1;
+    }
+
+    private static int depth(int m) {
+        return (m & 0xFFFF) - 1;
+    }
+}
@@ -1,212 +1,224 @@
 // 游戏面板模型
 package com.qiaoqiao.model.game;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.qiaoqiao.engine.BoardGenerator;
+import com.qiaoqiao.engine.BoardGrid;
+import com.qiaoqiao.engine.BoardShuffler;
+import com.qiaoqiao.engine.CascadeResolver;
+import com.qiaoqiao.engine.CascadeResult;
+import com.qiaoqiao.engine.GameRandom;
+import com.qiaoqiao.engine.LegalMoveIndex;
+import com.qiaoqiao.engine.MatchEngine;
+import com.qiaoqiao.engine.MatchEngines;
+import lombok.AccessLevel;
 import lombok.Data;
-import java.util.List;
-import java.util.ArrayList;
-import java.util.Random;
+import lombok.Setter;
+import java.util.concurrent.ThreadLocalRandom;
 
 @Data
 public class Board {
     private int rows;              // 行数
     private int columns;           // 列数
-    private Tile[][] tiles;        // 瓦片二维数组
+    @JsonIgnore
+    private BoardGrid grid;        // 瓦片类型网格（扁平字节数组）
     private int score;             // 当前分数
     private int movesLeft;         // 剩余移动次数
-    // 在Board.java中修改TILE_TYPES数组
-    private static final String[] TILE_TYPES = {"红色", "蓝色", "绿色", "黄色", "紫色", "白色", "黑色", "棕色", "橙色"};
+    @JsonIgnore
+    private MatchEngine matchEngine;    // 本局使用的匹配规则引擎
+    @JsonIgnore
+    private GameRandom random;          // 本局的随机数流
+    @JsonIgnore
+    private CascadeResolver resolver;   // 连锁消除处理器
+    @JsonIgnore
+    private CascadeResult lastCascade;  // 最近一次有效移动的连锁消除结果
+    @JsonIgnore
+    private LegalMoveIndex moveIndex;   // 增量维护的合法移动集合
+    @JsonIgnore
+    private TilePalette palette;        // 本局使用的瓦片类型，网格中的类型序号是其中的下标
+    @JsonIgnore
+    @Setter(AccessLevel.NONE)
+    private volatile BoardSnapshot snapshot;  // 最近发布的不可变快照，读取方只读这个引用
 
     // 构造函数
     public Board(int rows, int columns, int movesLeft) {
+        this(rows, columns, movesLeft, ThreadLocalRandom.current().nextLong());
+    }
+
+    // 使用指定种子的构造函数，相同的种子和移动序列得到相同的对局
+    public Board(int rows, int columns, int movesLeft, long seed) {
+        this(rows, columns, movesLeft, seed, MatchEngines.getDefault());
+    }
+
+    // 使用指定种子和匹配引擎的构造函数
+    public Board(int rows, int columns, int movesLeft, long seed, MatchEngine matchEngine) {
+        this(rows, columns, movesLeft, seed, matchEngine, TileTypeRegistry.defaults().getDefaultPalette());
+    }
+
+    // 只使用内置类型中前typeCount种的构造函数（类型越少连锁越多）
+    public Board(int rows, int columns, int movesLeft, long seed, MatchEngine matchEngine, int typeCount) {
+        this(rows, columns, movesLeft, seed, matchEngine, TileTypeRegistry.defaults().getDefaultPalette().prefix(typeCount));
+    }
+
+    // 使用指定调色板的构造函数（各游戏模式的调色板来自TileTypeRegistry）
+    public Board(int rows, int columns, int movesLeft, long seed, MatchEngine matchEngine, TilePalette palette) {
+        this(rows, columns, movesLeft, seed, matchEngine, palette, null);
+    }
+
+    // 带障碍物布局的构造函数（挑战模式），布局字符见ObstacleLayer，null表示没有障碍物
+    public Board(int rows, int columns, int movesLeft, long seed, MatchEngine matchEngine, TilePalette palette,
+                 String[] layout) {
         this.rows = rows;
         this.columns = columns;
-        this.tiles = new Tile[rows][columns];
+        this.palette = palette;
+        this.grid = new BoardGrid(rows, columns, palette.size());
+        if (layout != null) {
+            grid.setObstacles(layout);
+        }
+        this.matchEngine = matchEngine;
+        this.random = new GameRandom(seed);
+        this.resolver = new CascadeResolver(grid, random, matchEngine);
         this.score = 0;
         this.movesLeft = movesLeft;
         initializeBoard();
+        this.moveIndex = new LegalMoveIndex(grid, matchEngine);
+        publishSnapshot(null);
     }
 
-    // 初始化游戏面板
-    private void initializeBoard() {
-        Random random = new Random();
-        for (int i = 0; i < rows; i++) {
-            for (int j = 0; j < columns; j++) {
-                String type = TILE_TYPES[random.nextInt(TILE_TYPES.length)];
-                String imageUrl = "/images/tiles/" + type + ".png";
-                tiles[i][j] = new Tile(i * columns + j, type, imageUrl);
-            }
-        }
+    // 从钝化的面板恢复（见PassivatedBoard），快照版本号从恢复前的版本继续
+    Board(BoardGrid grid, GameRandom random, MatchEngine matchEngine, TilePalette palette,
+          int score, int movesLeft, long version) {
+        this.rows = grid.getRows();
+        this.columns = grid.getColumns();
+        this.palette = palette;
+        this.grid = grid;
+        this.matchEngine = matchEngine;
+        this.random = random;
+        this.resolver = new CascadeResolver(grid, random, matchEngine);
+        this.score = score;
+        this.movesLeft = movesLeft;
+        this.moveIndex = new LegalMoveIndex(grid, matchEngine);
+        this.snapshot = new BoardSnapshot(version, this, null, null);
+    }
 
-        // 确保初始面板没有匹配的组合
-        while (hasMatches()) {
-            shuffleBoard();
-        }
+    // 当前面板状态的64位哈希（瓦片类型和特殊效果），可以作为按状态缓存的键
+    @JsonIgnore
+    public long getStateHash() {
+        return grid.getHash();
     }
 
-    // 检查是否存在匹配组合
-    public boolean hasMatches() {
-        // 水平检查
+    // 以瓦片对象的形式输出面板（仅用于JSON序列化）
+    public Tile[][] getTiles() {
+        Tile[][] tiles = new Tile[rows][columns];
         for (int i = 0; i < rows; i++) {
-            for (int j = 0; j < columns - 2; j++) {
-                if (tiles[i][j].getType().equals(tiles[i][j+1].getType()) &&
-                        tiles[i][j].getType().equals(tiles[i][j+2].getType())) {
-                    return true;
-                }
-            }
-        }
-
-        // 垂直检查
-        for (int i = 0; i < rows - 2; i++) {
             for (int j = 0; j < columns; j++) {
-                if (tiles[i][j].getType().equals(tiles[i+1][j].getType()) &&
-                        tiles[i][j].getType().equals(tiles[i+2][j].getType())) {
-                    return true;
-                }
+                tiles[i][j] = toTile(i, j);
             }
         }
-
-        return false;
+        return tiles;
     }
 
-    // 重新洗牌面板
-    private void shuffleBoard() {
-        Random random = new Random();
-        for (int i = 0; i < rows; i++) {
-            for (int j = 0; j < columns; j++) {
-                String type = TILE_TYPES[random.nextInt(TILE_TYPES.length)];
-                String imageUrl = "/images/tiles/" + type + ".png";
-                tiles[i][j] = new Tile(i * columns + j, type, imageUrl);
-            }
+    // 把单个格子转换为瓦片对象，瓦片ID在下落和交换后保持不变，客户端可以据此播放动画；没有瓦片的格子输出为石块、洞或空格子
+    public Tile toTile(int row, int col) {
+        int index = grid.index(row, col);
+        TileType type = palette.get(grid.getType(index));
+        if (type == null) {
+            return Tile.emptyCell(grid.getObstacles() == null ? 0 : grid.getObstacles().getFlags(index));
         }
+        // 类型名称和图片URL直接使用享元对象中的字符串
+        String effect = BoardGrid.effectName(grid.getEffect(index));
+        if (effect != null) {
+            return new Tile(grid.getId(index), type.getName(), type.getImageUrl(), effect);
+        }
+        return new Tile(grid.getId(index), type.getName(), type.getImageUrl());
     }
 
-    // 交换两个瓦片
-    public boolean swapTiles(int row1, int col1, int row2, int col2) {
-        // 检查是否相邻
-        if (!areAdjacent(row1, col1, row2, col2)) {
-            return false;
-        }
+    // 初始化游戏面板（一次生成，没有初始匹配且至少有一个合法移动）
+    private void initializeBoard() {
+        BoardGenerator.generate(grid, random);
+    }
 
-        // 交换瓦片
-        Tile temp = tiles[row1][col1];
-        tiles[row1][col1] = tiles[row2][col2];
-        tiles[row2][col2] = temp;
-
-        // 检查交换后是否形成匹配
-        if (checkMatches()) {
-            // 减少移动次数
-            movesLeft--;
-            return true;
-        } else {
-            // 交换回来
-            temp = tiles[row1][col1];
-            tiles[row1][col1] = tiles[row2][col2];
-            tiles[row2][col2] = temp;
-            return false;
-        }
+    // 检查是否存在匹配组合
+    public boolean hasMatches() {
+        return matchEngine.hasMatches(grid);
     }
 
-    // 检查两个瓦片是否相邻
-    private boolean areAdjacent(int row1, int col1, int row2, int col2) {
-        return (Math.abs(row1 - row2) == 1 && col1 == col2) ||
-                (Math.abs(col1 - col2) == 1 && row1 == row2);
+    // 检查是否还有合法移动（只重新检查上次查询以来变化的格子附近的移动）
+    @JsonIgnore
+    public boolean hasPossibleMoves() {
+        return moveIndex.hasMoves();
     }
 
-    // 检查并处理匹配
-    private boolean checkMatches() {
-        List<Tile> matchedTiles = findMatches();
-        if (matchedTiles.isEmpty()) {
+    // 交换两个瓦片
+    public boolean swapTiles(int row1, int col1, int row2, int col2) {
+        // 检查坐标和是否相邻
+        if (!grid.contains(row1, col1) || !grid.contains(row2, col2) ||
+                !areAdjacent(row1, col1, row2, col2)) {
             return false;
         }
 
-        // 处理匹配的瓦片
-        for (Tile tile : matchedTiles) {
-            int row = tile.getId() / columns;
-            int col = tile.getId() % columns;
-            // 增加分数
-            score += 10;
-            // 将匹配的瓦片设置为null，之后会填充新瓦片
-            tiles[row][col] = null;
+        // 检查交换后是否形成匹配（只读检查，无效的移动不会修改面板）
+        if (!matchEngine.isLegalMove(grid, row1, col1, row2, col2)) {
+            lastCascade = null;
+            return false;
         }
 
-        // 填充新瓦片
-        fillBoard();
-
-        // 递归检查新的匹配
-        if (hasMatches()) {
-            checkMatches();
-        }
+        // 丢弃之前残留的脏标记，之后只扫描本次移动影响到的行和列
+        grid.clearDirty();
 
+        // 交换瓦片
+        grid.swap(row1, col1, row2, col2);
+
+        // 处理全部连锁消除并累计分数
+        lastCascade = resolver.resolveDetached();
+        score += lastCascade.getTotalScore();
+        // 减少移动次数
+        movesLeft--;
+        publishSnapshot(lastCascade);
         return true;
     }
 
-    // 查找匹配的瓦片
-    private List<Tile> findMatches() {
-        List<Tile> matchedTiles = new ArrayList<>();
-
-        // 水平匹配
-        for (int i = 0; i < rows; i++) {
-            for (int j = 0; j < columns - 2; j++) {
-                if (tiles[i][j] != null && tiles[i][j+1] != null && tiles[i][j+2] != null &&
-                        tiles[i][j].getType().equals(tiles[i][j+1].getType()) &&
-                        tiles[i][j].getType().equals(tiles[i][j+2].getType())) {
-                    if (!matchedTiles.contains(tiles[i][j])) matchedTiles.add(tiles[i][j]);
-                    if (!matchedTiles.contains(tiles[i][j+1])) matchedTiles.add(tiles[i][j+1]);
-                    if (!matchedTiles.contains(tiles[i][j+2])) matchedTiles.add(tiles[i][j+2]);
-                }
-            }
+    // 没有合法移动时重新排列现有瓦片（保留类型数量、特殊瓦片和瓦片编号）
+    public void reshuffle() {
+        BoardShuffler.reshuffle(grid, random);
+        grid.clearDirty();
+        if (lastCascade != null) {
+            // 上一个快照仍引用原来的结果对象，重排标记写在副本上
+            lastCascade = lastCascade.copy();
+            lastCascade.setReshuffled(true);
         }
+        publishSnapshot(lastCascade);
+    }
 
-        // 垂直匹配
-        for (int i = 0; i < rows - 2; i++) {
-            for (int j = 0; j < columns; j++) {
-                if (tiles[i][j] != null && tiles[i+1][j] != null && tiles[i+2][j] != null &&
-                        tiles[i][j].getType().equals(tiles[i+1][j].getType()) &&
-                        tiles[i][j].getType().equals(tiles[i+2][j].getType())) {
-                    if (!matchedTiles.contains(tiles[i][j])) matchedTiles.add(tiles[i][j]);
-                    if (!matchedTiles.contains(tiles[i+1][j])) matchedTiles.add(tiles[i+1][j]);
-                    if (!matchedTiles.contains(tiles[i+2][j])) matchedTiles.add(tiles[i+2][j]);
-                }
-            }
-        }
+    /**
+     * 把当前面板发布为新的快照（写时复制：只复制这次修改过的块，其余块与上一个快照共享）
+     * 只由处理该对局的线程在一次修改完成后调用，读取方通过getSnapshot()无锁读取。
+     * cascade由处理器交出，之后不再修改。
+     */
+    private void publishSnapshot(CascadeResult cascade) {
+        BoardSnapshot previous = snapshot;
+        snapshot = new BoardSnapshot(previous == null ? 1L : previous.getVersion() + 1, this, previous, cascade);
+    }
 
-        return matchedTiles;
-    }
-
-    // 填充面板中的空位
-    private void fillBoard() {
-        Random random = new Random();
-
-        // 下落现有瓦片
-        for (int j = 0; j < columns; j++) {
-            for (int i = rows - 1; i >= 0; i--) {
-                if (tiles[i][j] == null) {
-                    // 查找上方最近的非空瓦片
-                    for (int k = i - 1; k >= 0; k--) {
-                        if (tiles[k][j] != null) {
-                            tiles[i][j] = tiles[k][j];
-                            tiles[k][j] = null;
-                            break;
-                        }
-                    }
-                }
-            }
-        }
+    // 检查两个瓦片是否相邻
+    private boolean areAdjacent(int row1, int col1, int row2, int col2) {
+        return (Math.abs(row1 - row2) == 1 && col1 == col2) ||
+                (Math.abs(col1 - col2) == 1 && row1 == row2);
+    }
 
-        // 填充顶部空位
-        for (int i = 0; i < rows; i++) {
-            for (int j = 0; j < columns; j++) {
-                if (tiles[i][j] == null) {
-                    String type = TILE_TYPES[random.nextInt(TILE_TYPES.length)];
-                    String imageUrl = "/images/tiles/" + type + ".png";
-                    tiles[i][j] = new Tile(i * columns + j, type, imageUrl);
-                }
-            }
+    /**
+     * 对局的结果：挑战模式需要清除的障碍物全部清除为WON（最后一步用完移动次数也算过关），
+     * 移动次数用完为GAME_OVER，还在进行中为null。快照发布时按这里的规则记录结果。
+     */
+    public GameState outcome() {
+        if (grid.getObstacles() != null && grid.getObstacles().isCleared()) {
+            return GameState.WON;
         }
+        return movesLeft <= 0 ? GameState.GAME_OVER : null;
     }
 
-    // 检查游戏是否结束
+    // 检查游戏是否结束（过关或移动次数用完）
     public boolean isGameOver() {
-        return movesLeft <= 0;
+        return outcome() != null;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,147 @@
+// 面板快照
+package com.qiaoqiao.model.game;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.qiaoqiao.engine.BoardGrid;
+import com.qiaoqiao.engine.CascadeResult;
+import com.qiaoqiao.engine.GameRandom;
+import com.qiaoqiao.engine.GridImage;
+import com.qiaoqiao.engine.ObstacleLayer;
+
+/**
+ * 某一时刻面板的不可变快照
+ * 每次有效移动和重排后由Board发布并通过volatile引用发布，版本号逐次加一；
+ * JSON序列化、观战和提示计算只读取快照，不需要加锁，也不会看到连锁消除进行到一半的面板，
+ * 移动处理也从不等待读取方。面板内容是分块的GridImage（写时复制）：只复制这次修改过的块，
+ * 其余块与上一个快照共享；连锁消除过程直接取自处理器交出的结果对象，不再复制。快照中的数组创建后不再修改。
+ * JSON结构与直接序列化Board时相同，另外带有版本号和障碍物。
+ */
+public final class BoardSnapshot {
+
+    private final long version;          // 版本号，面板每发布一次加一
+    private final int rows;
+    private final int columns;
+    private final int score;
+    private final int movesLeft;
+    private final GridImage image;       // 瓦片类型序号（调色板下标）、特殊效果、瓦片编号和障碍物
+    private final TilePalette palette;
+    private final long stateHash;        // 面板状态哈希
+    private final long seed;             // 随机数流的种子和位置，用于在快照上搜索
+    private final long draws;
+    private final CascadeResult cascade; // 产生该快照的移动的连锁消除过程（不再修改），没有则为null
+    private final GameState outcome;     // 快照时刻的对局结果（Board.outcome），进行中为null
+
+    // previous是同一面板上一次发布的快照，没有变化的块与它共享（没有时为null）
+    BoardSnapshot(long version, Board board, BoardSnapshot previous, CascadeResult cascade) {
+        BoardGrid grid = board.getGrid();
+        this.version = version;
+        this.rows = board.getRows();
+        this.columns = board.getColumns();
+        this.score = board.getScore();
+        this.movesLeft = board.getMovesLeft();
+        this.image = GridImage.publish(grid, previous == null ? null : previous.image);
+        this.palette = board.getPalette();
+        this.stateHash = grid.getHash();
+        this.seed = board.getRandom().getSeed();
+        this.draws = board.getRandom().getDraws();
+        this.cascade = cascade;
+        this.outcome = board.outcome();
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public int getRows() {
+        return rows;
+    }
+
+    public int getColumns() {
+        return columns;
+    }
+
+    public int getScore() {
+        return score;
+    }
+
+    public int getMovesLeft() {
+        return movesLeft;
+    }
+
+    public boolean isGameOver() {
+        return outcome != null;
+    }
+
+    // 是否过关（挑战模式的障碍物全部清除）
+    public boolean isWon() {
+        return outcome == GameState.WON;
+    }
+
+    @JsonIgnore
+    public long getStateHash() {
+        return stateHash;
+    }
+
+    @JsonIgnore
+    public CascadeResult getCascade() {
+        return cascade;
+    }
+
+    // 面板内容的分块副本
+    @JsonIgnore
+    public GridImage getImage() {
+        return image;
+    }
+
+    // 快照时刻的随机数流位置（副本，不影响对局）
+    @JsonIgnore
+    public GameRandom getRandom() {
+        return new GameRandom(seed, draws);
+    }
+
+    // 以瓦片对象的形式输出面板（仅用于JSON序列化），没有瓦片的格子输出为石块、洞或空格子，不输出null
+    public Tile[][] getTiles() {
+        ObstacleLayer obstacles = image.getObstacles();
+        Tile[][] tiles = new Tile[rows][columns];
+        for (int i = 0; i < rows; i++) {
+            for (int j = 0; j < columns; j++) {
+                int index = i * columns + j;
+                TileType type = palette.get(image.getType(index));
+                if (type == null) {
+                    tiles[i][j] = Tile.emptyCell(obstacles == null ? 0 : obstacles.getFlags(index));
+                    continue;
+                }
+                String effect = BoardGrid.effectName(image.getEffect(index));
+                tiles[i][j] = effect != null
+                        ? new Tile(image.getId(index), type.getName(), type.getImageUrl(), effect)
+                        : new Tile(image.getId(index), type.getName(), type.getImageUrl());
+            }
+        }
+        return tiles;
+    }
+
+    // 每个格子的障碍物标记（ObstacleLayer.FLAG_*的组合），没有障碍物时为null
+    public int[][] getObstacles() {
+        ObstacleLayer obstacles = image.getObstacles();
+        if (obstacles == null) {
+            return null;
+        }
+        int[][] flags = new int[rows][columns];
+        for (int i = 0; i < rows; i++) {
+            for (int j = 0; j < columns; j++) {
+                flags[i][j] = obstacles.getFlags(i * columns + j);
+            }
+        }
+        return flags;
+    }
+
+    // 剩余的障碍物数（石块、冰层和锁），挑战模式全部清除即过关
+    public int getObstaclesLeft() {
+        return image.getObstacles() == null ? 0 : image.getObstacles().remaining();
+    }
+
+    // 在快照内容上重建一个独立的网格（例如提示搜索），不影响对局
+    public BoardGrid toGrid() {
+        return image.toGrid(palette.size());
+    }
+}
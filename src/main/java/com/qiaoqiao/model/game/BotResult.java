@@ -0,0 +1,30 @@
+// 机器人执行结果模型
+package com.qiaoqiao.model.game;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * 服务器端机器人一次执行的结果：实际执行的步数和停止的原因
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class BotResult {
+
+    // 机器人停止的原因
+    public enum StopReason {
+        DONE,        // 执行完请求的步数
+        GAME_OVER,   // 游戏结束
+        NO_MOVES,    // 重排若干次后仍没有合法移动
+        CANCELLED,   // 搜索被取消（玩家移动或新的搜索请求）
+        REJECTED     // 移动没有被执行（例如会话已转移）
+    }
+
+    // 实际执行的步数
+    private int moves;
+
+    // 停止的原因
+    private StopReason stopReason;
+}
@@ -1,20 +1,58 @@
 // 游戏会话模型
 package com.qiaoqiao.model.game;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.qiaoqiao.util.Constants;
+import com.qiaoqiao.util.Mailbox;
 import lombok.Data;
 import lombok.AllArgsConstructor;
+import lombok.EqualsAndHashCode;
+import lombok.ToString;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
 
 @Data
 public class GameSession {
     private String id;        // 游戏会话ID
     private String userId;    // 用户ID（可为null表示游客）
-    private Board board;      // 游戏面板
+    private volatile Board board;  // 游戏面板，钝化期间为null
     private GameState state;  // 游戏状态
+    private long seed;        // 随机数种子，相同种子和移动序列可以复现整局游戏
+    private String mode;      // 游戏模式（Constants.MODE_*）
+    @JsonIgnore
+    private volatile long lastAccessTime;  // 最后一次访问时间（毫秒），会话过期按此计算
+    @JsonIgnore
+    @EqualsAndHashCode.Exclude
+    @ToString.Exclude
+    private Mailbox mailbox;  // 修改面板的任务都经过该邮箱逐个执行（由GameService创建会话时设置）
+    @JsonIgnore
+    @EqualsAndHashCode.Exclude
+    @ToString.Exclude
+    private PassivatedBoard passivated;  // 钝化后的面板，活动期间为null（只在邮箱中读写）
+    @JsonIgnore
+    private volatile boolean transferred;  // 已转移到其他节点，本节点的对象不再修改
+    @JsonIgnore
+    @EqualsAndHashCode.Exclude
+    @ToString.Exclude
+    private CompletableFuture<Boolean> handOff;  // 正在发送给其他节点时为转移的结果，之后的修改等它完成（只在邮箱中读写）
+    @JsonIgnore
+    @EqualsAndHashCode.Exclude
+    @ToString.Exclude
+    private final Queue<Runnable> heldMoves = new ArrayDeque<>();  // 发送期间到达的移动，按到达顺序等待发送结束（只在邮箱中读写）
 
     public GameSession(String id, String userId, Board board) {
         this.id = id;
         this.userId = userId;
         this.board = board;
         this.state = GameState.READY;
+        this.seed = board.getRandom().getSeed();
+        this.mode = Constants.MODE_CLASSIC;
+    }
+
+    // 记录一次访问
+    public void touch(long now) {
+        this.lastAccessTime = now;
     }
 }
\ No newline at end of file
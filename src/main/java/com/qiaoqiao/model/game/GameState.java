@@ -28,7 +28,13 @@ public enum GameState {
      * 游戏结束状态
      * 游戏已结束，无法继续
      */
-    GAME_OVER("game_over");
+    GAME_OVER("game_over"),
+
+    /**
+     * 过关状态
+     * 挑战模式的障碍物全部清除，游戏结束，无法继续
+     */
+    WON("won");
 
     private final String value;
 
@@ -63,10 +69,10 @@ public enum GameState {
     }
 
     /**
-     * 检查游戏是否已结束
+     * 检查游戏是否已结束（包括过关）
      */
     public boolean isGameOver() {
-        return this == GAME_OVER;
+        return this == GAME_OVER || this == WON;
     }
 
     /**
@@ -102,6 +108,7 @@ public enum GameState {
             case PAUSED:
                 return PLAYING;
             case GAME_OVER:
+            case WON:
                 return READY;
             default:
                 return this;
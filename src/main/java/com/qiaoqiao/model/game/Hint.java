@@ -0,0 +1,39 @@
+// 移动提示模型
+package com.qiaoqiao.model.game;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * 服务器端搜索得到的最佳移动
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class Hint {
+
+    // 第一个瓦片的行坐标
+    private int row1;
+
+    // 第一个瓦片的列坐标
+    private int col1;
+
+    // 第二个瓦片的行坐标
+    private int row2;
+
+    // 第二个瓦片的列坐标
+    private int col2;
+
+    // 在搜索深度内的期望得分
+    private double expectedScore;
+
+    // 完整搜索的深度（0表示时间不够，只给出一个合法移动）
+    private int depth;
+
+    // 搜索的节点数
+    private long nodes;
+
+    // 是否搜索到了配置的最大深度
+    private boolean complete;
+}
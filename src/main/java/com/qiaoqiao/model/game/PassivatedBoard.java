@@ -0,0 +1,84 @@
+// 钝化的面板
+package com.qiaoqiao.model.game;
+
+import com.qiaoqiao.engine.BoardCodec;
+import com.qiaoqiao.engine.BoardGrid;
+import com.qiaoqiao.engine.GameRandom;
+import com.qiaoqiao.engine.MatchEngine;
+
+import java.nio.ByteBuffer;
+
+/**
+ * 空闲会话的面板钝化后的紧凑形式
+ * 只保存恢复对局所需的最少数据：快照版本号、分数、剩余移动次数、随机数流的种子和位置，
+ * 以及BoardCodec编码的格子（每格4位的类型、稀疏的效果、差值编码的编号、障碍物）。
+ * 处理器、合法移动索引、位棋盘和快照等派生对象在恢复时重新创建，
+ * 匹配引擎和调色板是各会话共享的对象，直接保留引用。
+ * 字节数据可以放在堆内或堆外（直接缓冲区），堆外时会话对象本身只剩几十个字节在堆上。
+ */
+public final class PassivatedBoard {
+
+    private static final byte FORMAT = 1;   // 编码格式版本
+
+    private final ByteBuffer image;         // 编码后的面板，只读
+    private final MatchEngine matchEngine;
+    private final TilePalette palette;
+
+    private PassivatedBoard(ByteBuffer image, MatchEngine matchEngine, TilePalette palette) {
+        this.image = image;
+        this.matchEngine = matchEngine;
+        this.palette = palette;
+    }
+
+    // 把面板编码为紧凑形式，offHeap为true时字节数据放在堆外
+    public static PassivatedBoard of(Board board, boolean offHeap) {
+        BoardGrid grid = board.getGrid();
+        ByteBuffer buffer = ByteBuffer.allocate(32 + BoardCodec.maxBytes(grid));
+        buffer.put(FORMAT);
+        BoardCodec.writeVarLong(buffer, board.getSnapshot().getVersion());
+        BoardCodec.writeVarInt(buffer, board.getScore());
+        BoardCodec.writeVarInt(buffer, board.getMovesLeft());
+        BoardCodec.writeRandom(board.getRandom(), buffer);
+        BoardCodec.write(grid, buffer);
+        buffer.flip();
+
+        // 按实际长度复制一份，临时缓冲区随即丢弃
+        ByteBuffer image = offHeap ? ByteBuffer.allocateDirect(buffer.remaining()) : ByteBuffer.allocate(buffer.remaining());
+        image.put(buffer);
+        image.flip();
+        return new PassivatedBoard(image.asReadOnlyBuffer(), board.getMatchEngine(), board.getPalette());
+    }
+
+    // 从编码后的字节创建（复制一份，例如从移动日志的快照记录读取）
+    public static PassivatedBoard copyOf(ByteBuffer image, MatchEngine matchEngine, TilePalette palette) {
+        ByteBuffer copy = ByteBuffer.allocate(image.remaining());
+        copy.put(image.duplicate());
+        copy.flip();
+        return new PassivatedBoard(copy.asReadOnlyBuffer(), matchEngine, palette);
+    }
+
+    // 编码后的字节（只读视图）
+    public ByteBuffer getImage() {
+        return image.duplicate();
+    }
+
+    // 恢复为可以继续对局的面板，与钝化前的面板状态完全相同
+    public Board restore() {
+        ByteBuffer buffer = image.duplicate();
+        byte format = buffer.get();
+        if (format != FORMAT) {
+            throw new IllegalStateException("未知的面板编码格式: " + format);
+        }
+        long version = BoardCodec.readVarLong(buffer);
+        int score = BoardCodec.readVarInt(buffer);
+        int movesLeft = BoardCodec.readVarInt(buffer);
+        GameRandom random = BoardCodec.readRandom(buffer);
+        BoardGrid grid = BoardCodec.read(buffer);
+        return new Board(grid, random, matchEngine, palette, score, movesLeft, version);
+    }
+
+    // 编码后的字节数
+    public int size() {
+        return image.capacity();
+    }
+}
@@ -1,10 +1,16 @@
 // 游戏瓦片模型
 package com.qiaoqiao.model.game;
 
+import com.qiaoqiao.engine.ObstacleLayer;
 import lombok.Data;
 
 @Data
 public class Tile {
+    // 没有瓦片的格子输出的类型：石块、洞（不属于面板）和等待填充的空格子
+    public static final String TYPE_BLOCKER = "blocker";
+    public static final String TYPE_HOLE = "hole";
+    public static final String TYPE_EMPTY = "empty";
+
     private int id;          // 瓦片ID
     private String type;     // 瓦片类型（例如：红色、蓝色、绿色等）
     private String imageUrl; // 瓦片图片URL
@@ -28,4 +34,11 @@ public class Tile {
         this.isSpecial = true;
         this.specialEffect = specialEffect;
     }
-}
\ No newline at end of file
+
+    // 没有瓦片的格子（ID为-1，没有图片），类型由格子的障碍物标记（ObstacleLayer.FLAG_*）决定
+    public static Tile emptyCell(int obstacleFlags) {
+        String type = (obstacleFlags & ObstacleLayer.FLAG_BLOCKER) != 0 ? TYPE_BLOCKER
+                : (obstacleFlags & ObstacleLayer.FLAG_HOLE) != 0 ? TYPE_HOLE : TYPE_EMPTY;
+        return new Tile(-1, type, null);
+    }
+}
@@ -0,0 +1,60 @@
+// 瓦片调色板
+package com.qiaoqiao.model.game;
+
+import com.qiaoqiao.engine.BoardGrid;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 一局游戏使用的瓦片类型列表
+ * 面板网格中保存的类型序号就是调色板中的下标（0到size-1），
+ * 转换为瓦片对象时通过调色板取得注册表中的享元类型。
+ */
+public final class TilePalette {
+
+    // 一局游戏至少需要的类型数量
+    public static final int MIN_TYPES = 3;
+
+    private final TileType[] types;
+
+    public TilePalette(List<TileType> types) {
+        if (types.size() < MIN_TYPES || types.size() > Byte.MAX_VALUE) {
+            throw new IllegalArgumentException("瓦片类型数量必须在" + MIN_TYPES + "到" + Byte.MAX_VALUE + "之间: " + types.size());
+        }
+        this.types = types.toArray(new TileType[0]);
+    }
+
+    // 类型数量
+    public int size() {
+        return types.length;
+    }
+
+    // 网格中的类型序号对应的瓦片类型，空格子返回null
+    public TileType get(byte type) {
+        return type == BoardGrid.EMPTY ? null : types[type];
+    }
+
+    // 类型名称对应的网格类型序号，不在调色板中返回BoardGrid.EMPTY
+    public byte indexOf(String name) {
+        for (int t = 0; t < types.length; t++) {
+            if (types[t].getName().equals(name)) {
+                return (byte) t;
+            }
+        }
+        return BoardGrid.EMPTY;
+    }
+
+    // 只包含前count种类型的调色板（类型越少连锁越多）
+    public TilePalette prefix(int count) {
+        if (count < MIN_TYPES || count > types.length) {
+            throw new IllegalArgumentException("瓦片类型数量必须在" + MIN_TYPES + "到" + types.length + "之间");
+        }
+        return count == types.length ? this : new TilePalette(Arrays.asList(types).subList(0, count));
+    }
+
+    @Override
+    public String toString() {
+        return Arrays.toString(types);
+    }
+}
@@ -0,0 +1,37 @@
+// 瓦片类型描述
+package com.qiaoqiao.model.game;
+
+/**
+ * 瓦片类型的享元对象
+ * 由TileTypeRegistry在启动时创建，每种类型只有一个实例；
+ * 序号是类型在注册表中的位置，图片URL在创建时拼接一次，之后生成瓦片对象时直接复用。
+ */
+public final class TileType {
+
+    private final int ordinal;       // 注册表中的序号
+    private final String name;       // 类型名称（例如：红色）
+    private final String imageUrl;   // 瓦片图片URL
+
+    TileType(int ordinal, String name, String imageUrl) {
+        this.ordinal = ordinal;
+        this.name = name;
+        this.imageUrl = imageUrl;
+    }
+
+    public int getOrdinal() {
+        return ordinal;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getImageUrl() {
+        return imageUrl;
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
@@ -0,0 +1,91 @@
+// 瓦片类型注册表
+package com.qiaoqiao.model.game;
+
+import com.qiaoqiao.util.Constants;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 全部瓦片类型的注册表
+ * 类型列表来自game.tile-types配置，每种类型只创建一个TileType实例；
+ * 各游戏模式的调色板来自game.palettes配置，未配置的模式使用全部类型。
+ * 创建后不再修改，可以在多个线程之间共享。
+ */
+public final class TileTypeRegistry {
+
+    private static final TileTypeRegistry DEFAULTS =
+            new TileTypeRegistry(Arrays.asList(Constants.TILE_TYPES), Collections.emptyMap());
+
+    private final TileType[] types;
+    private final Map<String, TileType> byName = new HashMap<>();
+    private final TilePalette defaultPalette;
+    private final Map<String, TilePalette> palettes = new HashMap<>();
+
+    public TileTypeRegistry(List<String> names, Map<String, List<String>> modePalettes) {
+        if (names == null || names.isEmpty()) {
+            throw new IllegalArgumentException("没有配置瓦片类型");
+        }
+        this.types = new TileType[names.size()];
+        for (int t = 0; t < types.length; t++) {
+            String name = names.get(t).trim();
+            types[t] = new TileType(t, name, Constants.PATH_TILES + name + ".png");
+            if (byName.put(name, types[t]) != null) {
+                throw new IllegalArgumentException("重复的瓦片类型: " + name);
+            }
+        }
+        this.defaultPalette = new TilePalette(Arrays.asList(types));
+        for (Map.Entry<String, List<String>> entry : new LinkedHashMap<>(modePalettes).entrySet()) {
+            List<TileType> palette = new ArrayList<>();
+            for (String name : entry.getValue()) {
+                palette.add(get(name));
+            }
+            palettes.put(entry.getKey(), new TilePalette(palette));
+        }
+    }
+
+    // 内置的类型列表（Constants.TILE_TYPES），用于不经过Spring配置创建的面板
+    public static TileTypeRegistry defaults() {
+        return DEFAULTS;
+    }
+
+    // 类型数量
+    public int size() {
+        return types.length;
+    }
+
+    // 序号对应的类型
+    public TileType get(int ordinal) {
+        return types[ordinal];
+    }
+
+    // 名称对应的类型
+    public TileType get(String name) {
+        TileType type = byName.get(name == null ? null : name.trim());
+        if (type == null) {
+            throw new IllegalArgumentException("未知的瓦片类型: " + name);
+        }
+        return type;
+    }
+
+    // 名称对应的类型，不存在时返回null
+    public TileType find(String name) {
+        return byName.get(name);
+    }
+
+    // 包含全部类型的调色板
+    public TilePalette getDefaultPalette() {
+        return defaultPalette;
+    }
+
+    // 游戏模式使用的调色板
+    public TilePalette getPalette(String mode) {
+        TilePalette palette = mode == null ? null : palettes.get(mode);
+        return palette != null ? palette : defaultPalette;
+    }
+}
@@ -0,0 +1,76 @@
+// 集群成员服务
+package com.qiaoqiao.service;
+
+import com.qiaoqiao.cluster.ClusterGameSessionStore;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.http.HttpMethod;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PreDestroy;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 多节点部署时维护成员列表，成员变化后转移会话
+ * 加入：启动完成后通知其他节点，各节点开始把改由新节点负责的会话发送给它，不等发送完成就返回，
+ * 还没有收到的会话的请求由新节点转发给原来负责的节点；
+ * 离开：关闭前先把自己的会话全部发送给其他节点，再通知它们移除本节点。
+ * 单机部署（LocalGameSessionStore）时各方法什么都不做。
+ */
+@Service
+public class ClusterService {
+
+    @Autowired
+    private GameService gameService;
+
+    @Autowired
+    private GameSessionStore sessionStore;
+
+    // 启动完成后加入集群，并在后台转移从日志恢复的、已经不由本节点负责的会话
+    @EventListener(ApplicationReadyEvent.class)
+    public void join() {
+        ClusterGameSessionStore cluster = cluster();
+        if (cluster != null) {
+            cluster.announce(HttpMethod.POST);
+            gameService.rebalance();
+        }
+    }
+
+    // 关闭前离开集群（在GameService关闭之前执行）
+    @PreDestroy
+    public void leave() {
+        ClusterGameSessionStore cluster = cluster();
+        if (cluster != null && cluster.removeMember(cluster.getSelf())) {
+            gameService.rebalance().join();
+            cluster.announce(HttpMethod.DELETE);
+        }
+    }
+
+    // 其他节点加入，在后台把改由它负责的会话转移过去，返回是否新加入
+    public boolean memberJoined(String node) {
+        ClusterGameSessionStore cluster = cluster();
+        if (cluster == null || !cluster.addMember(node)) {
+            return false;
+        }
+        gameService.rebalance();
+        return true;
+    }
+
+    // 其他节点离开（它已经把会话转移出去）
+    public boolean memberLeft(String node) {
+        ClusterGameSessionStore cluster = cluster();
+        return cluster != null && cluster.removeMember(node);
+    }
+
+    // 当前的成员列表，单机部署时为空
+    public List<String> getMembers() {
+        ClusterGameSessionStore cluster = cluster();
+        return cluster != null ? cluster.getMembers() : Collections.emptyList();
+    }
+
+    private ClusterGameSessionStore cluster() {
+        return sessionStore instanceof ClusterGameSessionStore ? (ClusterGameSessionStore) sessionStore : null;
+    }
+}
@@ -1,55 +1,401 @@
 // 游戏服务
 package com.qiaoqiao.service;
 
+import com.qiaoqiao.config.EngineProperties;
+import com.qiaoqiao.config.JournalProperties;
+import com.qiaoqiao.config.SessionProperties;
+import com.qiaoqiao.engine.BoardGrid;
+import com.qiaoqiao.engine.MatchEngine;
+import com.qiaoqiao.engine.MatchEngines;
+import com.qiaoqiao.engine.MoveGenerator;
+import com.qiaoqiao.engine.ParallelMatchEngine;
 import com.qiaoqiao.model.game.Board;
+import com.qiaoqiao.model.game.BoardSnapshot;
 import com.qiaoqiao.model.game.GameSession;
 import com.qiaoqiao.model.game.GameState;
+import com.qiaoqiao.model.game.Move;
+import com.qiaoqiao.model.game.PassivatedBoard;
+import com.qiaoqiao.model.game.TileTypeRegistry;
+import com.qiaoqiao.util.Constants;
+import com.qiaoqiao.util.Mailbox;
+import com.qiaoqiao.util.TimingWheel;
 import org.springframework.stereotype.Service;
 
+import javax.annotation.PreDestroy;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.UUID;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
 
 @Service
 public class GameService {
 
-    // 存储游戏会话
-    private final Map<String, GameSession> gameSessionMap = new ConcurrentHashMap<>();
+    // 存储游戏会话（单机为内存Map，多节点部署按gameId的一致性哈希分布在各节点上）
+    private final GameSessionStore sessionStore;
+
+    // 新游戏默认使用的匹配引擎（game.match-engine: optimized / reference / parallel）
+    private final MatchEngine defaultMatchEngine;
+
+    // 无尽模式大面板的并行扫描、下落和填充使用独立的线程池，不占用公共池
+    private final ForkJoinPool endlessPool;
+    private final MatchEngine endlessMatchEngine;
+
+    // 瓦片类型和各模式的调色板（game.tile-types / game.palettes）
+    private final TileTypeRegistry tileTypes;
+
+    // 各会话邮箱共享的线程池：同一会话的移动逐个执行，不同会话的移动在各个核上并行
+    private final ForkJoinPool sessionPool;
+
+    // 会话过期：进行中的会话空闲idleTtl后移除，结束的会话最后一次访问finishedTtl后移除（毫秒）
+    private final long idleTtl;
+    private final long finishedTtl;
+    private final TimingWheel<GameSession> expiryWheel;
+    private final ScheduledExecutorService expiryTimer;
+
+    // 钝化：空闲passivateAfter后面板编码为紧凑形式，下次访问时恢复（0表示不钝化）
+    private final long passivateAfter;
+    private final boolean passivateOffHeap;
+
+    // 移动日志：创建参数和每个被接受的移动写入磁盘，启动时重放以恢复进行中的对局（未配置目录时为null）
+    private final MoveJournal journal;
+    private final int compactAfterSegments;
+    private final AtomicBoolean compacting = new AtomicBoolean();
+
+    public GameService(EngineProperties engine,
+                       TileTypeRegistry tileTypes,
+                       SessionProperties sessions,
+                       JournalProperties journalProperties,
+                       GameSessionStore sessionStore) {
+        this.sessionStore = sessionStore;
+        this.tileTypes = tileTypes;
+        this.defaultMatchEngine = MatchEngines.forName(engine.getMatchEngine());
+        int endlessParallelism = engine.getEndless().getParallelism();
+        this.endlessPool = new ForkJoinPool(endlessParallelism > 0
+                ? endlessParallelism : Runtime.getRuntime().availableProcessors());
+        this.endlessMatchEngine = new ParallelMatchEngine(endlessPool);
+        // 邮箱任务之间没有父子关系，使用先进先出的异步模式
+        this.sessionPool = new ForkJoinPool(sessions.getParallelism() > 0
+                ? sessions.getParallelism() : Runtime.getRuntime().availableProcessors(),
+                ForkJoinPool.defaultForkJoinWorkerThreadFactory, null, true);
+
+        this.idleTtl = TimeUnit.SECONDS.toMillis(sessions.getIdleTtlSeconds());
+        this.finishedTtl = TimeUnit.SECONDS.toMillis(sessions.getFinishedTtlSeconds());
+        this.passivateAfter = TimeUnit.SECONDS.toMillis(sessions.getPassivateAfterSeconds());
+        this.passivateOffHeap = sessions.isOffHeap();
+        long tickMillis = sessions.getTickMs();
+        this.expiryWheel = new TimingWheel<>(Constants.SESSION_WHEEL_SLOTS, tickMillis, System.currentTimeMillis(),
+                this::expiresAt, this::evict);
+        this.compactAfterSegments = journalProperties.getCompactAfterSegments();
+        if (journalProperties.isEnabled()) {
+            this.journal = new MoveJournal(Paths.get(journalProperties.getDirectory()),
+                    journalProperties.getSegmentMb() << 20, journalProperties.getFlushMs());
+            recover();
+        } else {
+            this.journal = null;
+        }
+
+        ScheduledThreadPoolExecutor timer = new ScheduledThreadPoolExecutor(1, task -> {
+            Thread thread = new Thread(task, "game-session-expiry");
+            thread.setDaemon(true);
+            return thread;
+        });
+        timer.scheduleAtFixedRate(this::tick, tickMillis, tickMillis, TimeUnit.MILLISECONDS);
+        this.expiryTimer = timer;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        expiryTimer.shutdownNow();
+        sessionPool.shutdown();
+        endlessPool.shutdown();
+        if (journal != null) {
+            journal.close();
+        }
+    }
+
+    // 定时任务：推进过期时间轮，日志中已写满的段过多时发起压缩
+    private void tick() {
+        evictExpiredSessions(System.currentTimeMillis());
+        if (journal != null && journal.getSealedSegmentCount() >= compactAfterSegments) {
+            compactJournal();
+        }
+    }
 
     // 创建新游戏
     public GameSession createNewGame() {
+        return createNewGameWithSeed(null, ThreadLocalRandom.current().nextLong());
+    }
+
+    // 为特定用户创建新游戏
+    public GameSession createNewGameForUser(String userId) {
+        return createNewGameWithSeed(userId, ThreadLocalRandom.current().nextLong());
+    }
+
+    // 使用指定种子创建新游戏（每日种子、回放校验等）
+    public GameSession createNewGameWithSeed(String userId, long seed) {
+        return createNewGame(userId, seed, defaultMatchEngine);
+    }
+
+    // 使用指定种子和匹配引擎创建新游戏（单个会话可以切换到参考实现排查问题）
+    public GameSession createNewGame(String userId, long seed, MatchEngine matchEngine) {
         // 创建8x8大小的游戏面板，初始移动次数为20
-        Board board = new Board(8, 8, 20);
-        String gameId = UUID.randomUUID().toString();
-        GameSession gameSession = new GameSession(gameId, null, board);
-        gameSession.setState(GameState.READY);
+        return startGame(userId, Constants.MODE_CLASSIC, Constants.DEFAULT_BOARD_SIZE, seed, matchEngine);
+    }
+
+    // 创建挑战模式游戏：固定的障碍物布局，清除全部石块、冰层和锁即过关
+    public GameSession createChallengeGame(String userId) {
+        return startGame(userId, Constants.MODE_CHALLENGE, Constants.DEFAULT_BOARD_SIZE,
+                ThreadLocalRandom.current().nextLong(), defaultMatchEngine);
+    }
 
-        // 保存到会话Map
-        gameSessionMap.put(gameId, gameSession);
+    // 创建无尽模式游戏：大面板、不限移动次数，匹配扫描、下落和填充在线程池上分段并行
+    public GameSession createEndlessGame(String userId, int size) {
+        if (size < Constants.ENDLESS_BOARD_SIZE || size > Constants.ENDLESS_MAX_BOARD_SIZE) {
+            throw new IllegalArgumentException("无尽模式面板尺寸必须在" + Constants.ENDLESS_BOARD_SIZE +
+                    "到" + Constants.ENDLESS_MAX_BOARD_SIZE + "之间");
+        }
+        return startGame(userId, Constants.MODE_ENDLESS, size, ThreadLocalRandom.current().nextLong(), endlessMatchEngine);
+    }
 
+    // 创建并保存新游戏，创建参数写入移动日志（先保存再写日志，压缩时不会漏掉刚创建的会话）
+    private GameSession startGame(String userId, String mode, int size, long seed, MatchEngine matchEngine) {
+        GameSession gameSession = newSession(sessionStore.newGameId(), userId, mode, size, seed, matchEngine);
+        register(gameSession);
+        if (journal != null) {
+            journal.appendCreate(gameSession.getId(), userId, mode, size, seed);
+        }
         return gameSession;
     }
 
-    // 为特定用户创建新游戏
-    public GameSession createNewGameForUser(String userId) {
-        Board board = new Board(8, 8, 20);
-        String gameId = UUID.randomUUID().toString();
+    // 按模式创建会话和面板（新游戏和重放日志共用），相同的参数得到相同的初始面板
+    private GameSession newSession(String gameId, String userId, String mode, int size, long seed, MatchEngine matchEngine) {
+        Board board;
+        if (Constants.MODE_CHALLENGE.equals(mode)) {
+            board = new Board(size, size, Constants.CHALLENGE_MOVES, seed, matchEngine,
+                    tileTypes.getPalette(mode), Constants.CHALLENGE_LAYOUT);
+        } else if (Constants.MODE_ENDLESS.equals(mode)) {
+            board = new Board(size, size, Integer.MAX_VALUE, seed, matchEngine, tileTypes.getPalette(mode));
+        } else {
+            board = new Board(size, size, Constants.DEFAULT_MOVES, seed, matchEngine, tileTypes.getPalette(mode));
+        }
         GameSession gameSession = new GameSession(gameId, userId, board);
         gameSession.setState(GameState.READY);
+        gameSession.setMode(mode);
+        return gameSession;
+    }
 
-        // 保存到会话Map
-        gameSessionMap.put(gameId, gameSession);
+    // 各模式使用的匹配引擎（重放日志和恢复快照时使用，各引擎的结果相同）
+    private MatchEngine engineFor(String mode) {
+        return Constants.MODE_ENDLESS.equals(mode) ? endlessMatchEngine : defaultMatchEngine;
+    }
 
-        return gameSession;
+    // 保存会话并登记到过期时间轮
+    private void register(GameSession gameSession) {
+        long now = System.currentTimeMillis();
+        gameSession.touch(now);
+        gameSession.setMailbox(new Mailbox(sessionPool));
+        sessionStore.put(gameSession);
+        long firstCheck = Math.min(idleTtl, finishedTtl);
+        if (passivateAfter > 0) {
+            firstCheck = Math.min(firstCheck, passivateAfter);
+        }
+        expiryWheel.schedule(gameSession, now + firstCheck);
+    }
+
+    /**
+     * 时间轮检查到会话时按当前状态重新计算过期时间，访问会话只更新时间戳，不移动时间轮上的节点
+     * 进行中的会话最晚每finishedTtl检查一次，所以结束后的会话不晚于两个finishedTtl被移除；
+     * 空闲超过passivateAfter的活动会话在自己的邮箱中钝化，之后按过期时间继续检查；
+     * 已经不在存储中的会话（被替换、移除或转移到其他节点）直接丢弃。
+     */
+    private long expiresAt(GameSession session, long now) {
+        if (sessionStore.get(session.getId()) != session) {
+            return Long.MIN_VALUE;
+        }
+        long lastAccess = session.getLastAccessTime();
+        boolean finished = session.getState().isGameOver();
+        long deadline = lastAccess + (finished ? finishedTtl : idleTtl);
+        if (deadline <= now) {
+            return deadline;
+        }
+        if (passivateAfter > 0 && session.getBoard() != null) {
+            long passivateAt = lastAccess + passivateAfter;
+            if (passivateAt <= now) {
+                passivate(session);
+            } else {
+                deadline = Math.min(deadline, passivateAt);
+            }
+        }
+        return finished ? deadline : Math.min(deadline, now + finishedTtl);
+    }
+
+    /**
+     * 在会话的邮箱中把面板钝化为紧凑形式（PassivatedBoard），释放处理器、索引和快照等对象
+     * 结果为是否钝化了面板（已经钝化或已被移除的会话为false）。之后经过邮箱的任务和activate会先恢复面板。
+     */
+    public CompletableFuture<Boolean> passivate(GameSession gameSession) {
+        return gameSession.getMailbox().submit(() -> {
+            Board board = gameSession.getBoard();
+            if (board == null || sessionStore.get(gameSession.getId()) != gameSession) {
+                return false;
+            }
+            gameSession.setPassivated(PassivatedBoard.of(board, passivateOffHeap));
+            gameSession.setBoard(null);
+            return true;
+        });
+    }
+
+    // 恢复钝化的面板（只在会话的邮箱中调用）
+    private static void restore(GameSession gameSession) {
+        PassivatedBoard passivated = gameSession.getPassivated();
+        if (passivated != null) {
+            gameSession.setBoard(passivated.restore());
+            gameSession.setPassivated(null);
+        }
+    }
+
+    /**
+     * 返回会话当前的面板，会话已钝化时先在邮箱中恢复
+     * 邮箱之外读取面板（快照、提示）应通过这里，返回的面板对象只用于读取最近发布的快照。
+     */
+    public Board activate(GameSession gameSession) {
+        gameSession.touch(System.currentTimeMillis());
+        Board board = gameSession.getBoard();
+        return board != null ? board : await(submit(gameSession, gameSession::getBoard));
+    }
+
+    // 过期会话从存储中移除，并在日志中记为结束
+    private void evict(GameSession session) {
+        if (sessionStore.remove(session.getId(), session) && journal != null) {
+            journal.appendEnd(session.getId());
+        }
+    }
+
+    // 移除到now为止过期的会话，返回从时间轮移除的数量（由定时线程每个时间刻调用）
+    public int evictExpiredSessions(long now) {
+        return expiryWheel.advance(now);
+    }
+
+    // 当前保存的会话数
+    public int getSessionCount() {
+        return sessionStore.size();
     }
 
     // 获取游戏会话
     public GameSession getGameSessionById(String gameId) {
-        return gameSessionMap.get(gameId);
+        GameSession gameSession = sessionStore.get(gameId);
+        if (gameSession != null) {
+            gameSession.touch(System.currentTimeMillis());
+        }
+        return gameSession;
+    }
+
+    /**
+     * 在会话的邮箱中执行任务，读取或修改面板、游戏状态的操作都应经过这里
+     * 同一会话的任务按提交顺序逐个执行，不需要加锁；会话已钝化时先恢复面板；返回的结果在任务执行完后完成。
+     * 不要在任务内部等待同一会话的另一个任务，否则会互相等待。
+     */
+    public <T> CompletableFuture<T> submit(GameSession gameSession, Supplier<T> task) {
+        return gameSession.getMailbox().submit(() -> {
+            restore(gameSession);
+            return task.get();
+        });
     }
 
-    // 执行移动操作
+    // 异步执行移动操作，结果为移动后发布的面板快照，无效移动或游戏已结束时为null
+    public CompletableFuture<BoardSnapshot> submitMove(GameSession gameSession, int row1, int col1, int row2, int col2) {
+        gameSession.touch(System.currentTimeMillis());
+        return submit(gameSession, () -> {
+            // 会话正在发送给其他节点：按到达顺序排队，发送结束后在同一个邮箱任务中依次处理，先于之后提交的任务
+            if (gameSession.getHandOff() != null) {
+                CompletableFuture<BoardSnapshot> held = new CompletableFuture<>();
+                gameSession.getHeldMoves().add(() -> {
+                    try {
+                        held.complete(playMove(gameSession, row1, col1, row2, col2));
+                    } catch (RuntimeException e) {
+                        held.completeExceptionally(e);
+                    }
+                });
+                return held;
+            }
+            return CompletableFuture.completedFuture(playMove(gameSession, row1, col1, row2, col2));
+        }).thenCompose(snapshot -> snapshot);
+    }
+
+    // 在邮箱中执行一步移动并写入日志，返回发布的快照，无效移动或游戏已结束时为null
+    private BoardSnapshot playMove(GameSession gameSession, int row1, int col1, int row2, int col2) {
+        // 排在转移之后的移动不能在这里执行，由调用方转发给新的负责节点
+        if (gameSession.isTransferred()) {
+            throw transferredException(gameSession);
+        }
+        if (!applyMove(gameSession, row1, col1, row2, col2)) {
+            return null;
+        }
+        if (journal != null) {
+            journal.appendMove(gameSession.getId(), row1, col1, row2, col2);
+            if (gameSession.getState().isGameOver()) {
+                journal.appendEnd(gameSession.getId());
+            }
+        }
+        return gameSession.getBoard().getSnapshot();
+    }
+
+    private static IllegalStateException transferredException(GameSession gameSession) {
+        return new IllegalStateException("游戏会话已转移到其他节点: " + gameSession.getId());
+    }
+
+    // 没有合法移动时重排面板（机器人使用），重排写入移动日志
+    public void reshuffle(GameSession gameSession) {
+        await(submit(gameSession, () -> {
+            // 正在转移或已转移的会话不再修改，否则重排可能不包含在发送的状态中
+            if (gameSession.getHandOff() != null || gameSession.isTransferred()) {
+                throw transferredException(gameSession);
+            }
+            gameSession.getBoard().reshuffle();
+            if (journal != null) {
+                journal.appendReshuffle(gameSession.getId());
+            }
+            return null;
+        }));
+    }
+
+    // 执行移动操作，等待会话邮箱处理完后返回
     public boolean makeMove(GameSession gameSession, int row1, int col1, int row2, int col2) {
+        return await(submitMove(gameSession, row1, col1, row2, col2)) != null;
+    }
+
+    // 等待邮箱任务的结果，任务中的运行时异常原样抛出
+    public static <T> T await(CompletableFuture<T> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    // 执行移动操作（只在会话的邮箱中调用）
+    private boolean applyMove(GameSession gameSession, int row1, int col1, int row2, int col2) {
         // 检查游戏状态
         if (gameSession.getState() != GameState.PLAYING && gameSession.getState() != GameState.READY) {
             return false;
@@ -63,58 +409,257 @@ public class GameService {
         Board board = gameSession.getBoard();
         boolean moveSuccess = board.swapTiles(row1, col1, row2, col2);
 
-        // 检查游戏是否结束
-        if (board.isGameOver()) {
-            gameSession.setState(GameState.GAME_OVER);
+        // 检查游戏是否结束（过关或移动次数用完）
+        GameState outcome = board.outcome();
+        if (outcome != null) {
+            gameSession.setState(outcome);
+        } else if (moveSuccess && !board.hasPossibleMoves()) {
+            // 没有可走的移动时自动重排
+            board.reshuffle();
         }
 
         return moveSuccess;
     }
 
-    // 检查特定位置是否有可能的移动
-    public boolean hasPossibleMoves(GameSession gameSession) {
-        Board board = gameSession.getBoard();
-        int rows = board.getRows();
-        int columns = board.getColumns();
-
-        // 检查每个位置的四个方向
-        for (int i = 0; i < rows; i++) {
-            for (int j = 0; j < columns; j++) {
-                // 向右交换
-                if (j < columns - 1) {
-                    if (checkPotentialMatch(board, i, j, i, j + 1)) {
-                        return true;
-                    }
+    /**
+     * 重放移动日志，重建进行中的对局并保存（启动时调用一次）
+     * 移动按原来的规则重新执行；重放时不合法的移动说明日志与对局不一致，该对局被丢弃。
+     */
+    private void recover() {
+        Map<String, GameSession> recovered = new LinkedHashMap<>();
+        journal.replay(new MoveJournal.Visitor() {
+            @Override
+            public void onCreate(String gameId, String userId, String mode, int size, long seed) {
+                recovered.put(gameId, newSession(gameId, userId, mode, size, seed, engineFor(mode)));
+            }
+
+            @Override
+            public void onMove(String gameId, int row1, int col1, int row2, int col2) {
+                GameSession gameSession = recovered.get(gameId);
+                if (gameSession != null && !applyMove(gameSession, row1, col1, row2, col2)) {
+                    recovered.remove(gameId);
                 }
+            }
 
-                // 向下交换
-                if (i < rows - 1) {
-                    if (checkPotentialMatch(board, i, j, i + 1, j)) {
-                        return true;
-                    }
+            @Override
+            public void onReshuffle(String gameId) {
+                GameSession gameSession = recovered.get(gameId);
+                if (gameSession != null) {
+                    gameSession.getBoard().reshuffle();
                 }
             }
+
+            @Override
+            public void onSnapshot(String gameId, String userId, String mode, GameState state, ByteBuffer image) {
+                Board board = PassivatedBoard.copyOf(image, engineFor(mode), tileTypes.getPalette(mode)).restore();
+                GameSession gameSession = new GameSession(gameId, userId, board);
+                gameSession.setState(state);
+                gameSession.setMode(mode);
+                recovered.put(gameId, gameSession);
+            }
+
+            @Override
+            public void onEnd(String gameId) {
+                recovered.remove(gameId);
+            }
+        });
+        for (GameSession gameSession : recovered.values()) {
+            if (!gameSession.getState().isGameOver()) {
+                register(gameSession);
+            }
         }
+    }
 
-        return false;
+    /**
+     * 压缩移动日志：切换到新段，在每个进行中的对局的邮箱中写一条快照记录，全部写完后删除之前的段
+     * 快照之后的移动仍按顺序写在快照后面；已结束和已移除的对局没有快照，随旧段一起删除。
+     * 快照直接使用钝化的面板编码，已钝化的会话不需要恢复。
+     */
+    public CompletableFuture<Void> compactJournal() {
+        if (journal == null || !compacting.compareAndSet(false, true)) {
+            return CompletableFuture.completedFuture(null);
+        }
+        long firstKept = journal.roll();
+        List<CompletableFuture<Void>> snapshots = new ArrayList<>();
+        for (GameSession gameSession : sessionStore.sessions()) {
+            snapshots.add(gameSession.getMailbox().submit(() -> {
+                writeSnapshot(gameSession);
+                return null;
+            }));
+        }
+        return CompletableFuture.allOf(snapshots.toArray(new CompletableFuture[0])).whenComplete((result, error) -> {
+            if (error == null) {
+                journal.deleteBefore(firstKept);
+            }
+            compacting.set(false);
+        });
     }
 
-    // 检查交换两个位置是否能形成匹配
-    private boolean checkPotentialMatch(Board board, int row1, int col1, int row2, int col2) {
-        // 获取瓦片类型
-        String type1 = board.getTiles()[row1][col1].getType();
-        String type2 = board.getTiles()[row2][col2].getType();
+    // 把会话当前的状态写为日志快照（只在会话的邮箱中调用）
+    private void writeSnapshot(GameSession gameSession) {
+        if (gameSession.getState().isGameOver() || sessionStore.get(gameSession.getId()) != gameSession) {
+            return;
+        }
+        PassivatedBoard image = gameSession.getPassivated() != null
+                ? gameSession.getPassivated() : PassivatedBoard.of(gameSession.getBoard(), false);
+        journal.appendSnapshot(gameSession.getId(), gameSession.getUserId(), gameSession.getMode(),
+                gameSession.getState(), image.getImage());
+    }
+
+    /**
+     * 把不再由本节点负责的会话转移给现在负责的节点（节点加入或离开后调用），结果为转移的会话数
+     * 每个会话在自己的邮箱中导出状态，之前的移动都已完成；发送在存储的I/O线程上进行，不占用邮箱的线程池，
+     * 发送期间到达的移动按到达顺序排队，发送成功后由调用方转发给新的负责节点，失败时按原顺序在本节点执行。
+     * 对方确认保存后才回到邮箱中从本节点移除；发送失败的会话留在本节点继续服务，下一次成员变化时再转移。
+     */
+    public CompletableFuture<Integer> rebalance() {
+        List<CompletableFuture<Boolean>> transfers = new ArrayList<>();
+        for (GameSession gameSession : sessionStore.sessions()) {
+            if (!sessionStore.owns(gameSession.getId())) {
+                transfers.add(handOff(gameSession));
+            }
+        }
+        return CompletableFuture.allOf(transfers.toArray(new CompletableFuture[0])).thenApply(done -> {
+            int transferred = 0;
+            for (CompletableFuture<Boolean> transfer : transfers) {
+                if (transfer.join()) {
+                    transferred++;
+                }
+            }
+            return transferred;
+        });
+    }
+
+    // 转移一个会话：邮箱中导出，I/O线程上发送，再回到邮箱中移除或恢复服务
+    private CompletableFuture<Boolean> handOff(GameSession gameSession) {
+        String gameId = gameSession.getId();
+        CompletableFuture<Boolean> handOff = new CompletableFuture<>();
+        gameSession.getMailbox().submit(() -> {
+            if (sessionStore.get(gameId) != gameSession || sessionStore.owns(gameId) || gameSession.getHandOff() != null) {
+                return null;
+            }
+            PassivatedBoard image = gameSession.getPassivated() != null
+                    ? gameSession.getPassivated() : PassivatedBoard.of(gameSession.getBoard(), false);
+            byte[] data = exportSession(gameSession, image);
+            gameSession.setHandOff(handOff);
+            return data;
+        }).thenCompose(data -> data == null ? CompletableFuture.completedFuture(null)
+                : send(gameId, data).handle((done, error) -> error == null))
+                .thenCompose(sent -> sent == null ? CompletableFuture.completedFuture(false)
+                        : gameSession.getMailbox().submit(() -> completeHandOff(gameSession, sent)))
+                .whenComplete((transferred, error) -> handOff.complete(error == null && transferred));
+        return handOff;
+    }
+
+    // 发送会话，存储直接抛出的异常也作为发送失败，保证之后回到邮箱中结束转移
+    private CompletableFuture<Void> send(String gameId, byte[] data) {
+        try {
+            return sessionStore.transfer(gameId, data);
+        } catch (RuntimeException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    /**
+     * 发送结束后在邮箱中执行：成功时从本节点移除，失败时恢复在本节点服务
+     * 之后按到达顺序处理发送期间排队的移动：成功时全部失败（由调用方转发），失败时在本节点执行。
+     */
+    private boolean completeHandOff(GameSession gameSession, boolean sent) {
+        gameSession.setHandOff(null);
+        if (sent) {
+            gameSession.setTransferred(true);
+            sessionStore.remove(gameSession.getId(), gameSession);
+            if (journal != null) {
+                journal.appendEnd(gameSession.getId());
+            }
+        }
+        Runnable held;
+        while ((held = gameSession.getHeldMoves().poll()) != null) {
+            held.run();
+        }
+        return sent;
+    }
 
-        // 临时交换瓦片
-        board.getTiles()[row1][col1].setType(type2);
-        board.getTiles()[row2][col2].setType(type1);
+    /**
+     * 保存其他节点转移过来的会话，在日志中写为快照
+     * 同一会话重复发送时（对方没有收到确认后重试）替换之前收到的会话。
+     * gameId必须是UUID；数据格式不对时抛出IllegalArgumentException，不分配超过请求本身大小的内存。
+     */
+    public GameSession adoptSession(String gameId, byte[] data) {
+        if (!UUID.fromString(gameId).toString().equals(gameId)) {
+            throw new IllegalArgumentException("游戏会话ID不正确: " + gameId);
+        }
+        GameSession gameSession;
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(data))) {
+            String userId = in.readBoolean() ? in.readUTF() : null;
+            String mode = in.readUTF();
+            GameState state = GameState.valueOf(in.readUTF());
+            int length = in.readInt();
+            if (length < 0 || length > in.available()) {
+                throw new IllegalArgumentException("转移的会话数据长度不正确: " + length);
+            }
+            byte[] image = new byte[length];
+            in.readFully(image);
+            Board board = PassivatedBoard.copyOf(ByteBuffer.wrap(image), engineFor(mode), tileTypes.getPalette(mode)).restore();
+            gameSession = new GameSession(gameId, userId, board);
+            gameSession.setState(state);
+            gameSession.setMode(mode);
+        } catch (IOException e) {
+            throw new UncheckedIOException("无法读取转移的会话: " + gameId, e);
+        }
+        register(gameSession);
+        if (journal != null) {
+            journal.appendSnapshot(gameId, gameSession.getUserId(), gameSession.getMode(), gameSession.getState(),
+                    PassivatedBoard.of(gameSession.getBoard(), false).getImage());
+        }
+        return gameSession;
+    }
 
-        boolean hasMatch = board.hasMatches();
+    // 转移的会话：用户ID、模式、状态和钝化的面板编码
+    private static byte[] exportSession(GameSession gameSession, PassivatedBoard image) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64 + image.size());
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeBoolean(gameSession.getUserId() != null);
+            if (gameSession.getUserId() != null) {
+                out.writeUTF(gameSession.getUserId());
+            }
+            out.writeUTF(gameSession.getMode());
+            out.writeUTF(gameSession.getState().name());
+            ByteBuffer buffer = image.getImage();
+            out.writeInt(buffer.remaining());
+            byte[] encoded = new byte[buffer.remaining()];
+            buffer.get(encoded);
+            out.write(encoded);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    // 检查是否还有可能的移动（只读，不修改面板），每步之后都检查，由面板的合法移动索引增量维护
+    // 合法移动索引在查询时同步面板的变化，所以也在会话的邮箱中执行
+    public boolean hasPossibleMoves(GameSession gameSession) {
+        return await(submit(gameSession, () -> gameSession.getBoard().hasPossibleMoves()));
+    }
+
+    // 获取当前面板上全部可能的移动，可用于提示、死局检测和机器人
+    public List<Move> getPossibleMoves(GameSession gameSession) {
+        return await(submit(gameSession, () -> listPossibleMoves(gameSession.getBoard())));
+    }
 
-        // 交换回来
-        board.getTiles()[row1][col1].setType(type1);
-        board.getTiles()[row2][col2].setType(type2);
+    private static List<Move> listPossibleMoves(Board board) {
+        BoardGrid grid = board.getGrid();
+        int columns = grid.getColumns();
+        int[] moves = new int[MoveGenerator.maxMoves(grid)];
+        int count = board.getMoveIndex().copyMoves(moves);
 
-        return hasMatch;
+        List<Move> result = new ArrayList<>(count);
+        for (int m = 0; m < count; m++) {
+            int move = moves[m];
+            int first = MoveGenerator.firstCell(move);
+            int second = MoveGenerator.secondCell(move, columns);
+            result.add(new Move(first / columns, first % columns, second / columns, second % columns));
+        }
+        return result;
     }
 }
\ No newline at end of file
@@ -0,0 +1,53 @@
+// 游戏会话存储接口
+package com.qiaoqiao.service;
+
+import com.qiaoqiao.model.game.GameSession;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.ResponseEntity;
+
+import java.util.Collection;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * GameService保存会话的位置
+ * 单机部署使用内存存储，所有会话都由本节点负责；
+ * 多节点部署按gameId的一致性哈希把每个会话分给一个节点，本节点只保存自己负责的会话，
+ * 其他会话的请求转发给负责的节点，成员变化时GameService把不再由本节点负责的会话转移出去。
+ * 存储只保存会话对象，会话的邮箱、过期和日志仍由GameService管理。
+ */
+public interface GameSessionStore {
+
+    // 转发请求时记录已经转发次数的请求头
+    String HOPS_HEADER = "X-Game-Hops";
+
+    // 本节点保存的会话，没有时返回null
+    GameSession get(String gameId);
+
+    void put(GameSession gameSession);
+
+    // 只有保存的仍是该会话对象时才移除
+    boolean remove(String gameId, GameSession gameSession);
+
+    // 本节点保存的全部会话（弱一致的视图）
+    Collection<GameSession> sessions();
+
+    int size();
+
+    // 为新对局生成ID，生成的ID由本节点负责，创建时不需要转移
+    String newGameId();
+
+    // 会话是否由本节点负责
+    boolean owns(String gameId);
+
+    /**
+     * 把会话的状态发送给现在负责它的节点，在存储自己的I/O线程上发送，调用方不等待
+     * 结果正常完成说明对方已经保存，本节点随后才能移除；发送失败时异常完成，会话留在本节点。
+     */
+    CompletableFuture<Void> transfer(String gameId, byte[] image);
+
+    /**
+     * 把本节点没有的会话的请求转发给负责的节点，返回对方的响应
+     * 没有可以转发的节点（会话不存在，或已转发过太多次）时返回null。
+     */
+    ResponseEntity<byte[]> forward(String gameId, HttpMethod method, String path, Object body, int hops);
+}
@@ -0,0 +1,65 @@
+// 内存会话存储
+package com.qiaoqiao.service;
+
+import com.qiaoqiao.model.game.GameSession;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.ResponseEntity;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 单机部署的会话存储：全部会话保存在本进程的Map中，由本节点负责，从不转发或转移
+ */
+public class LocalGameSessionStore implements GameSessionStore {
+
+    private final Map<String, GameSession> sessions = new ConcurrentHashMap<>();
+
+    @Override
+    public GameSession get(String gameId) {
+        return sessions.get(gameId);
+    }
+
+    @Override
+    public void put(GameSession gameSession) {
+        sessions.put(gameSession.getId(), gameSession);
+    }
+
+    @Override
+    public boolean remove(String gameId, GameSession gameSession) {
+        return sessions.remove(gameId, gameSession);
+    }
+
+    @Override
+    public Collection<GameSession> sessions() {
+        return sessions.values();
+    }
+
+    @Override
+    public int size() {
+        return sessions.size();
+    }
+
+    @Override
+    public String newGameId() {
+        return UUID.randomUUID().toString();
+    }
+
+    @Override
+    public boolean owns(String gameId) {
+        return true;
+    }
+
+    @Override
+    public CompletableFuture<Void> transfer(String gameId, byte[] image) {
+        throw new UnsupportedOperationException("单机部署不转移会话");
+    }
+
+    @Override
+    public ResponseEntity<byte[]> forward(String gameId, HttpMethod method, String path, Object body, int hops) {
+        return null;
+    }
+}
@@ -0,0 +1,435 @@
+// 移动日志
+package com.qiaoqiao.service;
+
+import com.qiaoqiao.model.game.GameState;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * 只追加的分段移动日志，进程重启或崩溃后按日志重建进行中的对局
+ * 每局记录创建参数（种子等），之后每个被接受的移动、重排和结束各一条记录；对局是确定性的，按顺序重放即可恢复。
+ *
+ * 日志由若干固定大小的段文件组成，当前段以内存映射方式打开，追加只是在锁内把几十个字节写入映射区域，
+ * 写入后即进入页缓存，进程崩溃不会丢失；后台线程每flushMillis调用一次force把期间的全部记录一起刷到磁盘（组提交），
+ * 所以移动处理从不等待磁盘，只有操作系统崩溃时可能丢失最后一个刷盘间隔内的记录。
+ * 后台线程还会在当前段用掉一半时预先创建下一个段，切换段时不需要在追加线程上创建和映射文件。
+ *
+ * 记录格式：[长度int][CRC32 int][类型byte][对局ID 16字节][内容]，段中未写入的部分全为0，
+ * 重放时遇到长度为0、长度越界或校验失败的记录就结束该段（最后一条可能只写了一半）。
+ * 压缩由GameService发起：切换到新段后为每个进行中的对局写一条快照记录，全部写完后删除之前的段，
+ * 已结束和已移除的对局不再出现在日志中。
+ */
+public final class MoveJournal implements AutoCloseable {
+
+    private static final byte CREATE = 1;
+    private static final byte MOVE = 2;
+    private static final byte RESHUFFLE = 3;
+    private static final byte SNAPSHOT = 4;
+    private static final byte END = 5;
+
+    private static final int HEADER_BYTES = 8;              // 长度和CRC32
+    private static final int ID_BYTES = 1 + 16;             // 类型和对局ID
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String SEGMENT_SUFFIX = ".journal";
+
+    /**
+     * 重放日志时按记录顺序回调
+     */
+    public interface Visitor {
+        void onCreate(String gameId, String userId, String mode, int size, long seed);
+
+        void onMove(String gameId, int row1, int col1, int row2, int col2);
+
+        void onReshuffle(String gameId);
+
+        // image只在回调期间有效，需要保留时应复制
+        void onSnapshot(String gameId, String userId, String mode, GameState state, ByteBuffer image);
+
+        void onEnd(String gameId);
+    }
+
+    private final Path directory;
+    private final int segmentBytes;
+    private final List<Segment> segments = new ArrayList<>();   // 按序号排列，最后一个是当前段（只在锁内修改）
+    private final CRC32 crc = new CRC32();                       // 追加时复用（只在锁内使用）
+    private final ScheduledThreadPoolExecutor flusher;
+    private volatile Segment current;
+    private Segment spare;            // 预先创建的下一个段
+    private Segment sealed;           // 刚写满、还没有刷盘的上一个段（由刷盘线程处理）
+    private long nextSequence;
+    private int recordStart;          // 正在写入的记录在当前段中的起始位置
+    private boolean dirty;            // 上次刷盘以来是否有新记录
+    private boolean closed;
+
+    public MoveJournal(Path directory, int segmentBytes, long flushMillis) {
+        this.directory = directory;
+        this.segmentBytes = segmentBytes;
+        try {
+            Files.createDirectories(directory);
+            try (Stream<Path> files = Files.list(directory)) {
+                for (Path file : files.filter(MoveJournal::isSegment).sorted().collect(Collectors.toList())) {
+                    segments.add(new Segment(sequenceOf(file), file, null));
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("无法打开移动日志目录: " + directory, e);
+        }
+        this.nextSequence = segments.isEmpty() ? 1 : segments.get(segments.size() - 1).sequence + 1;
+        this.flusher = new ScheduledThreadPoolExecutor(1, task -> {
+            Thread thread = new Thread(task, "move-journal-flush");
+            thread.setDaemon(true);
+            return thread;
+        });
+        flusher.scheduleWithFixedDelay(this::flush, flushMillis, flushMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 按顺序重放已有的全部段，应在第一次追加之前调用
+     * 重放之后的记录写入新的段，已有的段保留到下一次压缩。
+     */
+    public void replay(Visitor visitor) {
+        List<Segment> existing;
+        synchronized (this) {
+            existing = new ArrayList<>(segments);
+        }
+        for (Segment segment : existing) {
+            if (segment.buffer != null) {
+                continue;
+            }
+            try (FileChannel channel = FileChannel.open(segment.file)) {
+                replaySegment(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()), visitor);
+            } catch (IOException e) {
+                throw new UncheckedIOException("无法读取移动日志段: " + segment.file, e);
+            }
+        }
+    }
+
+    private void replaySegment(ByteBuffer buffer, Visitor visitor) {
+        CRC32 check = new CRC32();
+        while (buffer.remaining() >= HEADER_BYTES) {
+            int length = buffer.getInt();
+            int expected = buffer.getInt();
+            if (length < ID_BYTES || length > buffer.remaining()) {
+                return;
+            }
+            ByteBuffer body = buffer.slice();
+            body.limit(length);
+            check.reset();
+            check.update(body.duplicate());
+            if ((int) check.getValue() != expected) {
+                return;
+            }
+            buffer.position(buffer.position() + length);
+
+            byte type = body.get();
+            String gameId = new UUID(body.getLong(), body.getLong()).toString();
+            switch (type) {
+                case CREATE:
+                    visitor.onCreate(gameId, readString(body), readString(body), body.getInt(), body.getLong());
+                    break;
+                case MOVE:
+                    visitor.onMove(gameId, body.getShort(), body.getShort(), body.getShort(), body.getShort());
+                    break;
+                case RESHUFFLE:
+                    visitor.onReshuffle(gameId);
+                    break;
+                case SNAPSHOT:
+                    String userId = readString(body);
+                    String mode = readString(body);
+                    GameState state = GameState.values()[body.get()];
+                    visitor.onSnapshot(gameId, userId, mode, state, body.slice());
+                    break;
+                case END:
+                    visitor.onEnd(gameId);
+                    break;
+                default:
+                    return;
+            }
+        }
+    }
+
+    // 记录新对局的创建参数
+    public synchronized void appendCreate(String gameId, String userId, String mode, int size, long seed) {
+        ByteBuffer buffer = begin(CREATE, gameId, stringBytes(userId) + stringBytes(mode) + 4 + 8);
+        if (buffer != null) {
+            writeString(buffer, userId);
+            writeString(buffer, mode);
+            buffer.putInt(size);
+            buffer.putLong(seed);
+            commit(buffer);
+        }
+    }
+
+    // 记录一个被接受的移动
+    public synchronized void appendMove(String gameId, int row1, int col1, int row2, int col2) {
+        ByteBuffer buffer = begin(MOVE, gameId, 8);
+        if (buffer != null) {
+            buffer.putShort((short) row1);
+            buffer.putShort((short) col1);
+            buffer.putShort((short) row2);
+            buffer.putShort((short) col2);
+            commit(buffer);
+        }
+    }
+
+    // 记录一次不是由移动引起的重排
+    public synchronized void appendReshuffle(String gameId) {
+        ByteBuffer buffer = begin(RESHUFFLE, gameId, 0);
+        if (buffer != null) {
+            commit(buffer);
+        }
+    }
+
+    // 记录对局的完整状态（压缩时写入），重放时替换该对局之前的全部记录
+    public synchronized void appendSnapshot(String gameId, String userId, String mode, GameState state, ByteBuffer image) {
+        ByteBuffer source = image.duplicate();
+        ByteBuffer buffer = begin(SNAPSHOT, gameId, stringBytes(userId) + stringBytes(mode) + 1 + source.remaining());
+        if (buffer != null) {
+            writeString(buffer, userId);
+            writeString(buffer, mode);
+            buffer.put((byte) state.ordinal());
+            buffer.put(source);
+            commit(buffer);
+        }
+    }
+
+    // 记录对局结束或被移除，压缩时该对局被丢弃
+    public synchronized void appendEnd(String gameId) {
+        ByteBuffer buffer = begin(END, gameId, 0);
+        if (buffer != null) {
+            commit(buffer);
+        }
+    }
+
+    /**
+     * 开始一条记录：确保当前段有足够空间，写入类型和对局ID，返回定位在内容开始处的当前段缓冲区
+     * 日志已关闭时返回null，记录被丢弃；对局ID不是UUID时抛出IllegalArgumentException，日志不变
+     */
+    private ByteBuffer begin(byte type, String gameId, int contentBytes) {
+        if (closed) {
+            return null;
+        }
+        // 先检查对局ID，缓冲区中不能留下写了一半的记录（重放在第一个校验失败的记录处停止）
+        UUID id = UUID.fromString(gameId);
+        int length = ID_BYTES + contentBytes;
+        if (current == null || current.buffer.remaining() < HEADER_BYTES + length) {
+            switchSegment(HEADER_BYTES + length);
+        }
+        ByteBuffer buffer = current.buffer;
+        recordStart = buffer.position();
+        buffer.putInt(length);
+        buffer.putInt(0);             // CRC32，写完内容后回填
+        buffer.put(type);
+        buffer.putLong(id.getMostSignificantBits());
+        buffer.putLong(id.getLeastSignificantBits());
+        return buffer;
+    }
+
+    // 回填长度之后的CRC32，完成一条记录
+    private void commit(ByteBuffer buffer) {
+        ByteBuffer body = buffer.duplicate();
+        body.limit(buffer.position());
+        body.position(recordStart + HEADER_BYTES);
+        crc.reset();
+        crc.update(body);
+        buffer.putInt(recordStart + 4, (int) crc.getValue());
+        dirty = true;
+    }
+
+    /**
+     * 切换到新的段（压缩开始时调用），返回新段的序号
+     * 之后写入的记录都在该段或更新的段中，序号更小的段可以在所有进行中的对局写完快照后删除。
+     */
+    public synchronized long roll() {
+        switchSegment(0);
+        return current.sequence;
+    }
+
+    // 切换到至少能容纳minBytes的新段，优先使用预先创建的段（序号必须比当前段大，否则丢弃）
+    private void switchSegment(int minBytes) {
+        Segment previous = current;
+        Segment next = spare;
+        spare = null;
+        if (next != null && (next.buffer.capacity() < minBytes || (previous != null && next.sequence < previous.sequence))) {
+            deleteQuietly(next.file);
+            next = null;
+        }
+        current = next != null ? next : createSegment(nextSequence++, Math.max(segmentBytes, minBytes));
+        segments.add(current);
+        if (previous != null) {
+            // 上一个段交给刷盘线程，追加线程不等待磁盘；连续切换时才在这里刷盘
+            if (sealed != null) {
+                sealed.buffer.force();
+            }
+            sealed = previous;
+            dirty = true;
+        }
+    }
+
+    private Segment createSegment(long sequence, int bytes) {
+        Path file = directory.resolve(String.format("%s%016d%s", SEGMENT_PREFIX, sequence, SEGMENT_SUFFIX));
+        try (RandomAccessFile raf = new RandomAccessFile(file.toFile(), "rw")) {
+            raf.setLength(bytes);
+            MappedByteBuffer buffer = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, bytes);
+            return new Segment(sequence, file, buffer);
+        } catch (IOException e) {
+            throw new UncheckedIOException("无法创建移动日志段: " + file, e);
+        }
+    }
+
+    // 删除序号小于sequence的段（压缩完成时调用）
+    public void deleteBefore(long sequence) {
+        List<Segment> removed = new ArrayList<>();
+        synchronized (this) {
+            while (!segments.isEmpty() && segments.get(0).sequence < sequence && segments.get(0) != current) {
+                removed.add(segments.remove(0));
+            }
+        }
+        for (Segment segment : removed) {
+            try {
+                Files.deleteIfExists(segment.file);
+            } catch (IOException e) {
+                throw new UncheckedIOException("无法删除移动日志段: " + segment.file, e);
+            }
+        }
+    }
+
+    // 当前段之前的段数，超过阈值时由GameService发起压缩
+    public synchronized int getSealedSegmentCount() {
+        return current == null ? segments.size() : segments.size() - 1;
+    }
+
+    /**
+     * 组提交：把上次刷盘以来的全部记录一起刷到磁盘，并在当前段用掉一半时预先创建下一个段
+     * 在后台线程上运行，force期间追加线程可以继续写入（写入同一映射区域的后续位置）
+     */
+    public void flush() {
+        Segment segment;
+        Segment previous;
+        long prepare = 0;
+        synchronized (this) {
+            if (closed || !dirty) {
+                return;
+            }
+            dirty = false;
+            segment = current;
+            previous = sealed;
+            sealed = null;
+            if (spare == null && segment.buffer.position() > segment.buffer.capacity() / 2) {
+                prepare = nextSequence++;
+            }
+        }
+        if (previous != null) {
+            previous.buffer.force();
+        }
+        segment.buffer.force();
+        if (prepare > 0) {
+            Segment next = createSegment(prepare, segmentBytes);
+            synchronized (this) {
+                if (spare == null && !closed) {
+                    spare = next;
+                    next = null;
+                }
+            }
+            if (next != null) {
+                deleteQuietly(next.file);
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        Segment spareSegment;
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            if (sealed != null) {
+                sealed.buffer.force();
+                sealed = null;
+            }
+            if (current != null) {
+                current.buffer.force();
+            }
+            spareSegment = spare;
+            spare = null;
+        }
+        flusher.shutdownNow();
+        if (spareSegment != null) {
+            deleteQuietly(spareSegment.file);
+        }
+    }
+
+    private static void deleteQuietly(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            // 空的预建段，下次启动时作为没有记录的段被跳过
+        }
+    }
+
+    // 字符串：长度加1（0表示null）的int，然后是UTF-8字节
+    private static int stringBytes(String value) {
+        return 4 + (value == null ? 0 : value.getBytes(StandardCharsets.UTF_8).length);
+    }
+
+    private static void writeString(ByteBuffer buffer, String value) {
+        if (value == null) {
+            buffer.putInt(0);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        buffer.putInt(bytes.length + 1);
+        buffer.put(bytes);
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        int length = buffer.getInt() - 1;
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static boolean isSegment(Path file) {
+        String name = file.getFileName().toString();
+        return name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX);
+    }
+
+    private static long sequenceOf(Path file) {
+        String name = file.getFileName().toString();
+        return Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+    }
+
+    // 一个段文件，buffer为写入用的映射区域（启动时已有的段为null，只在重放时读取）
+    private static final class Segment {
+        final long sequence;
+        final Path file;
+        final MappedByteBuffer buffer;
+
+        Segment(long sequence, Path file, MappedByteBuffer buffer) {
+            this.sequence = sequence;
+            this.file = file;
+            this.buffer = buffer;
+        }
+    }
+}
@@ -0,0 +1,169 @@
+// 最佳移动搜索服务
+package com.qiaoqiao.service;
+
+import com.qiaoqiao.config.CacheProperties;
+import com.qiaoqiao.config.SolverProperties;
+import com.qiaoqiao.engine.ExpectimaxSolver;
+import com.qiaoqiao.engine.MoveGenerator;
+import com.qiaoqiao.engine.TranspositionTable;
+import com.qiaoqiao.model.game.BoardSnapshot;
+import com.qiaoqiao.model.game.BotResult;
+import com.qiaoqiao.model.game.GameSession;
+import com.qiaoqiao.model.game.GameState;
+import com.qiaoqiao.model.game.Hint;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PreDestroy;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 提示和服务器端机器人使用的最佳移动搜索
+ * 搜索读取面板最近发布的快照，不会与正在处理的移动竞争；
+ * 搜索在独立的有界线程池上运行，每次搜索都有时间预算；
+ * 同一会话开始新的搜索或执行移动时，之前仍在进行的搜索会被取消，不会拖慢移动处理。
+ * 搜索到最大深度的结果按面板状态哈希缓存，重复请求同一局面的提示（以及相同种子的对局）直接返回；
+ * 未命中缓存的搜索计入置换表的代，旧的代留下的结果逐渐被新的结果替换。
+ */
+@Service
+public class SolverService {
+
+    // 机器人连续重排仍没有合法移动时的最大重排次数
+    private static final int MAX_RESHUFFLES = 3;
+
+    private final GameService gameService;
+    private final ForkJoinPool solverPool;
+    private final ExpectimaxSolver solver;
+    private final int maxDepth;           // 最大搜索深度（连续移动数）
+    private final long budgetMillis;      // 每次搜索的时间预算
+
+    // 按面板状态哈希缓存的最佳移动：高32位为打包的移动，低32位为期望得分（float）
+    private final TranspositionTable bestMoveCache;
+
+    // 各会话正在进行的搜索的取消标记
+    private final Map<String, AtomicBoolean> running = new ConcurrentHashMap<>();
+
+    public SolverService(GameService gameService,
+                         SolverProperties properties,
+                         CacheProperties cache) {
+        this.gameService = gameService;
+        // 默认只使用一半的核，留给请求线程处理移动
+        this.solverPool = new ForkJoinPool(properties.getParallelism() > 0
+                ? properties.getParallelism() : Math.max(1, Runtime.getRuntime().availableProcessors() / 2));
+        this.solver = new ExpectimaxSolver(solverPool, properties.getSamples());
+        this.maxDepth = properties.getDepth();
+        this.budgetMillis = properties.getBudgetMs();
+        this.bestMoveCache = new TranspositionTable(cache.getCapacity());
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        solverPool.shutdownNow();
+    }
+
+    // 使用配置的深度和时间预算搜索最佳移动
+    public Hint findBestMove(GameSession gameSession) {
+        return findBestMove(gameSession, maxDepth, budgetMillis);
+    }
+
+    // 搜索最佳移动，没有合法移动时返回null
+    public Hint findBestMove(GameSession gameSession, int depth, long budgetMillis) {
+        AtomicBoolean cancelled = register(gameSession);
+        try {
+            return search(gameSession, depth, budgetMillis, cancelled);
+        } finally {
+            running.remove(gameSession.getId(), cancelled);
+        }
+    }
+
+    // 登记会话新的搜索，取消之前仍在进行的搜索
+    private AtomicBoolean register(GameSession gameSession) {
+        AtomicBoolean cancelled = new AtomicBoolean();
+        AtomicBoolean previous = running.put(gameSession.getId(), cancelled);
+        if (previous != null) {
+            previous.set(true);
+        }
+        return cancelled;
+    }
+
+    // 在会话最近发布的快照上搜索，没有合法移动时返回null；被取消时返回已搜索完的最深结果
+    private Hint search(GameSession gameSession, int depth, long budgetMillis, AtomicBoolean cancelled) {
+        BoardSnapshot snapshot = gameService.activate(gameSession).getSnapshot();
+        int columns = snapshot.getColumns();
+        long hash = snapshot.getStateHash();
+        long cached = bestMoveCache.get(hash, depth);
+        if (cached != TranspositionTable.MISS) {
+            return toHint((int) (cached >>> 32), Float.intBitsToFloat((int) cached), depth, 0L, true, columns);
+        }
+
+        // 每隔若干次搜索开始新的一代，缓存不会被早期的深结果一直占满
+        bestMoveCache.newSearch();
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(budgetMillis);
+        ExpectimaxSolver.Result result = solver.solve(snapshot.toGrid(), snapshot.getRandom(), depth, deadline, cancelled);
+        if (result == null) {
+            return null;
+        }
+        if (result.isComplete()) {
+            long value = ((long) result.getMove() << 32)
+                    | (Float.floatToIntBits((float) result.getExpectedScore()) & 0xFFFFFFFFL);
+            bestMoveCache.put(hash, result.getDepth(), value);
+        }
+        return toHint(result.getMove(), result.getExpectedScore(), result.getDepth(),
+                result.getNodes(), result.isComplete(), columns);
+    }
+
+    private static Hint toHint(int move, double expectedScore, int depth, long nodes, boolean complete, int columns) {
+        int first = MoveGenerator.firstCell(move);
+        int second = MoveGenerator.secondCell(move, columns);
+        return new Hint(first / columns, first % columns, second / columns, second % columns,
+                expectedScore, depth, nodes, complete);
+    }
+
+    // 取消会话正在进行的搜索（执行移动前调用）
+    public void cancel(String gameId) {
+        AtomicBoolean cancelled = running.remove(gameId);
+        if (cancelled != null) {
+            cancelled.set(true);
+        }
+    }
+
+    /**
+     * 服务器端机器人：按搜索结果连续执行最多moves步
+     * 整个执行过程登记为会话的一次搜索，玩家移动或新的搜索请求会取消它，取消后不再执行搜索结果；
+     * 没有合法移动时重排面板，连续重排MAX_RESHUFFLES次仍没有合法移动就停止。
+     */
+    public BotResult playBot(GameSession gameSession, int moves) {
+        AtomicBoolean cancelled = register(gameSession);
+        try {
+            int played = 0;
+            int reshuffles = 0;
+            while (played < moves) {
+                if (gameSession.getState().isGameOver()) {
+                    return new BotResult(played, BotResult.StopReason.GAME_OVER);
+                }
+                Hint hint = search(gameSession, maxDepth, budgetMillis, cancelled);
+                if (cancelled.get()) {
+                    return new BotResult(played, BotResult.StopReason.CANCELLED);
+                }
+                if (hint == null) {
+                    if (reshuffles++ == MAX_RESHUFFLES) {
+                        return new BotResult(played, BotResult.StopReason.NO_MOVES);
+                    }
+                    gameService.reshuffle(gameSession);
+                    continue;
+                }
+                reshuffles = 0;
+                if (!gameService.makeMove(gameSession, hint.getRow1(), hint.getCol1(), hint.getRow2(), hint.getCol2())) {
+                    return new BotResult(played, BotResult.StopReason.REJECTED);
+                }
+                played++;
+            }
+            return new BotResult(played, BotResult.StopReason.DONE);
+        } finally {
+            running.remove(gameSession.getId(), cancelled);
+        }
+    }
+}
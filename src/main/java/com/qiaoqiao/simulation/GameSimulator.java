@@ -0,0 +1,283 @@
+// 离线对局模拟
+package com.qiaoqiao.simulation;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.qiaoqiao.config.TileTypeProperties;
+import com.qiaoqiao.engine.CascadeResult;
+import com.qiaoqiao.engine.GameRandom;
+import com.qiaoqiao.engine.MatchEngines;
+import com.qiaoqiao.engine.MoveGenerator;
+import com.qiaoqiao.model.game.Board;
+import com.qiaoqiao.model.game.TilePalette;
+import com.qiaoqiao.model.game.TileTypeRegistry;
+import com.qiaoqiao.util.Constants;
+import com.qiaoqiao.util.GameLogic;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.boot.context.properties.source.ConfigurationPropertySources;
+import org.springframework.boot.env.YamlPropertySourceLoader;
+import org.springframework.core.env.PropertySource;
+import org.springframework.core.io.ClassPathResource;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 无界面的蒙特卡洛对局模拟，用于调整得分规则、移动次数和调色板大小
+ * 不启动Spring，直接使用Board和GameLogic；瓦片类型和调色板读取application.yml，与经典模式一致。对局按编号静态分配给各个线程，
+ * 每个线程从主随机数流派生自己的随机数流（对局种子和策略的随机选择都从中取），
+ * 所以相同的参数和线程数总是得到相同的统计结果。
+ * 运行中每隔一段时间把当前的汇总直方图作为一行JSON追加到输出文件，最后一行是最终结果，
+ * 每行同时记录吞吐量（每秒对局数和每核每秒对局数）。
+ * 例如：mvn -Psimulation process-classes -Dsim.args="--games=1000000 --policy=greedy --types=6"
+ */
+public final class GameSimulator {
+
+    // 线程把本地统计合并到全局统计的间隔（对局数）
+    private static final int MERGE_INTERVAL = 256;
+
+    private long games = 10000;
+    private int threads = Runtime.getRuntime().availableProcessors();
+    private String policy = GreedyPolicy.NAME;
+    private int size = Constants.DEFAULT_BOARD_SIZE;
+    private int moves = Constants.DEFAULT_MOVES;
+    private int types = 0;     // 0表示使用配置中经典模式的调色板，否则取配置的全部类型中的前types种
+    private TilePalette palette;
+    private long seed = 1L;
+    private Path out = Paths.get("target", "simulation.jsonl");
+    private int reportSeconds = 10;
+    private int solverDepth = 1;
+    private int solverSamples = 2;
+
+    private final SimulationStats total = new SimulationStats();
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    public static void main(String[] args) throws Exception {
+        GameSimulator simulator = new GameSimulator();
+        simulator.parse(args);
+        simulator.run();
+    }
+
+    // 解析 --name=value 形式的参数
+    private void parse(String[] args) throws IOException {
+        for (String arg : args) {
+            int eq = arg.indexOf('=');
+            if (!arg.startsWith("--") || eq < 0) {
+                throw new IllegalArgumentException("参数格式应为 --name=value: " + arg);
+            }
+            String name = arg.substring(2, eq);
+            String value = arg.substring(eq + 1);
+            switch (name) {
+                case "games":
+                    games = Long.parseLong(value);
+                    break;
+                case "threads":
+                    threads = Integer.parseInt(value);
+                    break;
+                case "policy":
+                    policy = value;
+                    break;
+                case "size":
+                    size = Integer.parseInt(value);
+                    break;
+                case "moves":
+                    moves = Integer.parseInt(value);
+                    break;
+                case "types":
+                    types = Integer.parseInt(value);
+                    break;
+                case "seed":
+                    seed = Long.parseLong(value);
+                    break;
+                case "out":
+                    out = Paths.get(value);
+                    break;
+                case "report-seconds":
+                    reportSeconds = Integer.parseInt(value);
+                    break;
+                case "solver-depth":
+                    solverDepth = Integer.parseInt(value);
+                    break;
+                case "solver-samples":
+                    solverSamples = Integer.parseInt(value);
+                    break;
+                default:
+                    throw new IllegalArgumentException("未知的参数: " + name);
+            }
+        }
+        if (games <= 0 || threads <= 0) {
+            throw new IllegalArgumentException("对局数和线程数必须大于0");
+        }
+        // 提前检查策略名称，避免在工作线程中才失败
+        newPolicy().close();
+
+        TileTypeRegistry tileTypes = loadTileTypes();
+        palette = types > 0 ? tileTypes.getDefaultPalette().prefix(types) : tileTypes.getPalette(Constants.MODE_CLASSIC);
+    }
+
+    // 与应用相同的瓦片类型配置：把classpath中的application.yml绑定到TileTypeProperties（不启动Spring）
+    private static TileTypeRegistry loadTileTypes() throws IOException {
+        ClassPathResource resource = new ClassPathResource("application.yml");
+        if (!resource.exists()) {
+            return TileTypeRegistry.defaults();
+        }
+        List<PropertySource<?>> sources = new YamlPropertySourceLoader().load("application.yml", resource);
+        TileTypeProperties properties = new Binder(ConfigurationPropertySources.from(sources))
+                .bind("game", TileTypeProperties.class).orElseGet(TileTypeProperties::new);
+        return new TileTypeRegistry(properties.getTileTypes(), properties.getPalettes());
+    }
+
+    private PlayerPolicy newPolicy() {
+        switch (policy) {
+            case RandomPolicy.NAME:
+                return new RandomPolicy();
+            case GreedyPolicy.NAME:
+                return new GreedyPolicy();
+            case SolverPolicy.NAME:
+                return new SolverPolicy(solverDepth, solverSamples);
+            default:
+                throw new IllegalArgumentException("未知的策略: " + policy);
+        }
+    }
+
+    private void run() throws IOException, InterruptedException {
+        if (out.getParent() != null) {
+            Files.createDirectories(out.getParent());
+        }
+        GameRandom master = new GameRandom(seed);
+        Worker[] workers = new Worker[threads];
+        for (int t = 0; t < threads; t++) {
+            workers[t] = new Worker(t, master.split());
+        }
+
+        long start = System.nanoTime();
+        try (Writer writer = Files.newBufferedWriter(out, StandardCharsets.UTF_8)) {
+            for (Worker worker : workers) {
+                worker.start();
+            }
+            for (Worker worker : workers) {
+                // 等待期间按间隔输出当前的汇总结果
+                while (worker.isAlive()) {
+                    worker.join(reportSeconds * 1000L);
+                    if (worker.isAlive()) {
+                        report(writer, start, false);
+                    }
+                }
+            }
+            for (Worker worker : workers) {
+                if (worker.failure != null) {
+                    throw new IllegalStateException("模拟线程失败", worker.failure);
+                }
+            }
+            report(writer, start, true);
+        }
+    }
+
+    // 把当前的汇总统计作为一行JSON写入输出文件，并在控制台打印吞吐量
+    private void report(Writer writer, long start, boolean last) throws IOException {
+        double seconds = (System.nanoTime() - start) / 1e9;
+        Map<String, Object> line = new LinkedHashMap<>();
+        long finished;
+        synchronized (total) {
+            finished = total.getGames();
+            line.put("final", last);
+            line.put("elapsedSeconds", seconds);
+            line.put("config", config());
+            line.put("gamesPerSecond", finished / seconds);
+            line.put("gamesPerSecondPerCore", finished / seconds / threads);
+            line.put("stats", total.toMap());
+        }
+        writer.write(mapper.writeValueAsString(line));
+        writer.write('\n');
+        writer.flush();
+        System.out.printf("%s%d/%d 局, %.1f 局/秒, 每核 %.1f 局/秒%n", last ? "完成: " : "",
+                finished, games, finished / seconds, finished / seconds / threads);
+    }
+
+    private Map<String, Object> config() {
+        Map<String, Object> config = new HashMap<>();
+        config.put("games", games);
+        config.put("threads", threads);
+        config.put("policy", policy);
+        config.put("size", size);
+        config.put("moves", moves);
+        config.put("types", palette.size());
+        config.put("seed", seed);
+        config.put("scorePerTile", Constants.SCORE_PER_TILE);
+        if (SolverPolicy.NAME.equals(policy)) {
+            config.put("solverDepth", solverDepth);
+            config.put("solverSamples", solverSamples);
+        }
+        return config;
+    }
+
+    // 模拟线程：负责编号为index, index + threads, ... 的对局
+    private final class Worker extends Thread {
+        private final int index;
+        private final GameRandom random;
+        private final SimulationStats local = new SimulationStats();
+        private volatile Throwable failure;
+
+        Worker(int index, GameRandom random) {
+            super("simulation-" + index);
+            this.index = index;
+            this.random = random;
+        }
+
+        @Override
+        public void run() {
+            PlayerPolicy player = newPolicy();
+            try {
+                for (long game = index; game < games; game += threads) {
+                    play(player);
+                    if (local.getGames() == MERGE_INTERVAL) {
+                        flush();
+                    }
+                }
+                flush();
+            } catch (Throwable e) {
+                failure = e;
+            } finally {
+                player.close();
+            }
+        }
+
+        // 与GameService.makeMove相同的流程：执行移动，没有可走的移动时重排
+        private void play(PlayerPolicy player) {
+            Board board = new Board(size, size, moves, random.nextLong(), MatchEngines.OPTIMIZED, palette);
+            int deadBoards = 0;
+            while (!board.isGameOver()) {
+                if (!GameLogic.hasPossibleMoves(board)) {
+                    board.reshuffle();
+                    local.addDeadBoard();
+                    deadBoards++;
+                    continue;
+                }
+                int move = player.chooseMove(board, random);
+                int columns = board.getColumns();
+                int first = MoveGenerator.firstCell(move);
+                int second = MoveGenerator.secondCell(move, columns);
+                if (!board.swapTiles(first / columns, first % columns, second / columns, second % columns)) {
+                    throw new IllegalStateException("策略选择了非法移动: " + player.getName());
+                }
+                CascadeResult cascade = board.getLastCascade();
+                local.addMove(cascade.getDepth(), cascade.getTotalCleared());
+            }
+            local.addGame(board.getScore(), deadBoards);
+        }
+
+        private void flush() {
+            synchronized (total) {
+                total.merge(local);
+            }
+            local.reset();
+        }
+    }
+}
@@ -0,0 +1,71 @@
+// 贪心策略
+package com.qiaoqiao.simulation;
+
+import com.qiaoqiao.engine.BoardGrid;
+import com.qiaoqiao.engine.GameRandom;
+import com.qiaoqiao.engine.MatchEngine;
+import com.qiaoqiao.engine.MoveGenerator;
+import com.qiaoqiao.engine.RunList;
+import com.qiaoqiao.model.game.Board;
+
+import java.util.Arrays;
+
+/**
+ * 选择立即得分最高的移动（只看交换后第一步的连线，不考虑连锁和填充），
+ * 得分相同时随机选择，近似普通玩家的水平
+ */
+public final class GreedyPolicy implements PlayerPolicy {
+
+    public static final String NAME = "greedy";
+
+    private final RunList runs = new RunList();
+    private int[] moves = new int[0];
+    private BoardGrid scratch;
+    private long[] matched;
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public int chooseMove(Board board, GameRandom random) {
+        BoardGrid grid = board.getGrid();
+        MatchEngine engine = board.getMatchEngine();
+        if (scratch == null || scratch.getRows() != grid.getRows()
+                || scratch.getColumns() != grid.getColumns() || scratch.getTypeCount() != grid.getTypeCount()) {
+            scratch = new BoardGrid(grid.getRows(), grid.getColumns(), grid.getTypeCount());
+            matched = new long[(grid.getCellCount() + 63) >>> 6];
+            moves = new int[MoveGenerator.maxMoves(grid)];
+        }
+
+        int count = board.getMoveIndex().copyMoves(moves);
+        int columns = grid.getColumns();
+        int best = -1;
+        int bestScore = -1;
+        int ties = 0;
+        for (int m = 0; m < count; m++) {
+            int first = MoveGenerator.firstCell(moves[m]);
+            int second = MoveGenerator.secondCell(moves[m], columns);
+            scratch.copyFrom(grid);
+            scratch.clearDirty();
+            scratch.swap(first / columns, first % columns, second / columns, second % columns);
+            runs.clear();
+            Arrays.fill(matched, 0L);
+            engine.findMatches(scratch, true, runs, matched);
+            int score = 0;
+            for (int r = 0; r < runs.size(); r++) {
+                score += MatchEngine.scoreRun(runs.getLength(r));
+            }
+            // 得分相同的移动之间等概率选择（蓄水池抽样）
+            if (score > bestScore) {
+                best = moves[m];
+                bestScore = score;
+                ties = 1;
+            } else if (score == bestScore && random.nextInt(++ties) == 0) {
+                best = moves[m];
+            }
+        }
+        return best;
+    }
+}
@@ -0,0 +1,26 @@
+// 模拟玩家策略
+package com.qiaoqiao.simulation;
+
+import com.qiaoqiao.engine.GameRandom;
+import com.qiaoqiao.model.game.Board;
+
+/**
+ * 离线模拟中选择下一步移动的策略
+ * 每个模拟线程持有自己的策略实例，实现不需要是线程安全的。
+ */
+public interface PlayerPolicy {
+
+    // 策略名称
+    String getName();
+
+    /**
+     * 选择下一步移动
+     * 返回MoveGenerator打包格式的移动，没有合法移动时返回-1；
+     * 策略需要随机数时只能使用random（每局游戏独立的流），不能使用面板自己的随机数流。
+     */
+    int chooseMove(Board board, GameRandom random);
+
+    // 模拟结束后释放策略持有的资源
+    default void close() {
+    }
+}
@@ -0,0 +1,31 @@
+// 随机策略
+package com.qiaoqiao.simulation;
+
+import com.qiaoqiao.engine.GameRandom;
+import com.qiaoqiao.engine.MoveGenerator;
+import com.qiaoqiao.model.game.Board;
+
+/**
+ * 在全部合法移动中等概率随机选择，作为最弱玩家的基线
+ */
+public final class RandomPolicy implements PlayerPolicy {
+
+    public static final String NAME = "random";
+
+    private int[] moves = new int[0];
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public int chooseMove(Board board, GameRandom random) {
+        int maxMoves = MoveGenerator.maxMoves(board.getGrid());
+        if (moves.length < maxMoves) {
+            moves = new int[maxMoves];
+        }
+        int count = board.getMoveIndex().copyMoves(moves);
+        return count == 0 ? -1 : moves[random.nextInt(count)];
+    }
+}
@@ -0,0 +1,156 @@
+// 模拟统计
+package com.qiaoqiao.simulation;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 一批模拟对局的汇总统计
+ * 每个模拟线程累加到自己的实例中，定期合并到全局实例，不需要在每局结束时同步。
+ */
+public final class SimulationStats {
+
+    private long games;               // 对局数
+    private long moves;               // 有效移动数
+    private long deadBoards;          // 死局重排次数
+    private long gamesWithDeadBoard;  // 出现过死局的对局数
+    private final Histogram scores = new Histogram(50, 200);           // 每局得分
+    private final Histogram cascadeDepths = new Histogram(1, 32);      // 每次移动的连锁步数
+    private final Histogram clearedPerMove = new Histogram(1, 128);    // 每次移动消除的格子数
+    private final Histogram deadBoardsPerGame = new Histogram(1, 16);  // 每局的死局次数
+
+    // 记录一次有效移动
+    public void addMove(int depth, int cleared) {
+        moves++;
+        cascadeDepths.add(depth);
+        clearedPerMove.add(cleared);
+    }
+
+    // 记录一次死局重排
+    public void addDeadBoard() {
+        deadBoards++;
+    }
+
+    // 记录一局结束
+    public void addGame(int score, int deadBoardsInGame) {
+        games++;
+        scores.add(score);
+        deadBoardsPerGame.add(deadBoardsInGame);
+        if (deadBoardsInGame > 0) {
+            gamesWithDeadBoard++;
+        }
+    }
+
+    public long getGames() {
+        return games;
+    }
+
+    // 把另一个实例的统计累加进来
+    public void merge(SimulationStats other) {
+        games += other.games;
+        moves += other.moves;
+        deadBoards += other.deadBoards;
+        gamesWithDeadBoard += other.gamesWithDeadBoard;
+        scores.merge(other.scores);
+        cascadeDepths.merge(other.cascadeDepths);
+        clearedPerMove.merge(other.clearedPerMove);
+        deadBoardsPerGame.merge(other.deadBoardsPerGame);
+    }
+
+    // 清空统计（线程把本地统计合并到全局后复用）
+    public void reset() {
+        games = 0;
+        moves = 0;
+        deadBoards = 0;
+        gamesWithDeadBoard = 0;
+        scores.reset();
+        cascadeDepths.reset();
+        clearedPerMove.reset();
+        deadBoardsPerGame.reset();
+    }
+
+    // 输出为可以序列化成JSON的结构
+    public Map<String, Object> toMap() {
+        Map<String, Object> map = new LinkedHashMap<>();
+        map.put("games", games);
+        map.put("moves", moves);
+        map.put("deadBoards", deadBoards);
+        map.put("deadBoardsPerMove", moves == 0 ? 0.0 : (double) deadBoards / moves);
+        map.put("gamesWithDeadBoard", games == 0 ? 0.0 : (double) gamesWithDeadBoard / games);
+        map.put("score", scores.toMap());
+        map.put("cascadeDepth", cascadeDepths.toMap());
+        map.put("clearedPerMove", clearedPerMove.toMap());
+        map.put("deadBoardsPerGame", deadBoardsPerGame.toMap());
+        return map;
+    }
+
+    /**
+     * 固定宽度的直方图，超出范围的值计入最后一个桶
+     */
+    static final class Histogram {
+        private final int bucketWidth;
+        private final long[] counts;
+        private long total;
+        private long sum;
+        private long max;
+
+        Histogram(int bucketWidth, int buckets) {
+            this.bucketWidth = bucketWidth;
+            this.counts = new long[buckets];
+        }
+
+        void add(long value) {
+            counts[(int) Math.min(value / bucketWidth, counts.length - 1)]++;
+            total++;
+            sum += value;
+            max = Math.max(max, value);
+        }
+
+        void merge(Histogram other) {
+            for (int b = 0; b < counts.length; b++) {
+                counts[b] += other.counts[b];
+            }
+            total += other.total;
+            sum += other.sum;
+            max = Math.max(max, other.max);
+        }
+
+        void reset() {
+            Arrays.fill(counts, 0L);
+            total = 0;
+            sum = 0;
+            max = 0;
+        }
+
+        // 分位数所在桶的下界
+        long percentile(double p) {
+            long rank = (long) Math.ceil(p * total);
+            long seen = 0;
+            for (int b = 0; b < counts.length; b++) {
+                seen += counts[b];
+                if (seen >= rank && seen > 0) {
+                    return (long) b * bucketWidth;
+                }
+            }
+            return 0;
+        }
+
+        Map<String, Object> toMap() {
+            // 去掉末尾的空桶
+            int used = counts.length;
+            while (used > 0 && counts[used - 1] == 0) {
+                used--;
+            }
+            Map<String, Object> map = new LinkedHashMap<>();
+            map.put("mean", total == 0 ? 0.0 : (double) sum / total);
+            map.put("p50", percentile(0.5));
+            map.put("p90", percentile(0.9));
+            map.put("p99", percentile(0.99));
+            map.put("max", max);
+            map.put("bucketWidth", bucketWidth);
+            map.put("counts", Arrays.copyOf(counts, used));
+            return map;
+        }
+    }
+}
@@ -0,0 +1,48 @@
+// 搜索策略
+package com.qiaoqiao.simulation;
+
+import com.qiaoqiao.engine.ExpectimaxSolver;
+import com.qiaoqiao.engine.GameRandom;
+import com.qiaoqiao.model.game.Board;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 使用期望最大化搜索选择移动，近似高水平玩家
+ * 模拟已经按局在各核之间并行，所以每个策略实例使用单线程的池，不再在一局内部并行。
+ */
+public final class SolverPolicy implements PlayerPolicy {
+
+    public static final String NAME = "solver";
+
+    private static final long NO_DEADLINE = TimeUnit.DAYS.toNanos(1);
+
+    private final ForkJoinPool pool = new ForkJoinPool(1);
+    private final ExpectimaxSolver solver;
+    private final int depth;
+    private final AtomicBoolean cancelled = new AtomicBoolean();
+
+    public SolverPolicy(int depth, int samples) {
+        this.solver = new ExpectimaxSolver(pool, samples);
+        this.depth = depth;
+    }
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public int chooseMove(Board board, GameRandom random) {
+        ExpectimaxSolver.Result result = solver.solve(board.getGrid(), board.getRandom(), depth,
+                System.nanoTime() + NO_DEADLINE, cancelled);
+        return result == null ? -1 : result.getMove();
+    }
+
+    @Override
+    public void close() {
+        pool.shutdown();
+    }
+}
@@ -7,6 +7,22 @@ public class Constants {
     public static final int DEFAULT_BOARD_SIZE = 8;
     public static final int DEFAULT_MOVES = 20;
     public static final int MIN_MATCH_LENGTH = 3;
+    public static final int ENDLESS_BOARD_SIZE = 256;
+    public static final int ENDLESS_MAX_BOARD_SIZE = 1024;
+    public static final int CHALLENGE_MOVES = 30;
+    public static final int SESSION_WHEEL_SLOTS = 512;   // 会话过期时间轮的槽位数（2的幂）
+
+    // 挑战模式的障碍物布局：#石块 i一层冰 I两层冰 L锁 x洞 .普通格子
+    public static final String[] CHALLENGE_LAYOUT = {
+            "x......x",
+            "..#..#..",
+            ".iiIIii.",
+            "L.iIIi.L",
+            "L.iIIi.L",
+            ".iiIIii.",
+            "..#..#..",
+            "x......x"
+    };
 
     // 瓦片类型
     public static final String[] TILE_TYPES = {"红色", "蓝色", "绿色", "黄色", "紫色", "白色", "黑色", "棕色", "橙色"};
@@ -21,6 +37,7 @@ public class Constants {
     public static final String MODE_CLASSIC = "classic";
     public static final String MODE_TIMED = "timed";
     public static final String MODE_CHALLENGE = "challenge";
+    public static final String MODE_ENDLESS = "endless";
 
     // 游戏状态
     public static final String STATE_READY = "ready";
@@ -0,0 +1,72 @@
+// 会话邮箱
+package com.qiaoqiao.util;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+
+/**
+ * 单写者邮箱：提交的任务按顺序逐个执行，同一时刻最多一个线程在处理，
+ * 所以任务内部不需要加锁，也不存在检查后再修改的竞争。
+ * 邮箱本身不占用线程：有任务时把自己提交到共享线程池上执行一批，处理完再释放，
+ * 许多邮箱共享同一个线程池，不同邮箱的任务在各个核上并行。
+ *
+ * scheduled标记保证邮箱同一时刻只在线程池中出现一次；
+ * 它的写入和读取同时建立了前后两批任务之间的先行发生关系，后一批可以看到前一批的全部修改。
+ */
+public final class Mailbox implements Runnable {
+
+    private static final int BATCH_SIZE = 32;   // 每次占用线程最多处理的任务数，之后重新排队，避免一个会话独占线程
+
+    private final Executor executor;
+    private final ConcurrentLinkedQueue<Runnable> queue = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+
+    public Mailbox(Executor executor) {
+        this.executor = executor;
+    }
+
+    // 提交任务，返回的结果在任务执行完后完成，任务抛出的异常使结果异常完成
+    public <T> CompletableFuture<T> submit(Supplier<T> task) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        queue.offer(() -> {
+            try {
+                future.complete(task.get());
+            } catch (Throwable e) {
+                future.completeExceptionally(e);
+            }
+        });
+        schedule();
+        return future;
+    }
+
+    private void schedule() {
+        if (scheduled.compareAndSet(false, true)) {
+            try {
+                executor.execute(this);
+            } catch (RejectedExecutionException e) {
+                scheduled.set(false);
+                throw e;
+            }
+        }
+    }
+
+    @Override
+    public void run() {
+        for (int n = 0; n < BATCH_SIZE; n++) {
+            Runnable task = queue.poll();
+            if (task == null) {
+                break;
+            }
+            task.run();
+        }
+        scheduled.set(false);
+        // 释放之后才入队的任务，提交方的schedule可能已经失败，这里补上
+        if (!queue.isEmpty()) {
+            schedule();
+        }
+    }
+}
@@ -0,0 +1,126 @@
+// 哈希时间轮
+package com.qiaoqiao.util;
+
+import java.util.function.Consumer;
+
+/**
+ * 哈希时间轮：按到期时间把条目挂到环形槽位上，每个时间刻只检查一个槽位
+ * 登记和移除都是O(1)，推进一个时间刻的开销与该槽位上的条目数成正比，与条目总数无关。
+ * 到期时间超过一圈的条目记录剩余圈数，每经过一次所在槽位减一。
+ *
+ * 条目到期时不直接移除，而是重新询问Expiry当前的到期时间：
+ * 期间被访问过的条目会给出更晚的时间，只需移到新的槽位，访问本身只需更新条目自己的时间戳。
+ * 登记和推进由同一把锁保护，条目的访问不经过时间轮。
+ */
+public final class TimingWheel<T> {
+
+    /**
+     * 条目的到期策略
+     */
+    public interface Expiry<T> {
+        // 返回条目当前的到期时间（毫秒），不大于now表示已经过期
+        long expiresAt(T item, long now);
+    }
+
+    private final Expiry<T> expiry;
+    private final Consumer<T> onExpire;     // 过期条目的回调（在推进时间轮的线程上调用）
+    private final long tickMillis;
+    private final Node<T>[] slots;          // 每个槽位一个带哨兵的双向环形链表
+    private final int mask;
+    private long currentTick;
+    private int size;
+
+    @SuppressWarnings("unchecked")
+    public TimingWheel(int slotCount, long tickMillis, long now, Expiry<T> expiry, Consumer<T> onExpire) {
+        if (slotCount <= 0 || Integer.bitCount(slotCount) != 1) {
+            throw new IllegalArgumentException("槽位数必须是2的幂: " + slotCount);
+        }
+        if (tickMillis <= 0) {
+            throw new IllegalArgumentException("时间刻必须大于0: " + tickMillis);
+        }
+        this.expiry = expiry;
+        this.onExpire = onExpire;
+        this.tickMillis = tickMillis;
+        this.slots = new Node[slotCount];
+        for (int s = 0; s < slotCount; s++) {
+            Node<T> head = new Node<>(null);
+            head.prev = head;
+            head.next = head;
+            slots[s] = head;
+        }
+        this.mask = slotCount - 1;
+        this.currentTick = now / tickMillis;
+    }
+
+    // 登记条目，在deadline（毫秒）之后的第一个时间刻检查
+    public synchronized void schedule(T item, long deadline) {
+        size++;
+        place(new Node<>(item), deadline);
+    }
+
+    /**
+     * 把时间轮推进到now，依次处理经过的每个槽位
+     * @return 本次过期移除的条目数
+     */
+    public synchronized int advance(long now) {
+        long target = now / tickMillis;
+        int expired = 0;
+        while (currentTick < target) {
+            currentTick++;
+            Node<T> head = slots[(int) (currentTick & mask)];
+            Node<T> node = head.next;
+            while (node != head) {
+                Node<T> next = node.next;
+                if (node.rounds > 0) {
+                    node.rounds--;
+                } else {
+                    unlink(node);
+                    long deadline = expiry.expiresAt(node.item, now);
+                    if (deadline <= now) {
+                        size--;
+                        expired++;
+                        onExpire.accept(node.item);
+                    } else {
+                        place(node, deadline);
+                    }
+                }
+                node = next;
+            }
+        }
+        return expired;
+    }
+
+    // 时间轮中的条目数
+    public synchronized int size() {
+        return size;
+    }
+
+    // 按到期时间挂到对应槽位，已经到期的条目挂到下一个时间刻
+    private void place(Node<T> node, long deadline) {
+        long ticks = Math.max(1L, (deadline + tickMillis - 1) / tickMillis - currentTick);
+        node.rounds = (ticks - 1) / slots.length;
+        Node<T> head = slots[(int) ((currentTick + ticks) & mask)];
+        node.prev = head.prev;
+        node.next = head;
+        head.prev.next = node;
+        head.prev = node;
+    }
+
+    private static <T> void unlink(Node<T> node) {
+        node.prev.next = node.next;
+        node.next.prev = node.prev;
+        node.prev = null;
+        node.next = null;
+    }
+
+    private static final class Node<T> {
+        final T item;
+        long rounds;        // 还需经过所在槽位的圈数
+        Node<T> prev;
+        Node<T> next;
+
+        Node(T item) {
+            this.item = item;
+        }
+    }
+}
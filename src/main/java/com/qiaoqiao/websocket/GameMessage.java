@@ -1,7 +1,8 @@
 // WebSocket消息对象
 package com.qiaoqiao.websocket;
 
-import com.qiaoqiao.model.game.Board;
+import com.qiaoqiao.engine.CascadeResult;
+import com.qiaoqiao.model.game.BoardSnapshot;
 import lombok.Data;
 
 @Data
@@ -9,7 +10,8 @@ public class GameMessage {
     private String type;
     private String gameId;
     private String userId;
-    private Board board;
+    private BoardSnapshot board;     // 面板快照
+    private CascadeResult cascade;
     private int score;
     private int movesLeft;
     private int row1;
@@ -19,13 +21,14 @@ public class GameMessage {
     private String message;
     private boolean success;
     private boolean gameOver;
+    private boolean won;             // 游戏结束时是否过关
 
     // 构造函数
     public GameMessage() {
     }
 
     // 创建游戏消息
-    public static GameMessage createGameMessage(String type, String gameId, String userId, Board board) {
+    public static GameMessage createGameMessage(String type, String gameId, String userId, BoardSnapshot board) {
         GameMessage message = new GameMessage();
         message.setType(type);
         message.setGameId(gameId);
@@ -51,14 +54,15 @@ public class GameMessage {
         return message;
     }
 
-    // 创建游戏结束消息
-    public static GameMessage createGameOverMessage(String gameId, String userId, int score) {
+    // 创建游戏结束消息（won表示挑战模式过关）
+    public static GameMessage createGameOverMessage(String gameId, String userId, int score, boolean won) {
         GameMessage message = new GameMessage();
         message.setType("gameOver");
         message.setGameId(gameId);
         message.setUserId(userId);
         message.setScore(score);
         message.setGameOver(true);
+        message.setWon(won);
         return message;
     }
 
@@ -2,7 +2,7 @@
 package com.qiaoqiao.websocket;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
-import com.qiaoqiao.model.game.Board;
+import com.qiaoqiao.model.game.BoardSnapshot;
 import com.qiaoqiao.model.game.GameSession;
 import com.qiaoqiao.service.GameService;
 import com.qiaoqiao.service.ScoreService;
@@ -100,7 +100,7 @@ public class GameWebSocketHandler extends TextWebSocketHandler {
         sendGameState(gameId, session);
     }
 
-    // 处理移动操作
+    // 处理移动操作：移动在会话的邮箱中执行，处理完后由邮箱线程发送结果
     private void handleMove(WebSocketSession session, String gameId, String userId, GameMessage moveMessage) throws IOException {
         GameSession gameSession = gameService.getGameSessionById(gameId);
 
@@ -115,31 +115,46 @@ public class GameWebSocketHandler extends TextWebSocketHandler {
         int col2 = moveMessage.getCol2();
 
         // 执行移动
-        boolean moveSuccess = gameService.makeMove(gameSession, row1, col1, row2, col2);
+        gameService.submitMove(gameSession, row1, col1, row2, col2).whenComplete((snapshot, error) -> {
+            try {
+                if (error != null) {
+                    sendErrorMessage(session, gameId, userId, "消息处理错误: " + error.getMessage());
+                } else {
+                    handleMoveResult(session, gameSession, userId, snapshot);
+                }
+            } catch (IOException e) {
+                // 连接已经断开，结果无法送达
+            }
+        });
+    }
 
-        if (moveSuccess) {
+    // 发送移动结果，面板和分数取自这次移动发布的快照（无效移动为null）
+    private void handleMoveResult(WebSocketSession session, GameSession gameSession, String userId,
+                                  BoardSnapshot snapshot) throws IOException {
+        String gameId = gameSession.getId();
+        if (snapshot != null) {
             // 检查游戏是否结束
-            if (gameSession.getBoard().isGameOver()) {
+            if (snapshot.isGameOver()) {
                 // 处理游戏结束
                 if (userId != null) {
                     // 尝试将userId转换为Long
                     try {
                         Long userIdLong = Long.parseLong(userId);
-                        scoreService.saveScore(userIdLong, gameSession.getBoard().getScore());
+                        scoreService.saveScore(userIdLong, snapshot.getScore());
                     } catch (NumberFormatException e) {
                         // userId不是数字，保存为游客分数
-                        scoreService.saveGuestScore(gameSession.getBoard().getScore());
+                        scoreService.saveGuestScore(snapshot.getScore());
                     }
                 } else {
                     // 用户ID为空，保存为游客分数
-                    scoreService.saveGuestScore(gameSession.getBoard().getScore());
+                    scoreService.saveGuestScore(snapshot.getScore());
                 }
 
                 // 发送游戏结束消息
-                sendGameOverMessage(session, gameId, userId, gameSession.getBoard().getScore());
+                sendGameOverMessage(session, gameId, userId, snapshot);
             } else {
-                // 发送更新的游戏状态
-                sendGameState(gameId, session);
+                // 发送更新的游戏状态和本次移动的连锁消除过程
+                sendMoveResult(gameSession, snapshot, session);
             }
         } else {
             // 发送无效移动消息
@@ -175,16 +190,28 @@ public class GameWebSocketHandler extends TextWebSocketHandler {
 
         if (gameSession != null) {
             GameMessage gameStateMessage = GameMessage.createGameMessage(
-                    "gameState", gameId, gameSession.getUserId(), gameSession.getBoard()
+                    "gameState", gameId, gameSession.getUserId(), gameService.activate(gameSession).getSnapshot()
             );
 
             sendMessage(session, gameStateMessage);
         }
     }
 
+    // 发送移动结果
+    private void sendMoveResult(GameSession gameSession, BoardSnapshot snapshot, WebSocketSession session) throws IOException {
+        // 面板和连锁消除过程来自同一个快照，保证两者一致
+        GameMessage moveResultMessage = GameMessage.createGameMessage(
+                "gameState", gameSession.getId(), gameSession.getUserId(), snapshot
+        );
+        moveResultMessage.setCascade(snapshot.getCascade());
+        moveResultMessage.setSuccess(true);
+
+        sendMessage(session, moveResultMessage);
+    }
+
     // 发送游戏结束消息
-    private void sendGameOverMessage(WebSocketSession session, String gameId, String userId, int score) throws IOException {
-        GameMessage gameOverMessage = GameMessage.createGameOverMessage(gameId, userId, score);
+    private void sendGameOverMessage(WebSocketSession session, String gameId, String userId, BoardSnapshot snapshot) throws IOException {
+        GameMessage gameOverMessage = GameMessage.createGameOverMessage(gameId, userId, snapshot.getScore(), snapshot.isWon());
         sendMessage(session, gameOverMessage);
     }
 
@@ -194,11 +221,13 @@ public class GameWebSocketHandler extends TextWebSocketHandler {
         sendMessage(session, errorMsg);
     }
 
-    // 发送消息
+    // 发送消息（移动结果在邮箱线程上发送，同一连接的发送需要互斥）
     private void sendMessage(WebSocketSession session, GameMessage message) throws IOException {
         if (session != null && session.isOpen()) {
             String jsonMessage = objectMapper.writeValueAsString(message);
-            session.sendMessage(new TextMessage(jsonMessage));
+            synchronized (session) {
+                session.sendMessage(new TextMessage(jsonMessage));
+            }
         }
     }
 
@@ -208,7 +237,9 @@ public class GameWebSocketHandler extends TextWebSocketHandler {
 
         for (WebSocketSession session : gameSessionMap.values()) {
             if (session.isOpen()) {
-                session.sendMessage(new TextMessage(jsonMessage));
+                synchronized (session) {
+                    session.sendMessage(new TextMessage(jsonMessage));
+                }
             }
         }
     }
@@ -1,4 +1,13 @@
 // 游戏面板逻辑
+
+// 服务器输出的没有瓦片的格子类型（见Tile.TYPE_*）
+const EMPTY_CELL_TYPES = ['blocker', 'hole', 'empty'];
+
+// 障碍物标记（见ObstacleLayer.FLAG_*）
+const OBSTACLE_ICE = 2;
+const OBSTACLE_DOUBLE_ICE = 4;
+const OBSTACLE_LOCK = 8;
+
 class GameBoard {
     constructor() {
         this.boardElement = document.getElementById('game-board');
@@ -37,6 +46,7 @@ class GameBoard {
         const rows = this.boardData.rows;
         const columns = this.boardData.columns;
         const tiles = this.boardData.tiles;
+        const obstacles = this.boardData.obstacles;
 
         // 设置网格大小
         this.boardElement.style.gridTemplateColumns = `repeat(${columns}, 1fr)`;
@@ -47,14 +57,33 @@ class GameBoard {
             for (let j = 0; j < columns; j++) {
                 const tile = tiles[i][j];
                 const tileElement = document.createElement('div');
-                tileElement.className = `tile ${tile.type.toLowerCase()}`;
 
                 // 设置数据属性
                 tileElement.dataset.row = i;
                 tileElement.dataset.col = j;
+
+                // 没有瓦片的格子（石块、洞、空格子）只占位，不能点击
+                if (!tile || EMPTY_CELL_TYPES.includes(tile.type)) {
+                    tileElement.className = `tile cell-${tile ? tile.type : 'empty'}`;
+                    this.boardElement.appendChild(tileElement);
+                    continue;
+                }
+
+                tileElement.className = `tile ${tile.type.toLowerCase()}`;
                 tileElement.dataset.id = tile.id;
                 tileElement.dataset.type = tile.type;
 
+                // 瓦片下的冰层和锁（挑战模式）
+                const flags = obstacles ? obstacles[i][j] : 0;
+                if (flags & OBSTACLE_DOUBLE_ICE) {
+                    tileElement.classList.add('double-ice');
+                } else if (flags & OBSTACLE_ICE) {
+                    tileElement.classList.add('ice');
+                }
+                if (flags & OBSTACLE_LOCK) {
+                    tileElement.classList.add('locked');
+                }
+
                 // 设置图片背景（如果有）
                 if (tile.imageUrl) {
                     tileElement.style.backgroundImage = `url('${tile.imageUrl}')`;
@@ -180,7 +209,7 @@ class GameBoard {
                     // 检查游戏是否结束
                     if (result.gameOver) {
                         this.gameOver = true;
-                        this.showGameOverModal(result.score);
+                        this.showGameOverModal(result.score, result.won);
                     }
 
                     this.isAnimating = false;
@@ -256,10 +285,13 @@ class GameBoard {
         this.movesLeftElement.textContent = this.boardData.movesLeft;
     }
 
-    showGameOverModal(finalScore) {
+    showGameOverModal(finalScore, won) {
         const gameOverModal = document.getElementById('game-over-modal');
         const finalScoreElement = document.getElementById('final-score');
 
+        // 挑战模式清除全部障碍物为过关，否则是移动次数用完
+        document.getElementById('game-over-title').textContent = won ? '挑战成功!' : '游戏结束!';
+
         // 播放游戏结束音效
         if (window.SoundEffects) {
             window.SoundEffects.playGameOverSound();
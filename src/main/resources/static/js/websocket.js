@@ -174,7 +174,7 @@ class GameWebSocket {
     // 处理游戏结束消息
     handleGameOver(message) {
         if (this.gameBoard) {
-            this.gameBoard.showGameOverModal(message.score);
+            this.gameBoard.showGameOverModal(message.score, message.won);
         }
     }
 
@@ -0,0 +1,167 @@
+// 多节点会话存储测试类
+package com.qiaoqiao.cluster;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.qiaoqiao.QiaoQiaoMatchThreeApplication;
+import com.qiaoqiao.model.game.GameSession;
+import com.qiaoqiao.model.game.Move;
+import com.qiaoqiao.service.GameService;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.RestTemplate;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ClusterGameSessionStoreTest {
+
+    private static final String SECRET = "loopback-secret";
+
+    private final RestTemplate restTemplate = new RestTemplate();
+
+    @Test
+    public void testJoiningNodeTakesOnlyItsShareOfKeys() {
+        HashRing three = new HashRing(Arrays.asList("http://a", "http://b", "http://c"), 128);
+        HashRing four = three.with("http://d");
+        int keys = 20000;
+        int moved = 0;
+        Map<String, Integer> shares = new HashMap<>();
+        for (int i = 0; i < keys; i++) {
+            String key = "game-" + i;
+            String before = three.ownerOf(key);
+            String after = four.ownerOf(key);
+            if (!before.equals(after)) {
+                // 改变归属的key只能移到新节点
+                assertEquals("http://d", after);
+                moved++;
+            }
+            shares.merge(after, 1, Integer::sum);
+        }
+        assertTrue(moved > keys * 0.15 && moved < keys * 0.35, "约1/4的key移到新节点: " + moved);
+        for (int share : shares.values()) {
+            assertTrue(share > keys * 0.15 && share < keys * 0.35, "各节点分到的key应大致相同: " + shares);
+        }
+        assertEquals(three.getNodes(), four.without("http://d").getNodes());
+    }
+
+    @Test
+    public void testSessionsSurviveNodeJoiningAndLeaving() throws Exception {
+        String nodeA = "http://127.0.0.1:" + freePort();
+        String nodeB = "http://127.0.0.1:" + freePort();
+
+        // 节点A单独运行时创建若干局，每局走一步
+        ConfigurableApplicationContext contextA = startNode(nodeA, nodeA);
+        ConfigurableApplicationContext contextB = null;
+        try {
+            GameService serviceA = contextA.getBean(GameService.class);
+            List<String> gameIds = new ArrayList<>();
+            for (int i = 0; i < 24; i++) {
+                GameSession gameSession = serviceA.createNewGame();
+                gameIds.add(gameSession.getId());
+                playFirstMove(nodeA, gameSession.getId(), serviceA.getPossibleMoves(gameSession).get(0));
+            }
+            Map<String, JsonNode> states = readStates(nodeA, gameIds);
+
+            // 节点之间的接口要求共享密钥，带有密钥也不接受格式不对的会话
+            HttpClientErrorException forbidden = assertThrows(HttpClientErrorException.class, () -> restTemplate.exchange(
+                    nodeA + "/cluster/members?node={node}", HttpMethod.POST, HttpEntity.EMPTY, JsonNode.class, "http://127.0.0.1:1"));
+            assertEquals(HttpStatus.FORBIDDEN, forbidden.getStatusCode());
+            HttpHeaders headers = new HttpHeaders();
+            headers.set(ClusterGameSessionStore.SECRET_HEADER, SECRET);
+            headers.setContentType(MediaType.APPLICATION_OCTET_STREAM);
+            HttpClientErrorException rejected = assertThrows(HttpClientErrorException.class, () -> restTemplate.exchange(
+                    nodeA + "/cluster/sessions/{gameId}", HttpMethod.PUT, new HttpEntity<>(new byte[]{0, 0, 1, 'x', 0, 1, 'y', 0x7f, -1, -1, -1},
+                            headers), Void.class, gameIds.get(0)));
+            assertEquals(HttpStatus.BAD_REQUEST, rejected.getStatusCode());
+            assertEquals(states, readStates(nodeA, gameIds));
+
+            // 节点B加入：A在后台把改由B负责的会话转移给B，转移期间和之后两个节点都能读到全部对局，状态不变
+            contextB = startNode(nodeB, nodeA + "," + nodeB);
+            GameService serviceB = contextB.getBean(GameService.class);
+            assertEquals(states, readStates(nodeB, gameIds));
+            awaitTransfers(serviceA, serviceB, gameIds.size());
+            assertTrue(serviceB.getSessionCount() > 0, "新节点应分到一部分会话");
+            assertTrue(serviceA.getSessionCount() > 0);
+            assertEquals(gameIds.size(), serviceA.getSessionCount() + serviceB.getSessionCount(), "转移中不应丢失或复制会话");
+            assertEquals(states, readStates(nodeA, gameIds));
+            assertEquals(states, readStates(nodeB, gameIds));
+
+            // 从不负责的节点发起移动，转发给负责的节点执行
+            for (String gameId : gameIds) {
+                boolean local = serviceA.getGameSessionById(gameId) != null;
+                GameService owner = local ? serviceA : serviceB;
+                Move move = owner.getPossibleMoves(owner.getGameSessionById(gameId)).get(0);
+                playFirstMove(local ? nodeB : nodeA, gameId, move);
+            }
+            states = readStates(nodeB, gameIds);
+
+            // 节点B离开：会话全部转移回A
+            contextB.close();
+            contextB = null;
+            assertEquals(gameIds.size(), serviceA.getSessionCount(), "离开的节点应把会话全部转移出去");
+            assertEquals(states, readStates(nodeA, gameIds));
+        } finally {
+            if (contextB != null) {
+                contextB.close();
+            }
+            contextA.close();
+        }
+    }
+
+    // 辅助方法：启动一个节点（独立的Spring上下文和内存数据库，命令行参数覆盖application.yml）
+    private ConfigurableApplicationContext startNode(String self, String nodes) {
+        String port = self.substring(self.lastIndexOf(':') + 1);
+        return new SpringApplicationBuilder(QiaoQiaoMatchThreeApplication.class)
+                .run("--server.port=" + port,
+                        "--spring.datasource.url=jdbc:h2:mem:node" + port,
+                        "--spring.jpa.show-sql=false",
+                        "--spring.devtools.restart.enabled=false",
+                        "--game.cluster.self=" + self,
+                        "--game.cluster.nodes=" + nodes,
+                        "--game.cluster.secret=" + SECRET);
+    }
+
+    // 等待转移完成：A不再保存由B负责的会话（转移中的会话两边都有，完成后总数等于对局数）
+    private void awaitTransfers(GameService serviceA, GameService serviceB, int games) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (serviceA.getSessionCount() + serviceB.getSessionCount() != games || serviceB.getSessionCount() == 0) {
+            assertTrue(System.currentTimeMillis() < deadline, "会话转移应在超时前完成");
+            Thread.sleep(20);
+        }
+    }
+
+    private void playFirstMove(String node, String gameId, Move move) {
+        Map<String, Integer> body = Map.of("row1", move.getRow1(), "col1", move.getCol1(),
+                "row2", move.getRow2(), "col2", move.getCol2());
+        JsonNode response = restTemplate.postForObject(node + "/game/" + gameId + "/move", body, JsonNode.class);
+        assertTrue(response.get("success").asBoolean(), "移动应成功: " + response);
+    }
+
+    private Map<String, JsonNode> readStates(String node, List<String> gameIds) {
+        Map<String, JsonNode> states = new HashMap<>();
+        for (String gameId : gameIds) {
+            states.put(gameId, restTemplate.getForObject(node + "/game/" + gameId + "/state", JsonNode.class));
+        }
+        return states;
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+}
@@ -0,0 +1,129 @@
+// 最佳移动搜索测试类
+package com.qiaoqiao.engine;
+
+import com.qiaoqiao.model.game.Board;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ExpectimaxSolverTest {
+
+    private static final long NO_DEADLINE = TimeUnit.MINUTES.toNanos(1);
+
+    @Test
+    public void testSameResultWithAnyParallelism() {
+        ForkJoinPool single = new ForkJoinPool(1);
+        ForkJoinPool four = new ForkJoinPool(4);
+        try {
+            for (long seed = 1; seed <= 5; seed++) {
+                Board board = new Board(8, 8, 20, seed, MatchEngines.OPTIMIZED, 5);
+                long draws = board.getRandom().getDraws();
+                ExpectimaxSolver.Result a = solve(new ExpectimaxSolver(single, 3), board, 2);
+                ExpectimaxSolver.Result b = solve(new ExpectimaxSolver(four, 3), board, 2);
+
+                assertEquals(a.getMove(), b.getMove(), "线程数不应影响选出的移动");
+                assertEquals(a.getExpectedScore(), b.getExpectedScore(), "线程数不应影响期望得分");
+                assertTrue(a.isComplete(), "没有时间限制时应搜索到最大深度");
+                assertEquals(draws, board.getRandom().getDraws(), "搜索不应消耗会话的随机数");
+
+                int first = MoveGenerator.firstCell(a.getMove());
+                int second = MoveGenerator.secondCell(a.getMove(), 8);
+                assertTrue(board.swapTiles(first / 8, first % 8, second / 8, second % 8), "最佳移动应是合法移动");
+            }
+        } finally {
+            single.shutdown();
+            four.shutdown();
+        }
+    }
+
+    @Test
+    public void testBestMoveIsAtLeastGreedy() {
+        // 深度1的期望得分不低于任何一个移动的立即得分（第一步的消除与填充无关）
+        ForkJoinPool pool = new ForkJoinPool(2);
+        try {
+            Board board = new Board(8, 8, 20, 42L, MatchEngines.OPTIMIZED, 5);
+            ExpectimaxSolver.Result result = solve(new ExpectimaxSolver(pool, 1), board, 1);
+            int[] moves = MoveGenerator.generate(board.getGrid());
+            for (int move : moves) {
+                BoardGrid grid = board.getGrid().copy();
+                int first = MoveGenerator.firstCell(move);
+                int second = MoveGenerator.secondCell(move, 8);
+                grid.clearDirty();
+                grid.swap(first / 8, first % 8, second / 8, second % 8);
+                RunList runs = new RunList();
+                MatchEngines.OPTIMIZED.findMatches(grid, true, runs, new long[1]);
+                int immediate = 0;
+                for (int r = 0; r < runs.size(); r++) {
+                    immediate += MatchEngine.scoreRun(runs.getLength(r));
+                }
+                assertTrue(result.getExpectedScore() >= immediate, "最佳移动的期望得分应不低于任何移动的立即得分");
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void testDeadlineAndCancellation() {
+        ForkJoinPool pool = new ForkJoinPool(2);
+        try {
+            Board board = new Board(8, 8, 20, 7L, MatchEngines.OPTIMIZED, 5);
+            ExpectimaxSolver solver = new ExpectimaxSolver(pool, 4);
+
+            // 截止时间已过：返回一个合法移动，深度为0
+            ExpectimaxSolver.Result late = solver.solve(board.getGrid(), board.getRandom(), 3,
+                    System.nanoTime() - 1, new AtomicBoolean());
+            assertEquals(0, late.getDepth(), "超时时没有完整搜索的层");
+            assertFalse(late.isComplete());
+            int first = MoveGenerator.firstCell(late.getMove());
+            int second = MoveGenerator.secondCell(late.getMove(), 8);
+            assertTrue(MatchEngines.OPTIMIZED.isLegalMove(board.getGrid(), first / 8, first % 8, second / 8, second % 8),
+                    "超时时也应返回合法移动");
+
+            // 已取消：同样立即返回
+            ExpectimaxSolver.Result cancelled = solver.solve(board.getGrid(), board.getRandom(), 3,
+                    System.nanoTime() + NO_DEADLINE, new AtomicBoolean(true));
+            assertEquals(0, cancelled.getDepth(), "取消后没有完整搜索的层");
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void testLargeBoardSearch() {
+        ForkJoinPool single = new ForkJoinPool(1);
+        ForkJoinPool four = new ForkJoinPool(4);
+        try {
+            // 根移动分成多批执行，批次大小（线程数）不影响结果
+            Board medium = new Board(64, 64, 20, 11L, MatchEngines.OPTIMIZED, 5);
+            assertTrue(MoveGenerator.generate(medium.getGrid()).length > 16 * 4, "根移动应多于一批");
+            ExpectimaxSolver.Result a = solve(new ExpectimaxSolver(single, 2), medium, 1);
+            ExpectimaxSolver.Result b = solve(new ExpectimaxSolver(four, 2), medium, 1);
+            assertEquals(a.getMove(), b.getMove());
+            assertEquals(a.getExpectedScore(), b.getExpectedScore());
+
+            // 256x256的面板有上万个根移动：工作区按线程复用，在时间预算内返回合法移动而不是耗尽内存
+            Board large = new Board(256, 256, 20, 5L, MatchEngines.OPTIMIZED, 5);
+            assertTrue(MoveGenerator.generate(large.getGrid()).length > 5000);
+            long start = System.nanoTime();
+            ExpectimaxSolver.Result result = new ExpectimaxSolver(four, 3).solve(large.getGrid(), large.getRandom(), 3,
+                    start + TimeUnit.MILLISECONDS.toNanos(200), new AtomicBoolean());
+            assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(5), "超过时间预算后应尽快返回");
+            assertFalse(result.isComplete());
+            int first = MoveGenerator.firstCell(result.getMove());
+            int second = MoveGenerator.secondCell(result.getMove(), 256);
+            assertTrue(MatchEngines.OPTIMIZED.isLegalMove(large.getGrid(), first / 256, first % 256, second / 256, second % 256));
+        } finally {
+            single.shutdown();
+            four.shutdown();
+        }
+    }
+
+    private static ExpectimaxSolver.Result solve(ExpectimaxSolver solver, Board board, int depth) {
+        return solver.solve(board.getGrid(), board.getRandom(), depth, System.nanoTime() + NO_DEADLINE, new AtomicBoolean());
+    }
+}
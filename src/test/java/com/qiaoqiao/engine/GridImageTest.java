@@ -0,0 +1,49 @@
+// 面板分块快照测试类
+package com.qiaoqiao.engine;
+
+import com.qiaoqiao.model.game.Board;
+import com.qiaoqiao.model.game.BoardSnapshot;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class GridImageTest {
+
+    @Test
+    public void testMovesCopyOnlyChangedBlocks() {
+        // 128x128的面板分为16块：每步只复制被修改的块，其余块与上一个快照共享，内容始终与面板一致
+        Board board = new Board(128, 128, 100, 7L, MatchEngines.OPTIMIZED);
+        BoardGrid grid = board.getGrid();
+        int columns = grid.getColumns();
+        int[] moves = new int[MoveGenerator.maxMoves(grid)];
+        for (int n = 0; n < 20; n++) {
+            BoardSnapshot before = board.getSnapshot();
+            byte[] typesBefore = new byte[grid.getCellCount()];
+            byte[] effectsBefore = new byte[grid.getCellCount()];
+            grid.copyCells(typesBefore, effectsBefore);
+
+            int count = board.getMoveIndex().copyMoves(moves);
+            int first = MoveGenerator.firstCell(moves[n % count]);
+            int second = MoveGenerator.secondCell(moves[n % count], columns);
+            assertTrue(board.swapTiles(first / columns, first % columns, second / columns, second % columns));
+
+            GridImage previous = before.getImage();
+            GridImage image = board.getSnapshot().getImage();
+            int shared = 0;
+            for (int b = 0; b < image.getBlockCount(); b++) {
+                if (image.sharesBlock(previous, b)) {
+                    shared++;
+                }
+            }
+            assertTrue(shared > 0 && shared < image.getBlockCount(), "一步只应复制部分块: " + shared);
+            for (int index = 0; index < grid.getCellCount(); index++) {
+                assertEquals(grid.getType(index), image.getType(index));
+                assertEquals(grid.getEffect(index), image.getEffect(index));
+                assertEquals(grid.getId(index), image.getId(index));
+                assertEquals(typesBefore[index], previous.getType(index), "旧快照不应改变");
+                assertEquals(effectsBefore[index], previous.getEffect(index), "旧快照不应改变");
+            }
+            assertEquals(board.getStateHash(), image.toGrid(grid.getTypeCount()).getHash());
+        }
+    }
+}
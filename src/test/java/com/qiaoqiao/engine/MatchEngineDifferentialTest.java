@@ -0,0 +1,226 @@
+// 匹配引擎差分测试类
+package com.qiaoqiao.engine;
+
+import com.qiaoqiao.model.game.Board;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 在随机面板上同时运行参考实现和优化实现，逐项比较结果
+ * 覆盖位棋盘（不超过64格）和扁平数组两条路径
+ */
+public class MatchEngineDifferentialTest {
+
+    private static final MatchEngine REFERENCE = MatchEngines.REFERENCE;
+    private static final MatchEngine OPTIMIZED = MatchEngines.OPTIMIZED;
+
+    // 行数、列数
+    private static final int[][] SIZES = {
+            {8, 8}, {5, 7}, {3, 21}, {1, 64}, {2, 10}, {9, 9}, {16, 16}, {12, 30}
+    };
+
+    @Test
+    public void testRandomBoards() {
+        for (int[] size : SIZES) {
+            compareOnRandomBoards(OPTIMIZED, size[0], size[1], 200);
+        }
+    }
+
+    @Test
+    public void testParallelEngine() {
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            // 阈值设为1，中等面板也走分段并行的路径
+            MatchEngine parallel = new ParallelMatchEngine(pool, 1);
+            compareOnRandomBoards(parallel, 37, 45, 30);
+            compareOnRandomBoards(parallel, 64, 64, 10);
+            compareOnRandomBoards(parallel, 20, 130, 10);
+
+            // 分段并行下落和填充与顺序处理得到相同的对局
+            for (int size : new int[]{40, 256}) {
+                Board sequential = new Board(size, size, 100, size, OPTIMIZED);
+                Board banded = new Board(size, size, 100, size, parallel);
+                playSameMoves(sequential, banded, 20);
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private static void compareOnRandomBoards(MatchEngine engine, int rows, int columns, int rounds) {
+        SplittableRandom random = new SplittableRandom(20240101L);
+        for (int round = 0; round < rounds; round++) {
+            // 类型少时匹配和合法移动都很密集
+            int typeCount = 3 + random.nextInt(4);
+            BoardGrid grid = randomGrid(random, rows, columns, typeCount);
+            String label = rows + "x" + columns + " 第" + round + "轮";
+
+            assertEquals(REFERENCE.hasMatches(grid), engine.hasMatches(grid), label + " hasMatches");
+            assertSameMatches(engine, grid, false, label + " 全盘匹配");
+
+            // 随机交换几个格子产生脏行和脏列，合法移动索引只按变化的范围更新
+            LegalMoveIndex index = new LegalMoveIndex(grid, engine);
+            grid.clearDirty();
+            for (int n = random.nextInt(4); n >= 0; n--) {
+                int r = random.nextInt(rows);
+                int c = random.nextInt(columns);
+                grid.swap(r, c, random.nextInt(rows), random.nextInt(columns));
+            }
+            assertSameMatches(engine, grid, true, label + " 脏区域匹配");
+
+            assertSameMoves(engine, grid, random, label);
+            assertIndexMatches(index, grid, label);
+        }
+    }
+
+    @Test
+    public void testSameGameWithBothEngines() {
+        for (long seed = 1; seed <= 20; seed++) {
+            playSameMoves(new Board(8, 8, 30, seed, REFERENCE), new Board(8, 8, 30, seed, OPTIMIZED), 30);
+        }
+    }
+
+    // 两个相同种子的面板执行相同的移动序列，每一步后分数和面板都应一致
+    private static void playSameMoves(Board expected, Board actual, int moveCount) {
+        long seed = actual.getRandom().getSeed();
+        int columns = actual.getColumns();
+        int[] moves = new int[MoveGenerator.maxMoves(actual.getGrid())];
+        for (int n = 0; n < moveCount; n++) {
+            int count = OPTIMIZED.findPossibleMoves(actual.getGrid(), moves);
+            assertIndexMatches(actual.getMoveIndex(), actual.getGrid(), "种子" + seed + "第" + n + "步");
+            if (count == 0) {
+                expected.reshuffle();
+                actual.reshuffle();
+                continue;
+            }
+            int move = moves[(int) ((seed * 31 + n) % count)];
+            int first = MoveGenerator.firstCell(move);
+            int second = MoveGenerator.secondCell(move, columns);
+
+            assertTrue(expected.swapTiles(first / columns, first % columns, second / columns, second % columns));
+            assertTrue(actual.swapTiles(first / columns, first % columns, second / columns, second % columns));
+            assertEquals(expected.getScore(), actual.getScore(), "种子" + seed + "的分数应一致");
+            assertEquals(expected.getLastCascade().getDepth(), actual.getLastCascade().getDepth());
+            assertEquals(expected.getRandom().getDraws(), actual.getRandom().getDraws(), "种子" + seed + "的随机数位置应一致");
+            for (int i = 0; i < actual.getGrid().getCellCount(); i++) {
+                assertEquals(expected.getGrid().getType(i), actual.getGrid().getType(i), "种子" + seed + "的面板应一致");
+                assertEquals(expected.getGrid().getEffect(i), actual.getGrid().getEffect(i), "种子" + seed + "的特殊瓦片应一致");
+                assertEquals(expected.getGrid().getId(i), actual.getGrid().getId(i), "种子" + seed + "的瓦片编号应一致");
+            }
+            // 增量维护的哈希（包括并行下落各段累计的变化）应与从头计算的结果一致
+            assertEquals(actual.getGrid().computeHash(), actual.getStateHash(), "种子" + seed + "的哈希应与从头计算一致");
+            assertEquals(expected.getStateHash(), actual.getStateHash(), "种子" + seed + "的哈希应一致");
+        }
+        assertEquals(actual.getGrid().computeHash(), actual.getStateHash(), "重排后的哈希应与从头计算一致");
+    }
+
+    @Test
+    public void testTileIdsFollowDrops() {
+        // 第0列下面三格竖向三连，上面两格消除后应带着编号下落三行，其余列不受影响
+        byte[][] columnTypes = {{1, 2, 0, 0, 0}, {1, 2, 1, 2, 1}, {2, 1, 2, 1, 2}};
+        for (long seed = 1; seed <= 100; seed++) {
+            BoardGrid grid = new BoardGrid(5, 3, 3);
+            for (int j = 0; j < 3; j++) {
+                for (int i = 0; i < 5; i++) {
+                    grid.setType(i, j, columnTypes[j][i]);
+                }
+            }
+            grid.assignIds();
+            int[] before = new int[grid.getCellCount()];
+            grid.copyIds(before);
+
+            CascadeResult result = new CascadeResolver(grid, new GameRandom(seed), OPTIMIZED).resolve();
+            if (result.getDepth() != 1) {
+                continue;  // 新瓦片又产生了匹配，换一个种子
+            }
+            assertEquals(before[grid.index(1, 0)], grid.getId(grid.index(4, 0)));
+            assertEquals(before[grid.index(0, 0)], grid.getId(grid.index(3, 0)));
+            assertEquals(16, grid.getId(grid.index(0, 0)));
+            assertEquals(17, grid.getId(grid.index(1, 0)));
+            assertEquals(18, grid.getId(grid.index(2, 0)));
+            for (int index = 0; index < grid.getCellCount(); index++) {
+                if (index % 3 != 0) {
+                    assertEquals(before[index], grid.getId(index));
+                }
+            }
+            return;
+        }
+        fail("没有找到只有一步消除的种子");
+    }
+
+    @Test
+    public void testRunScore() {
+        assertEquals(30, MatchEngine.scoreRun(3));
+        assertEquals(80, MatchEngine.scoreRun(4));
+        assertEquals(150, MatchEngine.scoreRun(5));
+        assertEquals(180, MatchEngine.scoreRun(6));
+    }
+
+    private static void assertSameMatches(MatchEngine engine, BoardGrid grid, boolean dirtyOnly, String label) {
+        int words = (grid.getCellCount() + 63) >>> 6;
+        RunList expectedRuns = new RunList();
+        RunList actualRuns = new RunList();
+        long[] expectedCells = new long[words];
+        long[] actualCells = new long[words];
+
+        int expectedCount = REFERENCE.findMatches(grid, dirtyOnly, expectedRuns, expectedCells);
+        int actualCount = engine.findMatches(grid, dirtyOnly, actualRuns, actualCells);
+
+        assertEquals(expectedCount, actualCount, label + " 格子数");
+        assertArrayEquals(expectedCells, actualCells, label + " 格子");
+        assertEquals(expectedRuns.size(), actualRuns.size(), label + " 连线数");
+        for (int r = 0; r < expectedRuns.size(); r++) {
+            assertEquals(expectedRuns.getStart(r), actualRuns.getStart(r), label + " 连线起点");
+            assertEquals(expectedRuns.getLength(r), actualRuns.getLength(r), label + " 连线长度");
+            assertEquals(expectedRuns.isVertical(r), actualRuns.isVertical(r), label + " 连线方向");
+        }
+    }
+
+    // 增量维护的合法移动索引应与整盘枚举的结果一致
+    private static void assertIndexMatches(LegalMoveIndex index, BoardGrid grid, String label) {
+        int[] expected = new int[MoveGenerator.maxMoves(grid)];
+        int[] actual = new int[MoveGenerator.maxMoves(grid)];
+        int expectedCount = REFERENCE.findPossibleMoves(grid, expected);
+        assertEquals(expectedCount, index.count(), label + " 合法移动数");
+        int actualCount = index.copyMoves(actual);
+        assertArrayEquals(Arrays.copyOf(expected, expectedCount), Arrays.copyOf(actual, actualCount), label + " 索引中的移动");
+    }
+
+    private static void assertSameMoves(MatchEngine engine, BoardGrid grid, SplittableRandom random, String label) {
+        int rows = grid.getRows();
+        int columns = grid.getColumns();
+
+        assertEquals(REFERENCE.hasPossibleMoves(grid), engine.hasPossibleMoves(grid), label + " hasPossibleMoves");
+
+        int[] expected = new int[MoveGenerator.maxMoves(grid)];
+        int[] actual = new int[MoveGenerator.maxMoves(grid)];
+        int expectedCount = REFERENCE.findPossibleMoves(grid, expected);
+        int actualCount = engine.findPossibleMoves(grid, actual);
+        assertArrayEquals(Arrays.copyOf(expected, expectedCount), Arrays.copyOf(actual, actualCount), label + " 移动列表");
+
+        // 相邻、不相邻和越界的坐标
+        for (int n = 0; n < 50; n++) {
+            int r1 = random.nextInt(rows);
+            int c1 = random.nextInt(columns);
+            int r2 = r1 + random.nextInt(5) - 2;
+            int c2 = c1 + random.nextInt(5) - 2;
+            assertEquals(REFERENCE.isLegalMove(grid, r1, c1, r2, c2), engine.isLegalMove(grid, r1, c1, r2, c2),
+                    label + " isLegalMove(" + r1 + "," + c1 + "," + r2 + "," + c2 + ")");
+        }
+    }
+
+    // 随机面板，少量格子为空
+    private static BoardGrid randomGrid(SplittableRandom random, int rows, int columns, int typeCount) {
+        BoardGrid grid = new BoardGrid(rows, columns, typeCount);
+        for (int index = 0; index < grid.getCellCount(); index++) {
+            byte type = random.nextInt(20) == 0 ? BoardGrid.EMPTY : (byte) random.nextInt(typeCount);
+            grid.setType(index, type);
+        }
+        return grid;
+    }
+}
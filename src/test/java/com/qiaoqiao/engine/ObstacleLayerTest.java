@@ -0,0 +1,175 @@
+// 障碍物位平面测试类
+package com.qiaoqiao.engine;
+
+import com.qiaoqiao.model.game.Board;
+import com.qiaoqiao.model.game.Tile;
+import com.qiaoqiao.model.game.TilePalette;
+import com.qiaoqiao.model.game.TileTypeRegistry;
+import com.qiaoqiao.util.Constants;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ObstacleLayerTest {
+
+    @Test
+    public void testIceLocksAndBlockers() {
+        // 第0列下面三格竖向三连：第2行一层冰，第3行锁，第4行两层冰；第4行第1列是与之相邻的石块
+        String[] layout = {"...", "...", "i..", "L..", "I#."};
+        byte[][] columnTypes = {{1, 2, 0, 0, 0}, {1, 2, 1, 2, BoardGrid.EMPTY}, {2, 1, 2, 1, 2}};
+        for (long seed = 1; seed <= 100; seed++) {
+            BoardGrid grid = grid(layout, columnTypes);
+            int lockedId = grid.getId(grid.index(3, 0));
+
+            CascadeResult result = new CascadeResolver(grid, new GameRandom(seed), MatchEngines.OPTIMIZED).resolve();
+            if (result.getDepth() != 1) {
+                continue;  // 新瓦片又产生了匹配，换一个种子
+            }
+            ObstacleLayer obstacles = grid.getObstacles();
+            assertEquals(4, result.getObstacleHits(), "解锁、两处冰层和一个石块");
+            assertEquals(3 * Constants.SCORE_PER_TILE + 4 * Constants.SCORE_PER_TILE, result.getTotalScore());
+            assertEquals(lockedId, grid.getId(grid.index(4, 0)), "解锁的瓦片没有被消除，下落到最底部");
+            assertEquals(ObstacleLayer.FLAG_ICE, obstacles.getFlags(grid.index(4, 0)), "两层冰剩一层");
+            assertEquals(0, obstacles.getFlags(grid.index(2, 0)), "一层冰化掉");
+            assertEquals(0, obstacles.getFlags(grid.index(4, 1)), "相邻的石块碎掉");
+            assertFalse(grid.isEmpty(grid.index(4, 1)), "碎掉的石块格子被填充");
+            assertEquals(1, obstacles.remaining());
+            assertEquals(grid.computeHash(), grid.getHash(), "增量维护的哈希应包括障碍物");
+            return;
+        }
+        fail("没有找到只有一步消除的种子");
+    }
+
+    @Test
+    public void testTilesFallPastHoles() {
+        // 第0列：第0行一个瓦片，第1行是洞，下面三格竖向三连
+        String[] layout = {"...", "x..", "...", "...", "..."};
+        byte[][] columnTypes = {{1, BoardGrid.EMPTY, 0, 0, 0}, {1, 2, 1, 2, 1}, {2, 1, 2, 1, 2}};
+        for (long seed = 1; seed <= 100; seed++) {
+            BoardGrid grid = grid(layout, columnTypes);
+            int topId = grid.getId(grid.index(0, 0));
+
+            CascadeResult result = new CascadeResolver(grid, new GameRandom(seed), MatchEngines.OPTIMIZED).resolve();
+            if (result.getDepth() != 1) {
+                continue;
+            }
+            assertEquals(topId, grid.getId(grid.index(4, 0)), "瓦片越过洞落到最底部");
+            assertEquals(1, result.getDropEnd(0));
+            assertEquals(4, result.getDropDistance(0));
+            assertEquals(3, result.getSpawnEnd(0), "只填充不是洞的三个空位");
+            assertTrue(grid.isEmpty(grid.index(1, 0)), "洞保持为空");
+            return;
+        }
+        fail("没有找到只有一步消除的种子");
+    }
+
+    @Test
+    public void testChallengeGames() {
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            MatchEngine parallel = new ParallelMatchEngine(pool, 1);
+            String[] layout = new String[40];
+            for (int i = 0; i < layout.length; i++) {
+                layout[i] = (Constants.CHALLENGE_LAYOUT[i % 8] + Constants.CHALLENGE_LAYOUT[(i + 3) % 8]).repeat(5);
+            }
+            TilePalette palette = TileTypeRegistry.defaults().getDefaultPalette();
+            for (long seed = 1; seed <= 5; seed++) {
+                // 两种引擎、顺序和分段并行的下落应得到相同的对局
+                assertEquals(playChallenge(new Board(8, 8, 40, seed, MatchEngines.REFERENCE, palette, Constants.CHALLENGE_LAYOUT)),
+                        playChallenge(new Board(8, 8, 40, seed, MatchEngines.OPTIMIZED, palette, Constants.CHALLENGE_LAYOUT)));
+                assertEquals(playChallenge(new Board(40, 80, 40, seed, MatchEngines.OPTIMIZED, palette.prefix(4), layout)),
+                        playChallenge(new Board(40, 80, 40, seed, parallel, palette.prefix(4), layout)));
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void testClearingObstaclesWinsButHolesAlone() {
+        // 只有洞的布局没有过关条件，不会一开始就结束
+        String[] holes = {"x......x", "........", "........", "........", "........", "........", "........", "x......x"};
+        Board board = new Board(8, 8, 40, 1L, MatchEngines.OPTIMIZED, TileTypeRegistry.defaults().getDefaultPalette(), holes);
+        assertNull(board.outcome());
+        assertFalse(board.getSnapshot().isGameOver());
+
+        // 唯一的冰层被第0列的竖向三连消除：过关，过关条件在编码和恢复后保留
+        BoardGrid grid = grid(new String[]{"...", "...", "i..", "...", "..."}, new byte[][]{{1, 2, 0, 0, 0}, {1, 2, 1, 2, 1}, {2, 1, 2, 1, 2}});
+        assertFalse(grid.getObstacles().isCleared());
+        new CascadeResolver(grid, new GameRandom(1L), MatchEngines.OPTIMIZED).resolve();
+        assertTrue(grid.getObstacles().isCleared(), "需要清除的障碍物全部清除即过关");
+        ByteBuffer buffer = ByteBuffer.allocate(BoardCodec.maxBytes(grid));
+        BoardCodec.write(grid, buffer);
+        buffer.flip();
+        assertTrue(BoardCodec.read(buffer).getObstacles().isCleared());
+    }
+
+    @Test
+    public void testEmptyCellsSerializeAsTiles() {
+        // 石块和洞的格子输出为对应类型的瓦片，客户端不会读到null
+        Board board = new Board(8, 8, 40, 1L, MatchEngines.OPTIMIZED,
+                TileTypeRegistry.defaults().getDefaultPalette(), Constants.CHALLENGE_LAYOUT);
+        for (Tile[][] tiles : new Tile[][][]{board.getTiles(), board.getSnapshot().getTiles()}) {
+            assertEquals(Tile.TYPE_HOLE, tiles[0][0].getType());
+            assertEquals(Tile.TYPE_BLOCKER, tiles[1][2].getType());
+            assertEquals(-1, tiles[1][2].getId());
+            assertNull(tiles[1][2].getImageUrl());
+            for (Tile[] row : tiles) {
+                for (Tile tile : row) {
+                    assertNotNull(tile, "每个格子都应输出瓦片对象");
+                }
+            }
+        }
+    }
+
+    // 按顺序走合法移动，每一步后检查锁、石块、洞和填充的不变量，返回最后的面板哈希
+    private static long playChallenge(Board board) {
+        BoardGrid grid = board.getGrid();
+        int columns = grid.getColumns();
+        int[] moves = new int[MoveGenerator.maxMoves(grid)];
+        for (int n = 0; n < 40 && !board.isGameOver(); n++) {
+            int count = board.getMoveIndex().copyMoves(moves);
+            assertEquals(board.getMatchEngine().findPossibleMoves(grid, new int[moves.length]), count);
+            if (count == 0) {
+                board.reshuffle();
+                continue;
+            }
+            int move = moves[n % count];
+            int first = MoveGenerator.firstCell(move);
+            int second = MoveGenerator.secondCell(move, columns);
+            assertFalse(grid.isLocked(first) || grid.isLocked(second), "锁住的瓦片不能交换");
+            assertTrue(board.swapTiles(first / columns, first % columns, second / columns, second % columns));
+
+            for (int index = 0; index < grid.getCellCount(); index++) {
+                assertEquals(grid.isBlocked(index), grid.isEmpty(index), "只有石块和洞是空格子");
+            }
+            assertFalse(board.getMatchEngine().hasMatches(grid), "连锁结束后不应有匹配");
+            assertEquals(grid.computeHash(), board.getStateHash(), "增量维护的哈希应包括障碍物");
+        }
+        for (int index = 0; index < grid.getCellCount(); index++) {
+            if (grid.isLocked(index)) {
+                int row = index / columns;
+                int col = index % columns;
+                assertFalse(board.getMatchEngine().isLegalMove(grid, row, col, row, col + 1));
+                assertFalse(board.getMatchEngine().isLegalMove(grid, row, col, row + 1, col));
+            }
+        }
+        return board.getStateHash();
+    }
+
+    // 按布局和每列的类型构造面板
+    private static BoardGrid grid(String[] layout, byte[][] columnTypes) {
+        BoardGrid grid = new BoardGrid(layout.length, layout[0].length(), 3);
+        grid.setObstacles(layout);
+        for (int j = 0; j < columnTypes.length; j++) {
+            for (int i = 0; i < columnTypes[j].length; i++) {
+                grid.setType(i, j, columnTypes[j][i]);
+            }
+        }
+        grid.assignIds();
+        return grid;
+    }
+}
@@ -0,0 +1,107 @@
+// 特殊瓦片处理器测试类
+package com.qiaoqiao.engine;
+
+import com.qiaoqiao.util.Constants;
+import com.qiaoqiao.util.GameLogic;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SpecialResolverTest {
+
+    @Test
+    public void testChainDetonation() {
+        // 行消除 -> 同一行的列消除 -> 同一列的炸弹
+        BoardGrid grid = checkerGrid(7, 7);
+        grid.setEffect(grid.index(3, 0), BoardGrid.EFFECT_ROW_CLEAR);
+        grid.setEffect(grid.index(3, 5), BoardGrid.EFFECT_COLUMN_CLEAR);
+        grid.setEffect(grid.index(6, 5), BoardGrid.EFFECT_BOMB);
+
+        long[] cleared = new long[1];
+        cleared[0] |= 1L << grid.index(3, 0);
+        SpecialResolver resolver = new SpecialResolver(grid);
+        CascadeResult result = new CascadeResult();
+        int added = resolver.detonate(cleared, result);
+
+        long expected = 0L;
+        for (int j = 0; j < 7; j++) {
+            expected |= 1L << grid.index(3, j);
+        }
+        for (int i = 0; i < 7; i++) {
+            expected |= 1L << grid.index(i, 5);
+        }
+        for (int i = 5; i <= 6; i++) {
+            for (int j = 4; j <= 6; j++) {
+                expected |= 1L << grid.index(i, j);
+            }
+        }
+        assertEquals(expected, cleared[0], "连锁引爆的区域应为整行、整列和3x3的并集");
+        assertEquals(Long.bitCount(expected) - 1, added, "额外消除的格子数不含原来的格子");
+        result.endStep(0);
+        assertEquals(3, result.getDetonatedEnd(0), "三个特殊瓦片都应引爆");
+    }
+
+    @Test
+    public void testColorBombOnLargeBoard() {
+        BoardGrid grid = checkerGrid(12, 12);
+        int bomb = grid.index(5, 5);
+        grid.setEffect(bomb, BoardGrid.EFFECT_COLOR_BOMB);
+        byte type = grid.getType(bomb);
+
+        long[] cleared = new long[(grid.getCellCount() + 63) >>> 6];
+        cleared[bomb >>> 6] |= 1L << bomb;
+        new SpecialResolver(grid).detonate(cleared, new CascadeResult());
+
+        for (int index = 0; index < grid.getCellCount(); index++) {
+            boolean isCleared = (cleared[index >>> 6] & (1L << index)) != 0;
+            assertEquals(grid.getType(index) == type, isCleared, "彩色炸弹应清除所有同类型的格子");
+        }
+    }
+
+    @Test
+    public void testSpecialTileHelperFollowsRunOrientation() {
+        // GameLogic.createSpecialTile与连锁处理使用同一规则：4连按方向生成横向或纵向消除
+        assertEquals(Constants.EFFECT_ROW_CLEAR, GameLogic.createSpecialTile(1, "红色", 4, false).getSpecialEffect());
+        assertEquals(Constants.EFFECT_COLUMN_CLEAR, GameLogic.createSpecialTile(1, "红色", 4, true).getSpecialEffect());
+        assertEquals(Constants.EFFECT_COLOR_BOMB, GameLogic.createSpecialTile(1, "红色", 5, true).getSpecialEffect());
+        assertEquals(Constants.EFFECT_BOMB, GameLogic.createSpecialTile(1, "红色", 6, false).getSpecialEffect());
+        assertNull(GameLogic.createSpecialTile(1, "红色", 3, false).getSpecialEffect());
+    }
+
+    @Test
+    public void testCreatedSpecialsSurviveTheirStep() {
+        BoardGrid grid = checkerGrid(6, 6);
+        for (int j = 0; j < 4; j++) {
+            grid.setType(grid.index(2, j), (byte) 4);
+        }
+        for (int i = 0; i < 5; i++) {
+            grid.setType(grid.index(i, 5), (byte) 5);
+        }
+
+        RunList runs = new RunList();
+        long[] cleared = new long[1];
+        MatchEngines.OPTIMIZED.findMatches(grid, false, runs, cleared);
+        SpecialResolver resolver = new SpecialResolver(grid);
+        CascadeResult result = new CascadeResult();
+        resolver.reserveCreated(runs, cleared);
+        resolver.detonate(cleared, result);
+        resolver.applyCreated(result);
+
+        assertEquals(BoardGrid.EFFECT_ROW_CLEAR, grid.getEffect(2, 0), "水平4连生成行消除");
+        assertEquals(BoardGrid.EFFECT_COLOR_BOMB, grid.getEffect(0, 5), "5连生成彩色炸弹");
+        assertEquals(0L, cleared[0] & (1L << grid.index(2, 0)), "新生成的特殊瓦片本步不消除");
+        assertEquals(0L, cleared[0] & (1L << grid.index(0, 5)), "新生成的特殊瓦片本步不消除");
+        assertEquals(3 + 4, Long.bitCount(cleared[0]));
+    }
+
+    // 不含任何三连的面板，类型按(i + 2j) % 3排列
+    private static BoardGrid checkerGrid(int rows, int columns) {
+        BoardGrid grid = new BoardGrid(rows, columns, 6);
+        for (int i = 0; i < rows; i++) {
+            for (int j = 0; j < columns; j++) {
+                grid.setType(i, j, (byte) ((i + 2 * j) % 3));
+            }
+        }
+        return grid;
+    }
+}
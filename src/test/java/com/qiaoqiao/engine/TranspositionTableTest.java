@@ -0,0 +1,80 @@
+// 置换表测试类
+package com.qiaoqiao.engine;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TranspositionTableTest {
+
+    @Test
+    public void testHashFollowsBoardChanges() {
+        BoardGrid grid = new BoardGrid(6, 7, 5);
+        GameRandom random = new GameRandom(3L);
+        BoardGenerator.generate(grid, random);
+        long initial = grid.getHash();
+        assertEquals(grid.computeHash(), initial, "生成后的哈希应与从头计算一致");
+
+        // 交换两次回到原状态，哈希也回到原值
+        grid.swap(2, 3, 2, 4);
+        assertEquals(grid.computeHash(), grid.getHash());
+        grid.swap(2, 3, 2, 4);
+        assertEquals(initial, grid.getHash(), "状态相同则哈希相同");
+
+        grid.setEffect(grid.index(1, 1), BoardGrid.EFFECT_BOMB);
+        assertNotEquals(initial, grid.getHash(), "特殊效果应影响哈希");
+        grid.clear(grid.index(1, 1));
+        grid.move(grid.index(0, 1), grid.index(1, 1));
+        assertEquals(grid.computeHash(), grid.getHash(), "消除和移动后的哈希应与从头计算一致");
+
+        BoardGrid copy = grid.copy();
+        assertEquals(grid.getHash(), copy.getHash(), "复制的面板哈希相同");
+        assertNotEquals(new BoardGrid(6, 7, 5).getHash(), new BoardGrid(7, 6, 5).getHash(), "尺寸不同的空面板哈希不同");
+    }
+
+    @Test
+    public void testReplacementPolicy() {
+        TranspositionTable table = new TranspositionTable(2);
+        // 容量为2时所有哈希都落在同一个桶里
+        table.put(1L, 3, 100L);
+        table.put(2L, 1, 200L);
+        assertEquals(100L, table.get(1L, 3), "深度更高的结果保留在深度优先槽中");
+        assertEquals(200L, table.get(2L, 1), "较浅的结果写入总是替换的槽");
+        assertEquals(TranspositionTable.MISS, table.get(1L, 4), "深度不够时不命中");
+
+        table.put(3L, 0, 300L);
+        assertEquals(TranspositionTable.MISS, table.get(2L, 0), "总是替换的槽被新结果覆盖");
+        assertEquals(100L, table.get(1L, 0));
+
+        // 新的一代之后，深度优先槽可以被较浅的结果替换
+        table.newGeneration();
+        table.put(4L, 0, 400L);
+        assertEquals(400L, table.get(4L, 0));
+        assertEquals(TranspositionTable.MISS, table.get(1L, 0));
+
+        table.clear();
+        assertEquals(TranspositionTable.MISS, table.get(4L, 0));
+    }
+
+    @Test
+    public void testDeepEntrySurvivesWithinGeneration() {
+        // 容量128：每两次搜索一代。同一代中下一次搜索写入的浅结果不挤掉深结果，进入下一代后才可以替换
+        TranspositionTable table = new TranspositionTable(128);
+        assertEquals(2, table.getSearchesPerGeneration());
+        long deep = 1L;
+        long shallow = 1L + 64;      // 64个桶，与deep落在同一个桶
+        long later = 1L + 128;
+        table.newSearch();
+        table.newSearch();
+        table.put(deep, 3, 100L);
+        table.newSearch();
+        table.put(shallow, 1, 200L);
+        assertEquals(100L, table.get(deep, 3), "同一代内深结果保留在深度优先槽中");
+        assertEquals(200L, table.get(shallow, 1));
+
+        table.newSearch();
+        table.put(later, 1, 300L);
+        assertEquals(TranspositionTable.MISS, table.get(deep, 0), "旧的代的深结果可以被替换");
+        assertEquals(300L, table.get(later, 1));
+    }
+}
@@ -1,14 +1,39 @@
 // 游戏服务测试类
 package com.qiaoqiao.service;
 
+import com.qiaoqiao.config.EngineProperties;
+import com.qiaoqiao.config.JournalProperties;
+import com.qiaoqiao.config.SessionProperties;
+import com.qiaoqiao.engine.BoardGrid;
 import com.qiaoqiao.model.game.Board;
+import com.qiaoqiao.model.game.BoardSnapshot;
 import com.qiaoqiao.model.game.GameSession;
 import com.qiaoqiao.model.game.GameState;
+import com.qiaoqiao.model.game.Move;
+import com.qiaoqiao.model.game.Tile;
+import com.qiaoqiao.model.game.TileTypeRegistry;
+import com.qiaoqiao.util.GameLogic;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
 
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
 import static org.junit.jupiter.api.Assertions.*;
 
 @SpringBootTest
@@ -50,6 +75,48 @@ public class GameServiceTest {
         assertEquals(userId, userGame.getUserId(), "用户ID应匹配");
     }
 
+    @Test
+    public void testClassicPaletteFromConfiguration() {
+        // 经典模式只使用application.yml中game.palettes.classic列出的五种类型
+        Board board = gameService.createNewGame().getBoard();
+        assertEquals(5, board.getPalette().size(), "经典模式应使用5种瓦片类型");
+
+        Tile[][] tiles = board.getTiles();
+        Tile first = tiles[0][0];
+        assertEquals("/images/tiles/" + first.getType() + ".png", first.getImageUrl(), "图片URL应与类型对应");
+        // 相同类型的瓦片共享注册表中的同一个字符串
+        for (Tile[] row : tiles) {
+            for (Tile tile : row) {
+                if (tile.getType().equals(first.getType())) {
+                    assertSame(first.getImageUrl(), tile.getImageUrl(), "图片URL应来自同一个类型对象");
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testSnapshotsAreImmutable() {
+        // 移动之后发布新版本的快照，之前取得的快照保持不变
+        Board board = gameSession.getBoard();
+        BoardSnapshot before = board.getSnapshot();
+        Tile[][] tilesBefore = before.getTiles();
+        assertEquals(board.getStateHash(), before.getStateHash());
+        assertEquals(before.getStateHash(), before.toGrid().getHash(), "快照重建的网格应与快照一致");
+
+        List<Move> moves = gameService.getPossibleMoves(gameSession);
+        assertFalse(moves.isEmpty(), "新游戏应至少有一个合法移动");
+        Move move = moves.get(0);
+        assertTrue(gameService.makeMove(gameSession, move.getRow1(), move.getCol1(), move.getRow2(), move.getCol2()));
+
+        BoardSnapshot after = board.getSnapshot();
+        assertTrue(after.getVersion() > before.getVersion(), "移动后版本号应增加");
+        assertEquals(board.getScore(), after.getScore());
+        assertEquals(board.getLastCascade().getTotalScore(), after.getCascade().getTotalScore());
+        assertEquals(before.getMovesLeft() - 1, after.getMovesLeft());
+        assertEquals(20, before.getMovesLeft(), "旧快照的移动次数不应改变");
+        assertArrayEquals(tilesBefore[0], before.getTiles()[0], "旧快照的面板不应改变");
+    }
+
     @Test
     public void testPerformValidMove() {
         // 设置已知可以匹配的瓦片
@@ -63,11 +130,7 @@ public class GameServiceTest {
         for (int i = 0; i < board.getRows() && !foundMove; i++) {
             for (int j = 0; j < board.getColumns() - 1 && !foundMove; j++) {
                 // 临时交换相邻的瓦片看是否形成匹配
-                String type1 = board.getTiles()[i][j].getType();
-                String type2 = board.getTiles()[i][j+1].getType();
-
-                board.getTiles()[i][j].setType(type2);
-                board.getTiles()[i][j+1].setType(type1);
+                board.getGrid().swap(i, j, i, j + 1);
 
                 if (hasPossibleMatch(board)) {
                     row1 = i;
@@ -78,8 +141,7 @@ public class GameServiceTest {
                 }
 
                 // 恢复原状
-                board.getTiles()[i][j].setType(type1);
-                board.getTiles()[i][j+1].setType(type2);
+                board.getGrid().swap(i, j, i, j + 1);
             }
         }
 
@@ -111,18 +173,18 @@ public class GameServiceTest {
         int row2 = 0, col2 = 1;
 
         // 确保这两个瓦片不会形成匹配
-        String type1 = board.getTiles()[row1][col1].getType();
-        String type2 = board.getTiles()[row2][col2].getType();
+        byte type1 = board.getGrid().getType(row1, col1);
+        byte type2 = board.getGrid().getType(row2, col2);
 
         // 如果类型相同，尝试找到不同类型的瓦片
-        if (type1.equals(type2)) {
+        if (type1 == type2) {
             boolean foundDifferent = false;
             for (int i = 0; i < board.getRows() && !foundDifferent; i++) {
                 for (int j = 0; j < board.getColumns() - 1 && !foundDifferent; j++) {
-                    String typeA = board.getTiles()[i][j].getType();
-                    String typeB = board.getTiles()[i][j+1].getType();
+                    byte typeA = board.getGrid().getType(i, j);
+                    byte typeB = board.getGrid().getType(i, j + 1);
 
-                    if (!typeA.equals(typeB)) {
+                    if (typeA != typeB) {
                         row1 = i;
                         col1 = j;
                         row2 = i;
@@ -134,17 +196,12 @@ public class GameServiceTest {
         }
 
         // 临时交换并确认不会形成匹配
-        String originalType1 = board.getTiles()[row1][col1].getType();
-        String originalType2 = board.getTiles()[row2][col2].getType();
-
-        board.getTiles()[row1][col1].setType(originalType2);
-        board.getTiles()[row2][col2].setType(originalType1);
+        board.getGrid().swap(row1, col1, row2, col2);
 
         boolean wouldMatch = hasPossibleMatch(board);
 
         // 恢复原状
-        board.getTiles()[row1][col1].setType(originalType1);
-        board.getTiles()[row2][col2].setType(originalType2);
+        board.getGrid().swap(row1, col1, row2, col2);
 
         if (!wouldMatch) {
             int initialScore = board.getScore();
@@ -174,24 +231,18 @@ public class GameServiceTest {
         for (int i = 0; i < board.getRows() && !foundMove; i++) {
             for (int j = 0; j < board.getColumns() - 1 && !foundMove; j++) {
                 // 临时交换相邻的瓦片看是否形成匹配
-                String type1 = board.getTiles()[i][j].getType();
-                String type2 = board.getTiles()[i][j+1].getType();
-
-                board.getTiles()[i][j].setType(type2);
-                board.getTiles()[i][j+1].setType(type1);
+                board.getGrid().swap(i, j, i, j + 1);
 
                 if (hasPossibleMatch(board)) {
                     // 恢复原状
-                    board.getTiles()[i][j].setType(type1);
-                    board.getTiles()[i][j+1].setType(type2);
+                    board.getGrid().swap(i, j, i, j + 1);
 
                     // 执行移动
                     gameService.makeMove(gameSession, i, j, i, j+1);
                     foundMove = true;
                 } else {
                     // 恢复原状
-                    board.getTiles()[i][j].setType(type1);
-                    board.getTiles()[i][j+1].setType(type2);
+                    board.getGrid().swap(i, j, i, j + 1);
                 }
             }
         }
@@ -206,16 +257,362 @@ public class GameServiceTest {
         }
     }
 
+    @Test
+    public void testSameSeedReproducesGame() {
+        // 相同种子创建的两局游戏面板应完全一致
+        GameSession game1 = gameService.createNewGameWithSeed(null, 20240601L);
+        GameSession game2 = gameService.createNewGameWithSeed(null, 20240601L);
+
+        assertEquals(20240601L, game1.getSeed(), "会话应记录种子");
+        assertBoardsEqual(game1.getBoard(), game2.getBoard());
+
+        // 执行相同的移动后，连锁填充的新瓦片也应一致
+        List<Move> moves = gameService.getPossibleMoves(game1);
+        if (!moves.isEmpty()) {
+            Move move = moves.get(0);
+            assertTrue(gameService.makeMove(game1, move.getRow1(), move.getCol1(), move.getRow2(), move.getCol2()));
+            assertTrue(gameService.makeMove(game2, move.getRow1(), move.getCol1(), move.getRow2(), move.getCol2()));
+            assertBoardsEqual(game1.getBoard(), game2.getBoard());
+            assertEquals(game1.getBoard().getScore(), game2.getBoard().getScore(), "分数应一致");
+        }
+    }
+
+    @Test
+    public void testReshufflePreservesTiles() {
+        // 重排应保留瓦片类型数量和特殊瓦片，且没有匹配、至少有一个合法移动
+        Board board = gameSession.getBoard();
+        BoardGrid grid = board.getGrid();
+        grid.setEffect(0, BoardGrid.EFFECT_BOMB);
+        int[] before = countTiles(grid);
+
+        GameLogic.shuffleBoard(board);
+
+        assertArrayEquals(before, countTiles(grid), "重排后各类瓦片数量应保持不变");
+        assertFalse(board.hasMatches(), "重排后不应有匹配");
+        assertTrue(gameService.hasPossibleMoves(gameSession), "重排后应至少有一个合法移动");
+    }
+
+    @Test
+    public void testReshuffleKeepsTileIds() {
+        // 瓦片的编号随瓦片移动：重排前后每个编号对应的类型和效果不变，编号不增不减
+        Board board = gameSession.getBoard();
+        BoardGrid grid = board.getGrid();
+        grid.setEffect(0, BoardGrid.EFFECT_BOMB);
+        Map<Integer, Integer> before = tilesById(grid);
+
+        GameLogic.shuffleBoard(board);
+
+        assertEquals(before, tilesById(grid), "重排后编号到类型的对应应保持不变");
+    }
+
+    @Test
+    public void testIdleAndFinishedSessionsExpire() {
+        // 独立的服务实例：空闲60秒、结束后10秒过期，按显式时间推进时间轮
+        GameService service = standaloneService(new JournalProperties());
+        try {
+            long start = System.currentTimeMillis();
+            GameSession playing = service.createNewGame();
+            GameSession finished = service.createNewGame();
+            finished.setState(GameState.GAME_OVER);
+            assertEquals(2, service.getSessionCount());
+
+            service.evictExpiredSessions(start + 12_000);
+            assertNull(service.getGameSessionById(finished.getId()), "结束的会话超过10秒应被移除");
+            assertSame(playing, service.getGameSessionById(playing.getId()), "进行中的会话还没有空闲60秒");
+
+            // 访问过的会话从最后一次访问开始重新计时
+            playing.touch(start + 50_000);
+            service.evictExpiredSessions(start + 100_000);
+            assertEquals(1, service.getSessionCount(), "最后一次访问后还没有空闲60秒");
+            service.evictExpiredSessions(start + 125_000);
+            assertEquals(0, service.getSessionCount(), "空闲超过60秒应被移除");
+        } finally {
+            service.shutdown();
+        }
+    }
+
+    @Test
+    public void testConcurrentMovesAreSerialized() throws Exception {
+        // 8个线程同时对同一会话提交移动：每个成功的移动恰好扣一次移动次数，任务之间不重叠
+        gameSession.getBoard().setMovesLeft(1000);
+        AtomicInteger inFlight = new AtomicInteger();
+        AtomicInteger overlaps = new AtomicInteger();
+        int[] counter = new int[1];
+        ExecutorService callers = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<List<CompletableFuture<BoardSnapshot>>>> batches = new ArrayList<>();
+            for (int t = 0; t < 8; t++) {
+                int first = t;
+                batches.add(callers.submit(() -> {
+                    List<CompletableFuture<BoardSnapshot>> moves = new ArrayList<>();
+                    for (int n = first; n < 400; n += 8) {
+                        int row = (n / 7) % 8;
+                        int col = n % 7;
+                        moves.add(gameService.submitMove(gameSession, row, col, row, col + 1));
+                        gameService.submit(gameSession, () -> {
+                            if (inFlight.incrementAndGet() != 1) {
+                                overlaps.incrementAndGet();
+                            }
+                            counter[0]++;
+                            return inFlight.decrementAndGet();
+                        });
+                    }
+                    return moves;
+                }));
+            }
+
+            int succeeded = 0;
+            for (Future<List<CompletableFuture<BoardSnapshot>>> batch : batches) {
+                for (CompletableFuture<BoardSnapshot> move : batch.get()) {
+                    if (move.join() != null) {
+                        succeeded++;
+                    }
+                }
+            }
+            // 邮箱按提交顺序执行，最后提交的任务完成时之前的任务都已完成
+            assertEquals(1000 - succeeded, GameService.await(
+                    gameService.submit(gameSession, () -> gameSession.getBoard().getMovesLeft())), "每个成功的移动扣一次移动次数");
+            assertEquals(400, counter[0]);
+            assertEquals(0, overlaps.get(), "同一会话的任务不应同时执行");
+        } finally {
+            callers.shutdown();
+        }
+    }
+
+    @Test
+    public void testHandOffSendsOutsideMailbox() throws Exception {
+        // 转移的发送由存储异步完成：发送期间邮箱线程（只有1个）仍处理其他会话，同一会话的移动等发送结束
+        List<String> moved = new ArrayList<>();
+        Map<String, CompletableFuture<Void>> sends = new ConcurrentHashMap<>();
+        LocalGameSessionStore store = new LocalGameSessionStore() {
+            @Override
+            public boolean owns(String gameId) {
+                return !moved.contains(gameId);
+            }
+
+            @Override
+            public CompletableFuture<Void> transfer(String gameId, byte[] image) {
+                return sends.computeIfAbsent(gameId, id -> new CompletableFuture<>());
+            }
+        };
+        SessionProperties sessions = new SessionProperties();
+        sessions.setParallelism(1);
+        sessions.setPassivateAfterSeconds(0);
+        GameService service = new GameService(engineProperties(), TileTypeRegistry.defaults(), sessions, new JournalProperties(), store);
+        try {
+            GameSession leaving = service.createNewGame();
+            GameSession failing = service.createNewGameWithSeed(null, 20240801L);
+            GameSession reference = service.createNewGameWithSeed(null, 20240801L);
+            GameSession staying = service.createNewGame();
+            moved.add(leaving.getId());
+            moved.add(failing.getId());
+            CompletableFuture<Integer> rebalance = service.rebalance();
+            while (sends.size() < 2) {
+                Thread.sleep(1);
+            }
+
+            Move move = service.getPossibleMoves(staying).get(0);
+            assertTrue(service.makeMove(staying, move.getRow1(), move.getCol1(), move.getRow2(), move.getCol2()), "发送期间其他会话不受影响");
+            Move leavingMove = service.getPossibleMoves(leaving).get(0);
+            CompletableFuture<BoardSnapshot> queued = service.submitMove(leaving,
+                    leavingMove.getRow1(), leavingMove.getCol1(), leavingMove.getRow2(), leavingMove.getCol2());
+            // 发送失败的会话上连续提交三步（在相同种子的参照局上依次走出），每一步都依赖前一步的结果
+            List<CompletableFuture<BoardSnapshot>> retried = new ArrayList<>();
+            for (int n = 0; n < 3; n++) {
+                Move next = service.getPossibleMoves(reference).get(0);
+                assertTrue(service.makeMove(reference, next.getRow1(), next.getCol1(), next.getRow2(), next.getCol2()));
+                retried.add(service.submitMove(failing, next.getRow1(), next.getCol1(), next.getRow2(), next.getCol2()));
+            }
+            Thread.sleep(50);
+            assertFalse(queued.isDone() || retried.get(0).isDone() || rebalance.isDone(), "移动应等待发送结束");
+
+            // 发送成功的会话移除，之后的移动由调用方转发；发送失败的会话留在本节点，移动在本节点执行
+            sends.get(leaving.getId()).complete(null);
+            sends.get(failing.getId()).completeExceptionally(new IllegalStateException("连接失败"));
+            assertEquals(1, rebalance.get(5, TimeUnit.SECONDS));
+            assertTrue(leaving.isTransferred());
+            assertNull(service.getGameSessionById(leaving.getId()));
+            assertThrows(ExecutionException.class, () -> queued.get(5, TimeUnit.SECONDS));
+            for (CompletableFuture<BoardSnapshot> snapshot : retried) {
+                assertNotNull(snapshot.get(5, TimeUnit.SECONDS), "发送失败后移动应按提交顺序在本节点执行");
+            }
+            assertEquals(reference.getBoard().getStateHash(), failing.getBoard().getStateHash(), "执行顺序应与提交顺序一致");
+            assertSame(failing, service.getGameSessionById(failing.getId()));
+        } finally {
+            service.shutdown();
+        }
+    }
+
+    @Test
+    public void testPassivatedSessionResumesIdentically() {
+        // 相同种子的两局走相同的移动，其中一局中途钝化再恢复，之后两局应完全一致
+        GameSession passive = gameService.createNewGameWithSeed(null, 20240701L);
+        GameSession active = gameService.createNewGameWithSeed(null, 20240701L);
+        playFirstMoves(passive, active, 3);
+
+        BoardSnapshot before = passive.getBoard().getSnapshot();
+        assertTrue(GameService.await(gameService.passivate(passive)), "活动会话应被钝化");
+        assertNull(passive.getBoard(), "钝化后不再持有面板");
+        assertTrue(passive.getPassivated().size() < 64 * 4, "钝化后的字节数应小于只保存瓦片编号所需的字节数");
+        assertFalse(GameService.await(gameService.passivate(passive)), "已经钝化的会话不再钝化");
+
+        Board restored = gameService.activate(passive);
+        BoardSnapshot after = restored.getSnapshot();
+        assertEquals(before.getVersion(), after.getVersion(), "快照版本号从钝化前继续");
+        assertEquals(before.getStateHash(), restored.getGrid().computeHash());
+        assertEquals(before.getStateHash(), after.getStateHash());
+        assertEquals(before.getScore(), after.getScore());
+        assertEquals(before.getMovesLeft(), after.getMovesLeft());
+        assertEquals(before.getRandom().getDraws(), restored.getRandom().getDraws());
+        for (int index = 0; index < restored.getGrid().getCellCount(); index++) {
+            assertEquals(active.getBoard().getGrid().getId(index), restored.getGrid().getId(index), "瓦片编号应保持不变");
+        }
+
+        playFirstMoves(passive, active, 3);
+        assertEquals(active.getBoard().getStateHash(), passive.getBoard().getStateHash(), "恢复后继续对局应与未钝化的一局相同");
+        assertEquals(active.getBoard().getScore(), passive.getBoard().getScore());
+
+        // 带障碍物的挑战模式面板（哈希包括障碍物）
+        GameSession challenge = gameService.createChallengeGame(null);
+        long hash = challenge.getBoard().getStateHash();
+        int obstacles = challenge.getBoard().getGrid().getObstacles().remaining();
+        assertTrue(GameService.await(gameService.passivate(challenge)));
+        Board restoredChallenge = gameService.activate(challenge);
+        assertEquals(hash, restoredChallenge.getGrid().computeHash());
+        assertEquals(obstacles, restoredChallenge.getGrid().getObstacles().remaining());
+    }
+
+    @Test
+    public void testJournalRecoversSessionsAfterRestart(@TempDir Path directory) throws Exception {
+        // 第一个实例写日志：一局经典模式走几步、一局挑战模式钝化、一局走到结束
+        GameService first = journaledService(directory);
+        GameSession classic = first.createNewGameWithSeed("7", 20240801L);
+        GameSession reference = first.createNewGameWithSeed(null, 20240801L);
+        playFirstMoves(first, classic, reference, 4);
+        GameSession challenge = first.createChallengeGame(null);
+        Move opening = first.getPossibleMoves(challenge).get(0);
+        assertTrue(first.makeMove(challenge, opening.getRow1(), opening.getCol1(), opening.getRow2(), opening.getCol2()));
+        assertTrue(GameService.await(first.passivate(challenge)));
+        GameSession finished = first.createNewGame();
+        while (finished.getState() != GameState.GAME_OVER) {
+            Move move = first.getPossibleMoves(finished).get(0);
+            first.makeMove(finished, move.getRow1(), move.getCol1(), move.getRow2(), move.getCol2());
+        }
+        long challengeHash = first.activate(challenge).getStateHash();
+        first.shutdown();
+
+        // 第二个实例重放日志，进行中的对局恢复到相同的状态，已结束的对局不再恢复
+        GameService second = journaledService(directory);
+        assertRecovered(classic, reference, second);
+        assertEquals(challengeHash, second.getGameSessionById(challenge.getId()).getBoard().getStateHash());
+        assertNull(second.getGameSessionById(finished.getId()), "已结束的对局不应恢复");
+
+        // 压缩后只剩快照和之后的记录，第三个实例仍然恢复到相同的状态
+        second.compactJournal().get();
+        try (java.util.stream.Stream<Path> segments = Files.list(directory)) {
+            assertEquals(1, segments.count(), "压缩后只保留新的段");
+        }
+        GameSession recovered = second.getGameSessionById(classic.getId());
+        GameSession recoveredReference = second.getGameSessionById(reference.getId());
+        playFirstMoves(second, recovered, recoveredReference, 2);
+        second.shutdown();
+
+        GameService third = journaledService(directory);
+        assertRecovered(recovered, recoveredReference, third);
+        assertEquals(challengeHash, third.getGameSessionById(challenge.getId()).getBoard().getStateHash());
+        third.shutdown();
+    }
+
+    private GameService journaledService(Path directory) {
+        JournalProperties journal = new JournalProperties();
+        journal.setDirectory(directory.toString());
+        journal.setSegmentMb(1);
+        return standaloneService(journal);
+    }
+
+    // 辅助方法：无尽模式只用一个线程的引擎配置
+    private EngineProperties engineProperties() {
+        EngineProperties engine = new EngineProperties();
+        engine.getEndless().setParallelism(1);
+        return engine;
+    }
+
+    // 辅助方法：独立的服务实例，空闲60秒、结束后10秒过期，不钝化
+    private GameService standaloneService(JournalProperties journal) {
+        SessionProperties sessions = new SessionProperties();
+        sessions.setIdleTtlSeconds(60);
+        sessions.setFinishedTtlSeconds(10);
+        sessions.setParallelism(1);
+        sessions.setPassivateAfterSeconds(0);
+        return new GameService(engineProperties(), TileTypeRegistry.defaults(), sessions, journal, new LocalGameSessionStore());
+    }
+
+    private void assertRecovered(GameSession expected, GameSession reference, GameService service) {
+        GameSession recovered = service.getGameSessionById(expected.getId());
+        assertNotNull(recovered, "进行中的对局应从日志恢复");
+        assertEquals(expected.getUserId(), recovered.getUserId());
+        assertEquals(expected.getMode(), recovered.getMode());
+        assertEquals(reference.getBoard().getStateHash(), recovered.getBoard().getStateHash());
+        assertEquals(reference.getBoard().getScore(), recovered.getBoard().getScore());
+        assertEquals(reference.getBoard().getMovesLeft(), recovered.getBoard().getMovesLeft());
+    }
+
+    // 辅助方法：两局依次走第一个合法移动
+    private void playFirstMoves(GameSession first, GameSession second, int count) {
+        playFirstMoves(gameService, first, second, count);
+    }
+
+    private void playFirstMoves(GameService service, GameSession first, GameSession second, int count) {
+        for (int n = 0; n < count; n++) {
+            List<Move> moves = service.getPossibleMoves(first);
+            if (moves.isEmpty()) {
+                return;
+            }
+            Move move = moves.get(0);
+            assertEquals(service.makeMove(first, move.getRow1(), move.getCol1(), move.getRow2(), move.getCol2()),
+                    service.makeMove(second, move.getRow1(), move.getCol1(), move.getRow2(), move.getCol2()));
+        }
+    }
+
+    // 辅助方法：按类型和特殊效果统计瓦片数量
+    // 辅助方法：编号到类型和效果的对应（重复的编号会使大小不等）
+    private Map<Integer, Integer> tilesById(BoardGrid grid) {
+        Map<Integer, Integer> tiles = new HashMap<>();
+        for (int index = 0; index < grid.getCellCount(); index++) {
+            tiles.put(grid.getId(index), grid.getType(index) * 8 + grid.getEffect(index));
+        }
+        assertEquals(grid.getCellCount(), tiles.size(), "编号不应重复");
+        return tiles;
+    }
+
+    private int[] countTiles(BoardGrid grid) {
+        int[] counts = new int[grid.getTypeCount() * 8];
+        for (int index = 0; index < grid.getCellCount(); index++) {
+            counts[grid.getType(index) * 8 + grid.getEffect(index)]++;
+        }
+        return counts;
+    }
+
+    // 辅助方法：比较两个面板的所有格子
+    private void assertBoardsEqual(Board expected, Board actual) {
+        for (int i = 0; i < expected.getRows(); i++) {
+            for (int j = 0; j < expected.getColumns(); j++) {
+                assertEquals(expected.getGrid().getType(i, j), actual.getGrid().getType(i, j),
+                        "格子(" + i + "," + j + ")应一致");
+            }
+        }
+    }
+
     // 辅助方法：检查是否有可能的匹配
     private boolean hasPossibleMatch(Board board) {
+        BoardGrid grid = board.getGrid();
+
         // 水平检查
         for (int i = 0; i < board.getRows(); i++) {
             for (int j = 0; j < board.getColumns() - 2; j++) {
-                if (board.getTiles()[i][j] != null &&
-                        board.getTiles()[i][j+1] != null &&
-                        board.getTiles()[i][j+2] != null &&
-                        board.getTiles()[i][j].getType().equals(board.getTiles()[i][j+1].getType()) &&
-                        board.getTiles()[i][j].getType().equals(board.getTiles()[i][j+2].getType())) {
+                if (grid.getType(i, j) != BoardGrid.EMPTY &&
+                        grid.getType(i, j) == grid.getType(i, j + 1) &&
+                        grid.getType(i, j) == grid.getType(i, j + 2)) {
                     return true;
                 }
             }
@@ -224,11 +621,9 @@ public class GameServiceTest {
         // 垂直检查
         for (int i = 0; i < board.getRows() - 2; i++) {
             for (int j = 0; j < board.getColumns(); j++) {
-                if (board.getTiles()[i][j] != null &&
-                        board.getTiles()[i+1][j] != null &&
-                        board.getTiles()[i+2][j] != null &&
-                        board.getTiles()[i][j].getType().equals(board.getTiles()[i+1][j].getType()) &&
-                        board.getTiles()[i][j].getType().equals(board.getTiles()[i+2][j].getType())) {
+                if (grid.getType(i, j) != BoardGrid.EMPTY &&
+                        grid.getType(i, j) == grid.getType(i + 1, j) &&
+                        grid.getType(i, j) == grid.getType(i + 2, j)) {
                     return true;
                 }
             }
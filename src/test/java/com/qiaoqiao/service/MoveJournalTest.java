@@ -0,0 +1,60 @@
+// 移动日志测试类
+package com.qiaoqiao.service;
+
+import com.qiaoqiao.model.game.GameState;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MoveJournalTest {
+
+    @Test
+    public void testRejectedRecordDoesNotTruncateReplay(@TempDir Path directory) {
+        String gameId = UUID.randomUUID().toString();
+        try (MoveJournal journal = new MoveJournal(directory, 1 << 16, 10)) {
+            journal.appendCreate(gameId, null, "classic", 8, 1L);
+            // 不是UUID的对局ID被拒绝，之后的记录照常写入
+            assertThrows(IllegalArgumentException.class, () -> journal.appendMove("not-a-uuid", 0, 0, 0, 1));
+            journal.appendMove(gameId, 3, 4, 3, 5);
+            journal.appendEnd(gameId);
+        }
+
+        List<String> records = new ArrayList<>();
+        try (MoveJournal journal = new MoveJournal(directory, 1 << 16, 10)) {
+            journal.replay(new MoveJournal.Visitor() {
+                @Override
+                public void onCreate(String id, String userId, String mode, int size, long seed) {
+                    records.add("create " + id);
+                }
+
+                @Override
+                public void onMove(String id, int row1, int col1, int row2, int col2) {
+                    records.add("move " + id + " " + row1 + col1 + row2 + col2);
+                }
+
+                @Override
+                public void onReshuffle(String id) {
+                    records.add("reshuffle " + id);
+                }
+
+                @Override
+                public void onSnapshot(String id, String userId, String mode, GameState state, ByteBuffer image) {
+                    records.add("snapshot " + id);
+                }
+
+                @Override
+                public void onEnd(String id) {
+                    records.add("end " + id);
+                }
+            });
+        }
+        assertEquals(List.of("create " + gameId, "move " + gameId + " 3435", "end " + gameId), records);
+    }
+}